@@ -0,0 +1,328 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.thirdparty.protobuf.CodedInputStream;
+import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
+import org.apache.hadoop.thirdparty.protobuf.InvalidProtocolBufferException;
+import org.apache.hadoop.thirdparty.protobuf.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of INode repository packing all serialized inodes into a few large slabs.
+ * <p>
+ * Compared to one byte array per inode, this saves the array header and reference per inode
+ * and reduces the number of objects the GC has to trace from the number of inodes to the number of slabs.
+ * <p>
+ * Each inode is stored length delimited (varint length followed by the inode bytes) and never spans two slabs.
+ * Sorting by inode id only sorts the offset index, without moving any inode bytes.
+ * <p>
+ * Alternatively, inodes can be copied in a given layout order, see {@link #copyOf(FsImageLoader.INodesRepository, int[])}.
+ * Positions then follow the layout order, and a side index maps ids to positions.
+ */
+class ArenaINodesRepository implements FsImageLoader.INodesRepository {
+    private static final Logger LOG = LoggerFactory.getLogger(ArenaINodesRepository.class);
+    private static final Parser<INode> INODE_PARSER = INode.parser();
+    /**
+     * Default slab size of 64 MiB.
+     */
+    static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final byte[][] slabs;
+    // inode ids, sorted
+    private final long[] inodeIds;
+    // inode offsets (slab index in upper 32 bits, position in slab in lower 32 bits), in order of inodeIds
+    private final long[] inodeOffsets;
+    // positions in ascending id order, or null if inodeIds are sorted
+    private final int[] positionsById;
+    private final INodeIdIndex idIndex;
+    private final INode rootInode;
+
+    ArenaINodesRepository(byte[][] slabs, long[] inodeIds, long[] inodeOffsets) throws InvalidProtocolBufferException {
+        this(slabs, inodeIds, inodeOffsets, null);
+    }
+
+    private ArenaINodesRepository(byte[][] slabs, long[] inodeIds, long[] inodeOffsets, int[] positionsById)
+            throws InvalidProtocolBufferException {
+        this.slabs = slabs;
+        this.inodeIds = inodeIds;
+        this.inodeOffsets = inodeOffsets;
+        this.positionsById = positionsById;
+        idIndex = null == positionsById ? new INodeIdIndex(inodeIds) :
+                new INodeIdIndex(inodeIds.length, i -> inodeIds[positionsById[i]]);
+        rootInode = parseInode(findOffset(INodeId.ROOT_INODE_ID));
+    }
+
+    static class Builder implements FsImageLoader.INodesRepositoryBuilder {
+        private final boolean parallel;
+        private final int slabSize;
+
+        Builder(boolean parallel) {
+            this(parallel, DEFAULT_SLAB_SIZE);
+        }
+
+        Builder(boolean parallel, int slabSize) {
+            this.parallel = parallel;
+            this.slabSize = slabSize;
+        }
+
+        @Override
+        public FsImageLoader.INodesRepository build(FsImageProto.INodeSection s, InputStream in, long length)
+                throws IOException {
+            long start = System.currentTimeMillis();
+            final int numInodes = (int) s.getNumInodes();
+            SlabWriter writer = new SlabWriter(slabSize, numInodes);
+            for (int i = 0; i < numInodes; ++i) {
+                writer.append(in, CodedInputStream.readRawVarint32(in.read(), in));
+            }
+            LOG.debug("Loaded {} inodes into {} slabs [{}ms] of length {} bytes",
+                    numInodes, writer.slabs.size(), System.currentTimeMillis() - start, length);
+            return build(writer.getSlabs(), toArray(writer.inodeIds), toArray(writer.inodeOffsets));
+        }
+
+        @Override
+        public FsImageLoader.INodesRepository build(FsImageProto.INodeSection s, List<InputStream> subSections,
+                                                   long length, ExecutorService executor) throws IOException {
+            long start = System.currentTimeMillis();
+            List<Future<SlabWriter>> futures = new ArrayList<>(subSections.size());
+            for (InputStream in : subSections) {
+                futures.add(executor.submit(() -> {
+                    SlabWriter writer = new SlabWriter(slabSize, 1024);
+                    int firstByte;
+                    while ((firstByte = in.read()) >= 0) {
+                        writer.append(in, CodedInputStream.readRawVarint32(firstByte, in));
+                    }
+                    return writer;
+                }));
+            }
+
+            // Concatenate the slabs and rebase the slab index of the inode offsets
+            List<byte[]> slabs = new ArrayList<>();
+            final long[] inodeIds = new long[(int) s.getNumInodes()];
+            final long[] inodeOffsets = new long[inodeIds.length];
+            int pos = 0;
+            for (Future<SlabWriter> future : futures) {
+                final SlabWriter writer = FsImageLoader.get(future);
+                final int size = writer.inodeIds.size();
+                if (pos + size > inodeIds.length) {
+                    throw new IllegalStateException("Expected " + inodeIds.length + " inodes but sub-sections contain more");
+                }
+                writer.inodeIds.getElements(0, inodeIds, pos, size);
+                final long slabBase = (long) slabs.size() << 32;
+                for (int i = 0; i < size; i++) {
+                    inodeOffsets[pos + i] = writer.inodeOffsets.getLong(i) + slabBase;
+                }
+                slabs.addAll(Arrays.asList(writer.getSlabs()));
+                pos += size;
+            }
+            if (pos != inodeIds.length) {
+                throw new IllegalStateException("Expected " + inodeIds.length + " inodes but sub-sections contain " + pos);
+            }
+            LOG.debug("Loaded {} inodes from {} sub-sections into {} slabs [{}ms] of length {} bytes",
+                    inodeIds.length, subSections.size(), slabs.size(), System.currentTimeMillis() - start, length);
+            return build(slabs.toArray(new byte[0][]), inodeIds, inodeOffsets);
+        }
+
+        private static long[] toArray(LongArrayList list) {
+            // Avoid copying, as the list is presized to the number of inodes
+            return list.size() == list.elements().length ? list.elements() : list.toLongArray();
+        }
+
+        private FsImageLoader.INodesRepository build(byte[][] slabs, long[] inodeIds, long[] inodeOffsets)
+                throws InvalidProtocolBufferException {
+            long start = System.currentTimeMillis();
+            // Ids are unique, so sorting the pairs lexicographically sorts by id
+            if (parallel) {
+                LongArrays.parallelRadixSort(inodeIds, inodeOffsets);
+            } else {
+                LongArrays.radixSort(inodeIds, inodeOffsets);
+            }
+            LOG.debug("Sorted {} inodes [{}ms]", inodeIds.length, System.currentTimeMillis() - start);
+            return new ArenaINodesRepository(slabs, inodeIds, inodeOffsets);
+        }
+    }
+
+    /**
+     * Copies inodes into new slabs, in given layout order.
+     * <p>
+     * Inodes adjacent in layout order are then adjacent in memory, eg for sequential scans in tree order.
+     *
+     * @param source the inodes, with positions in ascending id order.
+     * @param order  the source position for each new position.
+     * @return the copy, with positions in layout order.
+     * @throws IOException on error.
+     */
+    static ArenaINodesRepository copyOf(FsImageLoader.INodesRepository source, int[] order) throws IOException {
+        long start = System.currentTimeMillis();
+        final SlabWriter writer = new SlabWriter(DEFAULT_SLAB_SIZE, order.length);
+        final int[] positionsById = new int[order.length];
+        for (int position = 0; position < order.length; position++) {
+            writer.append(source.getInodeBytesAt(order[position]));
+            positionsById[order[position]] = position;
+        }
+        LOG.debug("Copied {} inodes into {} slabs in layout order [{}ms]",
+                order.length, writer.slabs.size(), System.currentTimeMillis() - start);
+        return new ArenaINodesRepository(writer.getSlabs(), Builder.toArray(writer.inodeIds),
+                Builder.toArray(writer.inodeOffsets), positionsById);
+    }
+
+    /**
+     * Appends length delimited inodes to slabs, recording inode id and offset.
+     */
+    static class SlabWriter {
+        private final int slabSize;
+        private final List<byte[]> slabs = new ArrayList<>();
+        private final LongArrayList inodeIds;
+        private final LongArrayList inodeOffsets;
+        private byte[] slab;
+        private int slabPos;
+
+        SlabWriter(int slabSize, int expectedInodes) {
+            this.slabSize = slabSize;
+            inodeIds = new LongArrayList(expectedInodes);
+            inodeOffsets = new LongArrayList(expectedInodes);
+        }
+
+        /**
+         * Reads an inode of given size directly into the current slab.
+         *
+         * @param in   the stream, positioned after the varint length of the inode.
+         * @param size the inode size.
+         * @throws IOException on error.
+         */
+        void append(InputStream in, int size) throws IOException {
+            final int delimitedSize = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+            if (null == slab || slabPos + delimitedSize > slab.length) {
+                nextSlab(delimitedSize);
+            }
+            inodeOffsets.add((long) (slabs.size() - 1) << 32 | slabPos);
+            slabPos = writeRawVarint32(slab, slabPos, size);
+            IOUtils.readFully(in, slab, slabPos, size);
+            inodeIds.add(FsImageLoader.PrimitiveArrayINodesRepository.extractNodeId(slab, slabPos));
+            slabPos += size;
+        }
+
+        /**
+         * Copies an inode into the current slab.
+         *
+         * @param inode the inode bytes, from position to limit.
+         */
+        void append(ByteBuffer inode) {
+            final int size = inode.remaining();
+            final int delimitedSize = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+            if (null == slab || slabPos + delimitedSize > slab.length) {
+                nextSlab(delimitedSize);
+            }
+            inodeOffsets.add((long) (slabs.size() - 1) << 32 | slabPos);
+            slabPos = writeRawVarint32(slab, slabPos, size);
+            inode.duplicate().get(slab, slabPos, size);
+            inodeIds.add(FsImageLoader.PrimitiveArrayINodesRepository.extractNodeId(slab, slabPos));
+            slabPos += size;
+        }
+
+        private void nextSlab(int minSize) {
+            trimSlab();
+            // A single inode larger than the slab size gets a slab on its own
+            slab = new byte[Math.max(slabSize, minSize)];
+            slabPos = 0;
+            slabs.add(slab);
+        }
+
+        private void trimSlab() {
+            if (null != slab && slabPos < slab.length) {
+                slabs.set(slabs.size() - 1, Arrays.copyOf(slab, slabPos));
+            }
+        }
+
+        byte[][] getSlabs() {
+            trimSlab();
+            slab = null;
+            return slabs.toArray(new byte[0][]);
+        }
+
+        private static int writeRawVarint32(byte[] buf, int pos, int value) {
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+            return pos;
+        }
+    }
+
+    @Override
+    public int getPosition(final long inodeId) {
+        final int idx = idIndex.getPosition(inodeId);
+        return idx < 0 || null == positionsById ? idx : positionsById[idx];
+    }
+
+    private long findOffset(final long inodeId) {
+        final int position = getPosition(inodeId);
+        if (position < 0) {
+            throw new IllegalArgumentException("Can not find inode by id " + inodeId);
+        }
+        return inodeOffsets[position];
+    }
+
+    @Override
+    public long getInodeId(int position) {
+        return inodeIds[position];
+    }
+
+    @Override
+    public INode getInodeAt(int position) throws IOException {
+        return parseInode(inodeOffsets[position]);
+    }
+
+    @Override
+    public ByteBuffer getInodeBytesAt(int position) {
+        return view(inodeOffsets[position]);
+    }
+
+    @Override
+    public void readInodeAt(int position, INodeView view) {
+        final long offset = inodeOffsets[position];
+        final byte[] slab = slabs[(int) (offset >>> 32)];
+        final int pos = (int) offset;
+        final int size = LengthDelimited.readLength(slab, pos);
+        view.reset(slab, pos + LengthDelimited.prefixSize(size), size);
+    }
+
+    private INode parseInode(long offset) throws InvalidProtocolBufferException {
+        return INODE_PARSER.parseFrom(view(offset));
+    }
+
+    private ByteBuffer view(long offset) {
+        final byte[] slab = slabs[(int) (offset >>> 32)];
+        final int pos = (int) offset;
+        final int size = LengthDelimited.readLength(slab, pos);
+        return ByteBuffer.wrap(slab, pos + LengthDelimited.prefixSize(size), size);
+    }
+
+    @Override
+    public INode getInode(long inodeId) throws IOException {
+        if (INodeId.ROOT_INODE_ID == inodeId) {
+            return rootInode;
+        }
+        return parseInode(findOffset(inodeId));
+    }
+
+    @Override
+    public int getSize() {
+        return inodeIds.length;
+    }
+}
@@ -0,0 +1,440 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory adjacency in compressed sparse row (CSR) layout, indexed by inode position.
+ * <p>
+ * The children of the inode at position p are the child positions from {@code offsets[p]} (inclusive)
+ * to {@code offsets[p + 1]} (exclusive), in fsimage order.
+ * Compared to a hash map of one id array per directory, this needs two int arrays in total,
+ * and looking up the children by position is a plain array read.
+ * <p>
+ * The reverse direction, from child to parent position, is derived on construction.
+ * <p>
+ * Optionally, the children of each directory are sorted by UTF-8 name bytes, see {@link #sortByName(boolean)}.
+ *
+ * @see FsImageLoader.INodesRepository#getPosition(long)
+ */
+class DirectoryIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryIndex.class);
+    private static final long[] NO_CHILDREN = new long[0];
+    /**
+     * Parent position of inodes without parent, such as the root inode.
+     */
+    static final int NO_PARENT = -1;
+
+    private final FsImageLoader.INodesRepository inodes;
+    private final int[] offsets;
+    private final int[] childPositions;
+    private final int[] parentPositions;
+    private final boolean sortedByName;
+
+    DirectoryIndex(FsImageLoader.INodesRepository inodes, int[] offsets, int[] childPositions) {
+        this(inodes, offsets, childPositions, false);
+    }
+
+    private DirectoryIndex(FsImageLoader.INodesRepository inodes, int[] offsets, int[] childPositions,
+                           boolean sortedByName) {
+        if (offsets.length != inodes.getSize() + 1) {
+            throw new IllegalArgumentException("Expected " + (inodes.getSize() + 1) + " offsets but got " +
+                    offsets.length);
+        }
+        this.inodes = inodes;
+        this.offsets = offsets;
+        this.childPositions = childPositions;
+        this.sortedByName = sortedByName;
+        parentPositions = new int[inodes.getSize()];
+        Arrays.fill(parentPositions, NO_PARENT);
+        for (int parentPosition = 0; parentPosition < parentPositions.length; parentPosition++) {
+            for (int i = offsets[parentPosition]; i < offsets[parentPosition + 1]; i++) {
+                parentPositions[childPositions[i]] = parentPosition;
+            }
+        }
+    }
+
+    /**
+     * Directory entries by inode id, as loaded from the INODE_DIR section before the inodes are known.
+     */
+    static class Entries {
+        final LongArrayList parents;
+        final IntArrayList childCounts;
+        final LongArrayList children;
+
+        Entries() {
+            this(1024, 1024 * 16);
+        }
+
+        Entries(int expectedDirectories, int expectedChildren) {
+            parents = new LongArrayList(expectedDirectories);
+            childCounts = new IntArrayList(expectedDirectories);
+            children = new LongArrayList(expectedChildren);
+        }
+
+        /**
+         * Starts a new directory entry, followed by adding its children.
+         *
+         * @param parentId   the directory inode id.
+         * @param childCount the number of children to add.
+         */
+        void addDirectory(long parentId, int childCount) {
+            parents.add(parentId);
+            childCounts.add(childCount);
+        }
+
+        void addChild(long childId) {
+            children.add(childId);
+        }
+
+        void addAll(Entries other) {
+            parents.addAll(other.parents);
+            childCounts.addAll(other.childCounts);
+            children.addAll(other.children);
+        }
+
+        int size() {
+            return parents.size();
+        }
+    }
+
+    /**
+     * Builds the index from directory entries.
+     * <p>
+     * Children not contained in the inodes are dropped.
+     *
+     * @param inodes   the inodes.
+     * @param entries  the directory entries.
+     * @param parallel true, if resolving inode positions should use multiple threads.
+     * @return the index.
+     */
+    static DirectoryIndex build(FsImageLoader.INodesRepository inodes, Entries entries, boolean parallel) {
+        long start = System.currentTimeMillis();
+        final long[] childIds = entries.children.elements();
+        final int numChildren = entries.children.size();
+
+        // Resolve positions first, as this is the expensive part
+        final int[] resolved = new int[numChildren];
+        IntStream range = IntStream.range(0, numChildren);
+        if (parallel) {
+            range = range.parallel();
+        }
+        range.forEach(i -> resolved[i] = inodes.getPosition(childIds[i]));
+
+        final int size = inodes.getSize();
+        final int[] parentPositions = new int[entries.size()];
+        final int[] offsets = new int[size + 1];
+        int from = 0;
+        int dropped = 0;
+        for (int e = 0; e < parentPositions.length; e++) {
+            final int to = from + entries.childCounts.getInt(e);
+            final int parentPosition = inodes.getPosition(entries.parents.getLong(e));
+            parentPositions[e] = parentPosition;
+            for (int i = from; i < to; i++) {
+                if (parentPosition >= 0 && resolved[i] >= 0) {
+                    offsets[parentPosition + 1]++;
+                } else {
+                    dropped++;
+                }
+            }
+            from = to;
+        }
+        for (int p = 0; p < size; p++) {
+            offsets[p + 1] += offsets[p];
+        }
+
+        final int[] childPositions = new int[offsets[size]];
+        // Next free slot per parent, supporting parents split across entries
+        final int[] cursors = new int[size];
+        System.arraycopy(offsets, 0, cursors, 0, size);
+        from = 0;
+        for (int e = 0; e < parentPositions.length; e++) {
+            final int to = from + entries.childCounts.getInt(e);
+            final int parentPosition = parentPositions[e];
+            if (parentPosition >= 0) {
+                for (int i = from; i < to; i++) {
+                    if (resolved[i] >= 0) {
+                        childPositions[cursors[parentPosition]++] = resolved[i];
+                    }
+                }
+            }
+            from = to;
+        }
+        if (dropped > 0) {
+            LOG.warn("Dropped {} directory children without matching inode", dropped);
+        }
+        LOG.debug("Built directory index for {} directories and {} children [{}ms]", parentPositions.length,
+                childPositions.length, System.currentTimeMillis() - start);
+        return new DirectoryIndex(inodes, offsets, childPositions);
+    }
+
+    /**
+     * Builds the index from a directory map.
+     *
+     * @param inodes the inodes.
+     * @param dirMap the children ids by directory id.
+     * @return the index.
+     */
+    static DirectoryIndex build(FsImageLoader.INodesRepository inodes, Long2ObjectLinkedOpenHashMap<long[]> dirMap) {
+        final Entries entries = new Entries(dirMap.size(), 1024);
+        for (Long2ObjectMap.Entry<long[]> entry : dirMap.long2ObjectEntrySet()) {
+            entries.addDirectory(entry.getLongKey(), entry.getValue().length);
+            entries.children.addElements(entries.children.size(), entry.getValue());
+        }
+        return build(inodes, entries, false);
+    }
+
+    /**
+     * Creates a copy with the children of each directory sorted by unsigned UTF-8 name bytes.
+     * <p>
+     * Directories are sorted independently, and concurrently if parallel.
+     *
+     * @param parallel true, if sorting directories should use multiple threads.
+     * @return the sorted index, or this index if already sorted.
+     */
+    DirectoryIndex sortByName(boolean parallel) {
+        if (sortedByName) {
+            return this;
+        }
+        long start = System.currentTimeMillis();
+        final int[] sortedChildPositions = childPositions.clone();
+        IntStream parents = IntStream.range(0, inodes.getSize());
+        if (parallel) {
+            parents = parents.parallel();
+        }
+        parents.filter(p -> getChildCount(p) > 1).forEach(p -> {
+            final int from = offsets[p];
+            final int to = offsets[p + 1];
+            // Extract names once, instead of for each comparison
+            final ByteBuffer[] names = new ByteBuffer[to - from];
+            final int[] order = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = INodeWireFormat.getName(inodes.getInodeBytesAt(childPositions[from + i]));
+                order[i] = i;
+            }
+            IntArrays.quickSort(order, (a, b) -> compareNames(names[a], names[b]));
+            for (int i = 0; i < order.length; i++) {
+                sortedChildPositions[from + i] = childPositions[from + order[i]];
+            }
+        });
+        LOG.debug("Sorted directory index children by name [{}ms]", System.currentTimeMillis() - start);
+        return new DirectoryIndex(inodes, offsets, sortedChildPositions, true);
+    }
+
+    /**
+     * Computes the depth-first pre-order of the directory tree, starting at the root inode.
+     * <p>
+     * Children are visited in index order. The root subtree is followed by the subtrees of other inodes without
+     * parent (eg only referenced by snapshots), in position order.
+     * So each subtree occupies a contiguous range of the order.
+     *
+     * @return the old inode position for each new position.
+     */
+    int[] preOrder() {
+        final int size = inodes.getSize();
+        final int[] order = new int[size];
+        final boolean[] visited = new boolean[size];
+        // Explicit stack, as the tree can be deeper than the thread stack allows for recursion
+        final IntArrayList stack = new IntArrayList();
+        int next = 0;
+        final int rootPosition = inodes.getPosition(INodeId.ROOT_INODE_ID);
+        if (rootPosition >= 0) {
+            next = preOrder(rootPosition, order, next, visited, stack);
+        }
+        for (int position = 0; position < size; position++) {
+            if (!visited[position] && NO_PARENT == parentPositions[position]) {
+                next = preOrder(position, order, next, visited, stack);
+            }
+        }
+        // Should not happen, but keep any remaining inodes
+        for (int position = 0; position < size && next < size; position++) {
+            if (!visited[position]) {
+                order[next++] = position;
+            }
+        }
+        return order;
+    }
+
+    private int preOrder(int startPosition, int[] order, int next, boolean[] visited, IntArrayList stack) {
+        stack.push(startPosition);
+        while (!stack.isEmpty()) {
+            final int position = stack.popInt();
+            if (visited[position]) {
+                continue;
+            }
+            visited[position] = true;
+            order[next++] = position;
+            // Push in reverse, so that the first child is visited first
+            for (int i = offsets[position + 1] - 1; i >= offsets[position]; i--) {
+                stack.push(childPositions[i]);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Creates a copy for inodes moved to new positions.
+     *
+     * @param reorderedInodes the inodes at their new positions.
+     * @param order           the old inode position for each new position.
+     * @return the index, with same children order per directory.
+     */
+    DirectoryIndex reorder(FsImageLoader.INodesRepository reorderedInodes, int[] order) {
+        final int size = order.length;
+        final int[] newPositions = new int[size];
+        for (int p = 0; p < size; p++) {
+            newPositions[order[p]] = p;
+        }
+        final int[] newOffsets = new int[size + 1];
+        final int[] newChildPositions = new int[childPositions.length];
+        for (int p = 0; p < size; p++) {
+            final int oldPosition = order[p];
+            int to = newOffsets[p];
+            for (int i = offsets[oldPosition]; i < offsets[oldPosition + 1]; i++) {
+                newChildPositions[to++] = newPositions[childPositions[i]];
+            }
+            newOffsets[p + 1] = to;
+        }
+        return new DirectoryIndex(reorderedInodes, newOffsets, newChildPositions, sortedByName);
+    }
+
+    boolean isSortedByName() {
+        return sortedByName;
+    }
+
+    /**
+     * Finds a child by name via binary search.
+     *
+     * @param parentPosition the directory position.
+     * @param name           the UTF-8 encoded child name.
+     * @return the child position, or a negative value if no such child.
+     * @throws IllegalStateException if not sorted by name.
+     */
+    int findChildSorted(int parentPosition, byte[] name) {
+        if (!sortedByName) {
+            throw new IllegalStateException("Children are not sorted by name");
+        }
+        final ByteBuffer key = ByteBuffer.wrap(name);
+        int low = offsets[parentPosition];
+        int high = offsets[parentPosition + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int childPosition = childPositions[mid];
+            final int cmp = compareNames(INodeWireFormat.getName(inodes.getInodeBytesAt(childPosition)), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return childPosition;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares names as unsigned bytes, which matches the Unicode code point order of UTF-8 encoded names.
+     */
+    static int compareNames(ByteBuffer a, ByteBuffer b) {
+        final int length = Math.min(a.remaining(), b.remaining());
+        for (int i = 0; i < length; i++) {
+            final int cmp = (a.get(a.position() + i) & 0xFF) - (b.get(b.position() + i) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.remaining() - b.remaining();
+    }
+
+    /**
+     * Gets the number of children.
+     *
+     * @param parentPosition the directory position.
+     * @return the number of children, or 0 if no directory.
+     */
+    int getChildCount(int parentPosition) {
+        return offsets[parentPosition + 1] - offsets[parentPosition];
+    }
+
+    /**
+     * Gets the start of the children range.
+     *
+     * @param parentPosition the directory position.
+     * @return the index of the first child, see {@link #getChildPosition(int)}.
+     */
+    int getChildrenStart(int parentPosition) {
+        return offsets[parentPosition];
+    }
+
+    /**
+     * Gets the end of the children range.
+     *
+     * @param parentPosition the directory position.
+     * @return the index after the last child (exclusive), see {@link #getChildPosition(int)}.
+     */
+    int getChildrenEnd(int parentPosition) {
+        return offsets[parentPosition + 1];
+    }
+
+    /**
+     * Gets the child position.
+     *
+     * @param index the child index, within a children range.
+     * @return the child inode position.
+     */
+    int getChildPosition(int index) {
+        return childPositions[index];
+    }
+
+    /**
+     * Gets the parent position.
+     *
+     * @param position the inode position.
+     * @return the parent directory position, or {@value #NO_PARENT} for the root or inodes not in the tree.
+     */
+    int getParentPosition(int position) {
+        return parentPositions[position];
+    }
+
+    /**
+     * Gets the children ids.
+     *
+     * @param parentId the directory inode id.
+     * @return a new array of child inode ids, or an empty array if not a directory or no such inode.
+     */
+    long[] getChildIds(long parentId) {
+        final int parentPosition = inodes.getPosition(parentId);
+        if (parentPosition < 0) {
+            return NO_CHILDREN;
+        }
+        final int from = offsets[parentPosition];
+        final int to = offsets[parentPosition + 1];
+        if (from == to) {
+            return NO_CHILDREN;
+        }
+        final long[] ids = new long[to - from];
+        for (int i = from; i < to; i++) {
+            ids[i - from] = inodes.getInodeId(childPositions[i]);
+        }
+        return ids;
+    }
+
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    int[] getChildPositions() {
+        return childPositions;
+    }
+}
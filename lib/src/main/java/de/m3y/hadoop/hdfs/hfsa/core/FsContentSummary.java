@@ -0,0 +1,113 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+/**
+ * Content summary of a path, similar to what HDFS <code>hdfs dfs -count -q</code> reports.
+ * <p>
+ * Note: Unlike HDFS ContentSummary, the file count excludes symlinks, see {@link #getSymlinkCount()}.
+ *
+ * @see FsImageData#getContentSummary(String)
+ */
+public class FsContentSummary {
+    /**
+     * Quota value if no quota is set.
+     */
+    public static final long QUOTA_NOT_SET = -1L;
+
+    private final long length;
+    private final long fileCount;
+    private final long directoryCount;
+    private final long symlinkCount;
+    private final long spaceConsumed;
+    private final long quota;
+    private final long spaceQuota;
+
+    FsContentSummary(long length, long fileCount, long directoryCount, long symlinkCount, long spaceConsumed,
+                     long quota, long spaceQuota) {
+        this.length = length;
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.symlinkCount = symlinkCount;
+        this.spaceConsumed = spaceConsumed;
+        this.quota = quota;
+        this.spaceQuota = spaceQuota;
+    }
+
+    /**
+     * Gets the logical size.
+     *
+     * @return the sum of file sizes.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the number of files.
+     *
+     * @return the number of files, excluding symlinks.
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Gets the number of directories.
+     *
+     * @return the number of directories, including the path itself if a directory.
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * Gets the number of symlinks.
+     *
+     * @return the number of symlinks.
+     */
+    public long getSymlinkCount() {
+        return symlinkCount;
+    }
+
+    /**
+     * Gets the namespace usage, as counted against the namespace quota.
+     *
+     * @return the number of files, symlinks and directories.
+     */
+    public long getFileAndDirectoryCount() {
+        return fileCount + symlinkCount + directoryCount;
+    }
+
+    /**
+     * Gets the replicated size.
+     *
+     * @return the sum of file sizes multiplied by their replication, with data and parity for erasure coded files.
+     */
+    public long getSpaceConsumed() {
+        return spaceConsumed;
+    }
+
+    /**
+     * Gets the namespace quota.
+     *
+     * @return the quota, or {@value #QUOTA_NOT_SET}.
+     */
+    public long getQuota() {
+        return quota;
+    }
+
+    /**
+     * Gets the space quota.
+     *
+     * @return the quota in bytes, or {@value #QUOTA_NOT_SET}.
+     */
+    public long getSpaceQuota() {
+        return spaceQuota;
+    }
+
+    @Override
+    public String toString() {
+        return "FsContentSummary{length=" + length + ", fileCount=" + fileCount + ", directoryCount=" + directoryCount +
+                ", symlinkCount=" + symlinkCount + ", spaceConsumed=" + spaceConsumed + ", quota=" + quota +
+                ", spaceQuota=" + spaceQuota + '}';
+    }
+}
@@ -2,17 +2,21 @@ package de.m3y.hadoop.hdfs.hfsa.core;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.AclStatus;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.namenode.*;
 
 /**
@@ -23,15 +27,188 @@ public class FsImageData {
     public static final char PATH_SEPARATOR = '/';
 
     private final SerialNumberManager.StringTable stringTable;
+    // Names by serial number, resolved once for allocation free lookups
+    private final String[] userNames;
+    private final String[] groupNames;
     private final FsImageLoader.INodesRepository inodes;
-    private final Long2ObjectLinkedOpenHashMap<long[]> dirMap;
+    private final DirectoryIndex directoryIndex;
+    private final INodeColumns columns;
+    private final NameIndex nameIndex;
+    private final SubtreeIndex subtreeIndex;
+    // Built on first content summary, if no subtree index was loaded
+    private volatile SubtreeIndex lazySubtreeIndex;
 
     public FsImageData(SerialNumberManager.StringTable stringTable,
                        FsImageLoader.INodesRepository inodes,
                        Long2ObjectLinkedOpenHashMap<long[]> dirMap) {
+        this(stringTable, inodes, DirectoryIndex.build(inodes, dirMap));
+    }
+
+    FsImageData(SerialNumberManager.StringTable stringTable,
+                FsImageLoader.INodesRepository inodes,
+                DirectoryIndex directoryIndex) {
+        this(stringTable, resolveNames(SerialNumberManager.USER, stringTable),
+                resolveNames(SerialNumberManager.GROUP, stringTable), inodes, directoryIndex, null, null, null);
+    }
+
+    private FsImageData(SerialNumberManager.StringTable stringTable,
+                        String[] userNames,
+                        String[] groupNames,
+                        FsImageLoader.INodesRepository inodes,
+                        DirectoryIndex directoryIndex,
+                        INodeColumns columns,
+                        NameIndex nameIndex,
+                        SubtreeIndex subtreeIndex) {
         this.stringTable = stringTable;
+        this.userNames = userNames;
+        this.groupNames = groupNames;
         this.inodes = inodes;
-        this.dirMap = dirMap;
+        this.directoryIndex = directoryIndex;
+        this.columns = columns;
+        this.nameIndex = nameIndex;
+        this.subtreeIndex = subtreeIndex;
+    }
+
+    /**
+     * Resolves the names of all serial numbers up to the number of strings, as serial numbers are assigned densely.
+     */
+    private static String[] resolveNames(SerialNumberManager manager, SerialNumberManager.StringTable stringTable) {
+        final String[] names = new String[stringTable.size() + 1];
+        for (int serial = 0; serial < names.length; serial++) {
+            names[serial] = manager.getString(serial, stringTable);
+        }
+        return names;
+    }
+
+    /**
+     * Replaces inodes and directory index, eg for another inode layout.
+     * Drops all other indexes, as these depend on the inode positions.
+     */
+    FsImageData withInodes(FsImageLoader.INodesRepository inodes, DirectoryIndex directoryIndex) {
+        return new FsImageData(stringTable, userNames, groupNames, inodes, directoryIndex, null, null, null);
+    }
+
+    FsImageData withDirectoryIndex(DirectoryIndex directoryIndex) {
+        return new FsImageData(stringTable, userNames, groupNames, inodes, directoryIndex,
+                columns, nameIndex, subtreeIndex);
+    }
+
+    FsImageData withColumns(INodeColumns columns) {
+        return new FsImageData(stringTable, userNames, groupNames, inodes, directoryIndex,
+                columns, nameIndex, subtreeIndex);
+    }
+
+    FsImageData withNameIndex(NameIndex nameIndex) {
+        return new FsImageData(stringTable, userNames, groupNames, inodes, directoryIndex,
+                columns, nameIndex, subtreeIndex);
+    }
+
+    FsImageData withSubtreeIndex(SubtreeIndex subtreeIndex) {
+        return new FsImageData(stringTable, userNames, groupNames, inodes, directoryIndex,
+                columns, nameIndex, subtreeIndex);
+    }
+
+    /**
+     * Checks if the columnar inode projection was loaded.
+     *
+     * @return true, if loaded via {@link FsImageLoader.Builder#columns()}.
+     */
+    public boolean hasColumns() {
+        return null != columns;
+    }
+
+    /**
+     * Gets the columnar inode projection, for scanning inode fields without protobuf parsing.
+     *
+     * @return the columns.
+     * @throws IllegalStateException if not loaded via {@link FsImageLoader.Builder#columns()}.
+     */
+    public INodeColumns getColumns() {
+        if (null == columns) {
+            throw new IllegalStateException("No columns loaded, see FsImageLoader.Builder.columns()");
+        }
+        return columns;
+    }
+
+    /**
+     * Gets the content summary, like <code>hdfs dfs -count -q</code>.
+     * <p>
+     * Uses the subtree index, building and caching it on first call if not loaded via
+     * {@link FsImageLoader.Builder#subtreeIndex()}. Subsequent calls need no traversal.
+     *
+     * @param path the path of a directory, file or symlink.
+     * @return the content summary.
+     * @throws IOException on error, eg FileNotFoundException if path does not exist.
+     */
+    public FsContentSummary getContentSummary(String path) throws IOException {
+        final int position = lookupPosition(path);
+        final SubtreeIndex index = getOrBuildSubtreeIndex();
+        long quota = FsContentSummary.QUOTA_NOT_SET;
+        long spaceQuota = FsContentSummary.QUOTA_NOT_SET;
+        final FsImageProto.INodeSection.INode inode = inodes.getInodeAt(position);
+        if (inode.hasDirectory()) {
+            final FsImageProto.INodeSection.INodeDirectory directory = inode.getDirectory();
+            quota = directory.hasNsQuota() ? directory.getNsQuota() : FsContentSummary.QUOTA_NOT_SET;
+            spaceQuota = directory.hasDsQuota() ? directory.getDsQuota() : FsContentSummary.QUOTA_NOT_SET;
+        }
+        return new FsContentSummary(index.getSubtreeFileSize(position),
+                index.getSubtreeFileCount(position),
+                index.getSubtreeDirectoryCount(position),
+                index.getSubtreeSymlinkCount(position),
+                index.getSubtreeSpaceConsumed(position),
+                quota,
+                spaceQuota);
+    }
+
+    private SubtreeIndex getOrBuildSubtreeIndex() {
+        if (null != subtreeIndex) {
+            return subtreeIndex;
+        }
+        SubtreeIndex index = lazySubtreeIndex;
+        if (null == index) {
+            synchronized (this) {
+                index = lazySubtreeIndex;
+                if (null == index) {
+                    index = SubtreeIndex.build(inodes, directoryIndex, true);
+                    lazySubtreeIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Checks if the subtree index was loaded.
+     *
+     * @return true, if loaded via {@link FsImageLoader.Builder#subtreeIndex()}.
+     */
+    public boolean hasSubtreeIndex() {
+        return null != subtreeIndex;
+    }
+
+    /**
+     * Gets the subtree index, for aggregates of any directory without traversal.
+     *
+     * @return the subtree index.
+     * @throws IllegalStateException if not loaded via {@link FsImageLoader.Builder#subtreeIndex()}.
+     */
+    public SubtreeIndex getSubtreeIndex() {
+        if (null == subtreeIndex) {
+            throw new IllegalStateException("No subtree index loaded, see FsImageLoader.Builder.subtreeIndex()");
+        }
+        return subtreeIndex;
+    }
+
+    SerialNumberManager.StringTable getStringTable() {
+        return stringTable;
+    }
+
+    FsImageLoader.INodesRepository getInodes() {
+        return inodes;
+    }
+
+    DirectoryIndex getDirectoryIndex() {
+        return directoryIndex;
     }
 
 
@@ -47,15 +224,19 @@ public class FsImageData {
         if (!FsUtil.isDirectory(nodeId)) {
             throw new IllegalArgumentException("Expected directory but <" + path + "> is of type " + nodeId.getType());
         }
-        long[] children = dirMap.get(nodeId.getId());
-        if (children.length == 0) {
+        final int position = inodes.getPosition(nodeId.getId());
+        final int from = directoryIndex.getChildrenStart(position);
+        final int to = directoryIndex.getChildrenEnd(position);
+        if (from == to) {
             return Collections.emptyList();
         } else {
-            List<FsImageProto.INodeSection.INode> files = new ArrayList<>(children.length);
-            for (long cid : children) {
-                final FsImageProto.INodeSection.INode inode = inodes.getInode(cid);
-                if (FsUtil.isFile(inode)) {
-                    files.add(inode);
+            List<FsImageProto.INodeSection.INode> files = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                final int childPosition = directoryIndex.getChildPosition(i);
+                // Only parse files
+                if (FsImageProto.INodeSection.INode.Type.FILE ==
+                        INodeWireFormat.getType(inodes.getInodeBytesAt(childPosition))) {
+                    files.add(inodes.getInodeAt(childPosition));
                 }
             }
             return files;
@@ -66,6 +247,68 @@ public class FsImageData {
         return inodes.getInode(id);
     }
 
+    /**
+     * Gets the serialized inode, for extracting single fields without parsing the whole inode.
+     *
+     * @param id the inode id.
+     * @return a view from buffer position to limit - must not be modified.
+     * @throws IllegalArgumentException if no such inode exists.
+     * @see INodeWireFormat
+     */
+    public ByteBuffer getInodeBytes(long id) {
+        return inodes.getInodeBytes(id);
+    }
+
+    /**
+     * Gets the parent directory id.
+     *
+     * @param inodeId the inode id.
+     * @return the parent directory id, or {@link HdfsConstants#GRANDFATHER_INODE_ID} for the root
+     * or an inode not linked into the directory tree (eg only referenced by a snapshot).
+     * @throws IllegalArgumentException if no such inode exists.
+     */
+    public long getParentId(long inodeId) {
+        final int parentPosition = directoryIndex.getParentPosition(getPosition(inodeId));
+        return DirectoryIndex.NO_PARENT == parentPosition ?
+                HdfsConstants.GRANDFATHER_INODE_ID : inodes.getInodeId(parentPosition);
+    }
+
+    /**
+     * Gets the absolute path of an inode, by walking up the parent directories.
+     *
+     * @param inodeId the inode id.
+     * @return the path, eg /foo/bar.txt
+     * @throws FileNotFoundException if the inode is not linked into the directory tree.
+     * @throws IllegalArgumentException if no such inode exists.
+     */
+    public String getPath(long inodeId) throws FileNotFoundException {
+        if (INodeId.ROOT_INODE_ID == inodeId) {
+            return ROOT_PATH;
+        }
+        final List<CharSequence> names = new ArrayList<>();
+        int position = getPosition(inodeId);
+        do {
+            names.add(StandardCharsets.UTF_8.decode(INodeWireFormat.getName(inodes.getInodeBytesAt(position))));
+            position = directoryIndex.getParentPosition(position);
+        } while (DirectoryIndex.NO_PARENT != position && INodeId.ROOT_INODE_ID != inodes.getInodeId(position));
+        if (DirectoryIndex.NO_PARENT == position) {
+            throw new FileNotFoundException("Inode id " + inodeId + " is not linked into directory tree");
+        }
+        final StringBuilder path = new StringBuilder();
+        for (int i = names.size() - 1; i >= 0; i--) {
+            path.append(PATH_SEPARATOR).append(names.get(i));
+        }
+        return path.toString();
+    }
+
+    private int getPosition(long inodeId) {
+        final int position = inodes.getPosition(inodeId);
+        if (position < 0) {
+            throw new IllegalArgumentException("Can not find inode by id " + inodeId);
+        }
+        return position;
+    }
+
     /**
      * Returns the INode of a directory, file or symlink for the specified path.
      *
@@ -74,48 +317,62 @@ public class FsImageData {
      * @throws IOException on error.
      */
     public FsImageProto.INodeSection.INode getINodeFromPath(String path) throws IOException {
+        return inodes.getInodeAt(lookupPosition(path));
+    }
+
+    int lookupPosition(String path) throws FileNotFoundException {
         if (!path.startsWith(ROOT_PATH)) {
             throw new IllegalArgumentException("Expected path <" + path + "> to start with " + PATH_SEPARATOR);
         }
         String normalizedPath = normalizePath(path);
-        long id = INodeId.ROOT_INODE_ID;
+        int position = getPosition(INodeId.ROOT_INODE_ID);
         // Root node?
         if (ROOT_PATH.equals(normalizedPath)) {
-            return inodes.getInode(id);
+            return position;
         }
 
         // Walk the hierarchy for each path segment
         int startIdx = 1;
         int endIdx = startIdx;
-        FsImageProto.INodeSection.INode node = null;
         while (endIdx > 0) {
             endIdx = normalizedPath.indexOf(PATH_SEPARATOR, startIdx);
             String pathSegment = endIdx >= 0 ? normalizedPath.substring(startIdx, endIdx) /* dir */ : normalizedPath.substring(startIdx) /* file */;
 
-            final long[] children = dirMap.get(id);
-            if (children.length == 0) {
-                throw new FileNotFoundException(path);
-            }
-
-            boolean found = false;
-            for (long cid : children) {
-                node = inodes.getInode(cid);
-                if (pathSegment.equals(node.getName().toStringUtf8())) {
-                    found = true;
-                    id = node.getId();
-                    break;
-                }
-            }
-            if (!found) {
+            // Compare encoded names, to avoid parsing each child
+            position = findChild(position, pathSegment.getBytes(StandardCharsets.UTF_8));
+            if (position < 0) {
                 throw new FileNotFoundException(path);
             }
 
             startIdx = endIdx + 1;
         }
 
-        return node;
+        return position;
     }
 
+    /**
+     * Finds a child by name, via the name index or binary search if available, or else by scanning the children.
+     *
+     * @param parentPosition the directory position.
+     * @param name           the UTF-8 encoded child name.
+     * @return the child position, or a negative value if no such child.
+     */
+    private int findChild(int parentPosition, byte[] name) {
+        if (null != nameIndex) {
+            return nameIndex.find(parentPosition, name);
+        }
+        if (directoryIndex.isSortedByName()) {
+            return directoryIndex.findChildSorted(parentPosition, name);
+        }
+        final int to = directoryIndex.getChildrenEnd(parentPosition);
+        for (int i = directoryIndex.getChildrenStart(parentPosition); i < to; i++) {
+            final int childPosition = directoryIndex.getChildPosition(i);
+            if (INodeWireFormat.hasName(inodes.getInodeBytesAt(childPosition), name)) {
+                return childPosition;
+            }
+        }
+        return -1;
+    }
 
     /**
      * Checks if an INode entry (directory, file or symlink) exists for the specified path.
@@ -142,17 +399,19 @@ public class FsImageData {
      * @throws IOException on error, eg FileNotFoundException if path does not exist.
      */
     public List<String> getChildDirectories(String path) throws IOException {
-        final long parentNodeId = lookupInodeId(path);
-        long[] children = dirMap.get(parentNodeId);
-        if (children.length == 0) {
+        final int position = lookupPosition(path);
+        final int from = directoryIndex.getChildrenStart(position);
+        final int to = directoryIndex.getChildrenEnd(position);
+        if (from == to) {
             return Collections.emptyList();
         } else {
             List<String> childPaths = new ArrayList<>();
             final String pathWithTrailingSlash = ROOT_PATH.equals(path) ? path : path + PATH_SEPARATOR;
-            for (long cid : children) {
-                final FsImageProto.INodeSection.INode inode = inodes.getInode(cid);
-                if (FsUtil.isDirectory(inode)) {
-                    childPaths.add(pathWithTrailingSlash + inode.getName().toStringUtf8());
+            for (int i = from; i < to; i++) {
+                final ByteBuffer inode = inodes.getInodeBytesAt(directoryIndex.getChildPosition(i));
+                if (FsImageProto.INodeSection.INode.Type.DIRECTORY == INodeWireFormat.getType(inode)) {
+                    childPaths.add(pathWithTrailingSlash +
+                            StandardCharsets.UTF_8.decode(INodeWireFormat.getName(inode)));
                 }
             }
             return childPaths;
@@ -180,7 +439,8 @@ public class FsImageData {
      * @return true, if child inodes exist.
      */
     public boolean hasChildren(long nodeId) {
-        return dirMap.get(nodeId).length > 0;
+        final int position = inodes.getPosition(nodeId);
+        return position >= 0 && directoryIndex.getChildCount(position) > 0;
     }
 
     /**
@@ -269,7 +529,7 @@ public class FsImageData {
      * @return the inode id.
      */
     private long lookupInodeId(String path) throws IOException {
-        return getINodeFromPath(path).getId();
+        return inodes.getInodeId(lookupPosition(path));
     }
 
     /**
@@ -282,6 +542,51 @@ public class FsImageData {
         return FSImageFormatPBINode.Loader.loadPermission(permission, stringTable);
     }
 
+    /**
+     * Resolves a user serial number, eg for aggregating by number and resolving names afterwards.
+     * <p>
+     * Unlike {@link #getPermissionStatus(long)}, a pre-resolved name is looked up without allocation.
+     *
+     * @param userId the user serial number, see {@link FsUtil#getUserId(long)}.
+     * @return the user name.
+     */
+    public String getUserName(int userId) {
+        return userId < userNames.length ? userNames[userId] : SerialNumberManager.USER.getString(userId, stringTable);
+    }
+
+    /**
+     * Resolves a group serial number, eg for aggregating by number and resolving names afterwards.
+     * <p>
+     * Unlike {@link #getPermissionStatus(long)}, a pre-resolved name is looked up without allocation.
+     *
+     * @param groupId the group serial number, see {@link FsUtil#getGroupId(long)}.
+     * @return the group name.
+     */
+    public String getGroupName(int groupId) {
+        return groupId < groupNames.length ? groupNames[groupId] :
+                SerialNumberManager.GROUP.getString(groupId, stringTable);
+    }
+
+    /**
+     * Resolves the user name of a packed permission, without allocation.
+     *
+     * @param permission the permission, eg {@link FsImageProto.INodeSection.INodeFile#getPermission()}.
+     * @return the user name.
+     */
+    public String getUserNameOfPermission(long permission) {
+        return getUserName(FsUtil.getUserId(permission));
+    }
+
+    /**
+     * Resolves the group name of a packed permission, without allocation.
+     *
+     * @param permission the permission, eg {@link FsImageProto.INodeSection.INodeFile#getPermission()}.
+     * @return the group name.
+     */
+    public String getGroupNameOfPermission(long permission) {
+        return getGroupName(FsUtil.getGroupId(permission));
+    }
+
     /**
      * Gets the number of INode children.
      *
@@ -289,7 +594,8 @@ public class FsImageData {
      * @return the number of children or 0 (eg when type FILE or SYMLINK).
      */
     public int getNumChildren(FsImageProto.INodeSection.INode inode) {
-        return dirMap.get(inode.getId()).length;
+        final int position = inodes.getPosition(inode.getId());
+        return position < 0 ? 0 : directoryIndex.getChildCount(position);
     }
 
     /**
@@ -299,7 +605,7 @@ public class FsImageData {
      * @return array of child node IDs or empty array.
      */
     public long[] getChildINodeIds(long pathNodeId) {
-        return dirMap.get(pathNodeId);
+        return directoryIndex.getChildIds(pathNodeId);
     }
 
     private static final Pattern DOUBLE_SLASH = Pattern.compile("//+");
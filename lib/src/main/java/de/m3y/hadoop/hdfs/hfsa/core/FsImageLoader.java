@@ -17,19 +17,34 @@
  */
 package de.m3y.hadoop.hdfs.hfsa.core;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import com.google.common.primitives.ImmutableLongArray;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
-import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
 import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
@@ -41,7 +56,6 @@ import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.thirdparty.protobuf.CodedInputStream;
 import org.apache.hadoop.thirdparty.protobuf.InvalidProtocolBufferException;
 import org.apache.hadoop.thirdparty.protobuf.Parser;
-import org.apache.hadoop.util.LimitInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,9 +83,31 @@ import static org.apache.hadoop.hdfs.server.namenode.SerialNumberManager.newStri
 public class FsImageLoader {
     private static final Logger LOG = LoggerFactory.getLogger(FsImageLoader.class);
     private final Builder.LoadingStrategy loadingStrategy;
+    private final boolean parallel;
+    private final ForkJoinPool forkJoinPool;
+    private final int parallelism;
+    private final boolean memoryMapped;
+    private final boolean pipelined;
+    private final File sidecarIndex;
+    private final boolean columns;
+    private final boolean nameIndex;
+    private final boolean sortedChildren;
+    private final boolean preOrderLayout;
+    private final boolean subtreeIndex;
 
-    public FsImageLoader(Builder.LoadingStrategy loadingStrategy) {
-        this.loadingStrategy = loadingStrategy;
+    FsImageLoader(Builder builder) {
+        this.loadingStrategy = builder.loadingStrategy;
+        this.parallel = builder.parallel;
+        this.forkJoinPool = builder.forkJoinPool;
+        this.parallelism = builder.parallelism;
+        this.memoryMapped = builder.memoryMapped;
+        this.pipelined = builder.pipelined;
+        this.sidecarIndex = builder.sidecarIndex;
+        this.columns = builder.columns;
+        this.nameIndex = builder.nameIndex;
+        this.sortedChildren = builder.sortedChildren;
+        this.preOrderLayout = builder.preOrderLayout;
+        this.subtreeIndex = builder.subtreeIndex;
     }
 
     /**
@@ -87,6 +123,71 @@ public class FsImageLoader {
          */
         INode getInode(long inodeId) throws IOException;
 
+        /**
+         * Gets the position of an inode.
+         * <p>
+         * Positions are ordered by ascending inode id, unless laid out in tree order via
+         * {@link Builder#preOrderLayout()}.
+         *
+         * @param inodeId the inode identifier.
+         * @return the position, or a negative value if no such inode exists.
+         */
+        int getPosition(long inodeId);
+
+        /**
+         * Gets the inode identifier at given position.
+         *
+         * @param position the position, from 0 to {@link #getSize()} (exclusive).
+         * @return the inode identifier.
+         */
+        long getInodeId(int position);
+
+        /**
+         * Gets the inode at given position.
+         *
+         * @param position the position, from 0 to {@link #getSize()} (exclusive).
+         * @return the inode.
+         * @throws IOException if protobuf deserialization fails
+         */
+        INode getInodeAt(int position) throws IOException;
+
+        /**
+         * Gets the serialized inode at given position, for extracting fields without parsing.
+         *
+         * @param position the position, from 0 to {@link #getSize()} (exclusive).
+         * @return a view from buffer position to limit, sharing the repository bytes - must not be modified.
+         * @see de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat
+         */
+        ByteBuffer getInodeBytesAt(int position);
+
+        /**
+         * Gets the serialized inode by its identifier.
+         *
+         * @param inodeId the inode identifier.
+         * @return a view from buffer position to limit, sharing the repository bytes - must not be modified.
+         * @throws IllegalArgumentException if no such inode exists.
+         */
+        default ByteBuffer getInodeBytes(long inodeId) {
+            final int position = getPosition(inodeId);
+            if (position < 0) {
+                throw new IllegalArgumentException("Can not find inode by id " + inodeId);
+            }
+            return getInodeBytesAt(position);
+        }
+
+        /**
+         * Copies the serialized inode at given position into a reusable view.
+         * <p>
+         * The default implementation copies from {@link #getInodeBytesAt(int)}, implementations may avoid the
+         * intermediate buffer.
+         *
+         * @param position the position, from 0 to {@link #getSize()} (exclusive).
+         * @param view     the view to fill.
+         */
+        default void readInodeAt(int position, INodeView view) {
+            view.reset(getInodeBytesAt(position));
+        }
+
         /**
          * Gets the number of inodes in this repository.
          *
@@ -97,6 +198,23 @@ public class FsImageLoader {
 
     interface INodesRepositoryBuilder {
         INodesRepository build(FsImageProto.INodeSection s, InputStream in, long length) throws IOException;
+
+        /**
+         * Builds the repository from INODE_SUB sub-sections, as written by Hadoop 3.3+ for parallel loading.
+         * <p>
+         * The default implementation reads the sub-sections one after another.
+         *
+         * @param s           the INODE section header, read from the first sub-section.
+         * @param subSections the sub-section streams, in order.
+         * @param length      the total length of all sub-sections.
+         * @param executor    the executor for decoding sub-sections concurrently.
+         * @return the repository.
+         * @throws IOException on error.
+         */
+        default INodesRepository build(FsImageProto.INodeSection s, List<InputStream> subSections, long length,
+                                       ExecutorService executor) throws IOException {
+            return build(s, new SequenceInputStream(Collections.enumeration(subSections)), length);
+        }
     }
 
     /**
@@ -110,11 +228,13 @@ public class FsImageLoader {
         private final byte[][] inodes;
         // inodesIdxToIdCache contains the INode ID, to avoid redundant parsing when using fromINodeId
         private final long[] inodesIdxToIdCache;
+        private final INodeIdIndex idIndex;
         private final INode rootInode;
 
         PrimitiveArrayINodesRepository(byte[][] buf, long[] inodeOffsets) throws InvalidProtocolBufferException {
             inodes = buf;
             this.inodesIdxToIdCache = inodeOffsets;
+            idIndex = new INodeIdIndex(inodesIdxToIdCache);
             rootInode = INODE_PARSER.parseFrom(getInodeAsBytes(INodeId.ROOT_INODE_ID));
         }
 
@@ -137,6 +257,49 @@ public class FsImageLoader {
                 return new PrimitiveArrayINodesRepository(inodes, computeInodesIdxToIdCache(inodes));
             }
 
+            @Override
+            public INodesRepository build(FsImageProto.INodeSection s, List<InputStream> subSections, long length,
+                                          ExecutorService executor) throws IOException {
+                long start = System.currentTimeMillis();
+                List<Future<List<byte[]>>> futures = new ArrayList<>(subSections.size());
+                for (InputStream in : subSections) {
+                    futures.add(executor.submit(() -> readINodes(in)));
+                }
+                // Each sub-section fills its own part of the inodes
+                final byte[][] inodes = new byte[(int) s.getNumInodes()][];
+                int pos = 0;
+                for (Future<List<byte[]>> future : futures) {
+                    final List<byte[]> subSectionINodes = get(future);
+                    if (pos + subSectionINodes.size() > inodes.length) {
+                        throw new IllegalStateException("Expected " + inodes.length + " inodes but sub-sections contain more");
+                    }
+                    for (byte[] bytes : subSectionINodes) {
+                        inodes[pos++] = bytes;
+                    }
+                }
+                if (pos != inodes.length) {
+                    throw new IllegalStateException("Expected " + inodes.length + " inodes but sub-sections contain " + pos);
+                }
+                LOG.debug("Loaded {} inodes from {} sub-sections [{}ms] of length {} bytes",
+                        s.getNumInodes(), subSections.size(), System.currentTimeMillis() - start, length);
+                start = System.currentTimeMillis();
+                sortINodes(inodes);
+                LOG.debug("Sorted {} inodes [{}ms]", inodes.length, System.currentTimeMillis() - start);
+                return new PrimitiveArrayINodesRepository(inodes, computeInodesIdxToIdCache(inodes));
+            }
+
+            private static List<byte[]> readINodes(InputStream in) throws IOException {
+                List<byte[]> inodes = new ArrayList<>();
+                int firstByte;
+                while ((firstByte = in.read()) >= 0) {
+                    int size = CodedInputStream.readRawVarint32(firstByte, in);
+                    byte[] bytes = new byte[size];
+                    IOUtils.readFully(in, bytes, 0, size);
+                    inodes.add(bytes);
+                }
+                return inodes;
+            }
+
             protected void sortINodes(byte[][] inodes) {
                 // TODO: Cache INodes?
                 Arrays.sort(inodes, INODE_BYTES_COMPARATOR);
@@ -164,23 +327,38 @@ public class FsImageLoader {
         }
 
 
+        @Override
+        public int getPosition(final long inodeId) {
+            return idIndex.getPosition(inodeId);
+        }
+
         private byte[] getInodeAsBytes(final long inodeId) {
-            // Binary search over sorted node id array
-            int l = 0;
-            int r = inodes.length - 1;
-            while (l <= r) {
-                int mid = (l + r) >>> 1;
-                long currentInodeId = inodesIdxToIdCache[mid];
-
-                if (currentInodeId < inodeId) {
-                    l = mid + 1;
-                } else if (currentInodeId > inodeId) {
-                    r = mid - 1;
-                } else {
-                    return inodes[mid];
-                }
+            final int position = getPosition(inodeId);
+            if (position < 0) {
+                throw new IllegalArgumentException("Can not find inode by id " + inodeId);
             }
-            throw new IllegalArgumentException("Can not find inode by id " + inodeId);
+            return inodes[position];
+        }
+
+        @Override
+        public long getInodeId(int position) {
+            return inodesIdxToIdCache[position];
+        }
+
+        @Override
+        public INode getInodeAt(int position) throws IOException {
+            return INODE_PARSER.parseFrom(inodes[position]);
+        }
+
+        @Override
+        public ByteBuffer getInodeBytesAt(int position) {
+            return ByteBuffer.wrap(inodes[position]);
+        }
+
+        @Override
+        public void readInodeAt(int position, INodeView view) {
+            final byte[] inode = inodes[position];
+            view.reset(inode, 0, inode.length);
         }
 
         @Override
@@ -197,6 +375,10 @@ public class FsImageLoader {
         }
 
         private static long extractNodeId(byte[] buf) {
+            return extractNodeId(buf, 0);
+        }
+
+        static long extractNodeId(byte[] buf, int offset) {
             // Pretty much of a hack, as Protobuf 2.5 does not partial parsing
             // In a micro benchmark, it is several times(!) faster than
             // FsImageProto.INodeSection.INode.parseFrom(o2).getId()
@@ -210,7 +392,7 @@ public class FsImageLoader {
 
             // Even more optimized, no direct object creation such as CodedInputStream:
             // Extracted from CodedInputStream.readRawVarint64()
-            int bufferPos = 3; /* tag + enum + tag */
+            int bufferPos = offset + 3; /* tag + enum + tag */
             int shift = 0;
             long result = 0;
             while (shift < 64) {
@@ -221,8 +403,8 @@ public class FsImageLoader {
                 }
                 shift += 7;
             }
-            throw new IllegalArgumentException("Malformed Varint at pos 3 : ["
-                    + buf[3] + "," + buf[4] + "," + buf[5] + "," + buf[6] + "]");
+            throw new IllegalArgumentException("Malformed Varint at pos " + (offset + 3) + " : ["
+                    + buf[offset + 3] + "," + buf[offset + 4] + "," + buf[offset + 5] + "," + buf[offset + 6] + "]");
         }
     }
 
@@ -238,12 +420,34 @@ public class FsImageLoader {
                 sectionList.stream().map(FileSummary.Section::getName).collect(Collectors.joining(", ")));
     }
 
+    private static List<FileSummary.Section> findSubSectionsByName(
+            List<FileSummary.Section> sectionList, SectionName sectionName) {
+        return sectionList.stream()
+                .filter(section -> sectionName.name().equals(section.getName()))
+                .sorted(Comparator.comparingLong(FileSummary.Section::getOffset))
+                .collect(Collectors.toList());
+    }
+
+    static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading fsimage sub-section");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     @FunctionalInterface
     private interface IOFunction<R> {
         R apply(InputStream t, long length) throws IOException;
     }
 
-    private <T> T loadSection(FileInputStream fin,
+    private <T> T loadSection(FileChannel fc,
                               String codec,
                               FileSummary.Section section,
                               IOFunction<T> f) {
@@ -252,15 +456,8 @@ public class FsImageLoader {
         }
         long startTime = System.currentTimeMillis();
         try {
-            FileChannel fc = fin.getChannel();
-            fc.position(section.getOffset());
-
-            // Min 8 KiB, max 1024 KiB buffer
-            final int bufferSize = Math.max(
-                    (int) Math.min(section.getLength(), 1024L * 1024L /* 1024KiB */),
-                    8 * 1024 /* 8KiB */);
             InputStream is = FSImageUtil.wrapInputStreamForCompression(new Configuration(), codec,
-                    new FastBufferedInputStream(new LimitInputStream(fin, section.getLength()), bufferSize));
+                    openSection(fc, section));
 
             final T apply = f.apply(is, section.getLength());
             LOG.debug("Loaded fsimage section {} in {}ms", section.getName(), System.currentTimeMillis() - startTime);
@@ -270,6 +467,71 @@ public class FsImageLoader {
         }
     }
 
+    private InputStream openSection(FileChannel fc, FileSummary.Section section) throws IOException {
+        if (memoryMapped) {
+            // Reads straight from the page cache, without syscalls or copying into an intermediate buffer
+            return new MappedSection(fc, section.getOffset(), section.getLength()).newInputStream();
+        }
+
+        // Min 8 KiB, max 1024 KiB buffer
+        final int bufferSize = Math.max(
+                (int) Math.min(section.getLength(), 1024L * 1024L /* 1024KiB */),
+                8 * 1024 /* 8KiB */);
+        return new FastBufferedInputStream(
+                new PositionalInputStream(fc, section.getOffset(), section.getLength()), bufferSize);
+    }
+
+    /**
+     * Reads a file region using positional reads.
+     * <p>
+     * Does not modify the channel position, so several regions can be read concurrently from a single channel.
+     */
+    static class PositionalInputStream extends InputStream {
+        private final FileChannel fc;
+        private final long end;
+        private long pos;
+
+        PositionalInputStream(FileChannel fc, long offset, long length) {
+            this.fc = fc;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final long remaining = end - pos;
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = fc.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), pos);
+            if (n > 0) {
+                pos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0L, Math.min(n, end - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - pos);
+        }
+    }
+
     /**
      * Load fsimage into the memory.
      *
@@ -278,38 +540,251 @@ public class FsImageLoader {
      * @throws IOException if failed to load fsimage.
      */
     public FsImageData load(RandomAccessFile file) throws IOException {
+        if (null == forkJoinPool && 0 == parallelism) {
+            return loadInCurrentPool(file);
+        }
+
+        // Parallel streams and sorts run in the pool of the calling fork/join worker
+        final ForkJoinPool pool = null != forkJoinPool ? forkJoinPool : new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> loadInCurrentPool(file)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading fsimage");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (null == forkJoinPool) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Gets the fork/join pool for parallel work, which is the configured pool when loading via {@link #load}.
+     *
+     * @return the pool of the current fork/join worker, or the common pool.
+     */
+    private static ForkJoinPool currentPool() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    }
+
+    private FsImageData loadInCurrentPool(RandomAccessFile file) throws IOException {
+        FsImageData fsImageData = loadFsImageData(file);
+        if (sortedChildren) {
+            fsImageData = fsImageData.withDirectoryIndex(fsImageData.getDirectoryIndex().sortByName(parallel));
+        }
+        if (preOrderLayout) {
+            final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+            final int[] order = directoryIndex.preOrder();
+            final INodesRepository inodes = ArenaINodesRepository.copyOf(fsImageData.getInodes(), order);
+            fsImageData = fsImageData.withInodes(inodes, directoryIndex.reorder(inodes, order));
+        }
+        if (columns) {
+            fsImageData = fsImageData.withColumns(
+                    INodeColumns.build(fsImageData.getInodes(), fsImageData.getDirectoryIndex(), parallel));
+        }
+        if (nameIndex) {
+            fsImageData = fsImageData.withNameIndex(
+                    NameIndex.build(fsImageData.getInodes(), fsImageData.getDirectoryIndex(), parallel));
+        }
+        if (subtreeIndex) {
+            fsImageData = fsImageData.withSubtreeIndex(
+                    SubtreeIndex.build(fsImageData.getInodes(), fsImageData.getDirectoryIndex(), parallel));
+        }
+        return fsImageData;
+    }
+
+    private FsImageData loadFsImageData(RandomAccessFile file) throws IOException {
         if (!FSImageUtil.checkFileFormat(file)) {
             throw new IOException("Unrecognized FSImage format (no magic header?)");
         }
 
         FileSummary summary = FSImageUtil.loadSummary(file);
         String codec = summary.getCodec();
-        try (FileInputStream fin = new FileInputStream(file.getFD())) {
-            // Section list only
-            final List<FileSummary.Section> sectionsList = summary.getSectionsList();
+        FileChannel fc = file.getChannel();
+        if (null == sidecarIndex) {
+            return load(fc, codec, summary);
+        }
 
-            FileSummary.Section sectionStringTable = findSectionByName(sectionsList, SectionName.STRING_TABLE);
-            StringTable stringTable = loadSection(fin, codec, sectionStringTable, this::loadStringTable);
+        final FileSummary.Section sectionNsInfo = findSectionByName(summary.getSectionsList(), SectionName.NS_INFO);
+        final long txId = loadSection(fc, codec, sectionNsInfo,
+                (InputStream is, long length) -> FsImageProto.NameSystemSection.parseDelimitedFrom(is))
+                .getTransactionId();
+        final SidecarIndex.Key key = SidecarIndex.Key.of(file.length(), txId, summary);
+        try {
+            final FsImageData fsImageData = SidecarIndex.read(sidecarIndex, key, fc);
+            if (null != fsImageData) {
+                return fsImageData;
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOG.warn("Ignoring unreadable sidecar index {}", sidecarIndex, ex);
+        }
+
+        final FsImageData fsImageData = load(fc, codec, summary);
+        if (fsImageData.getInodes() instanceof LazyMappedINodesRepository) {
+            try {
+                SidecarIndex.write(sidecarIndex, key, fsImageData.getStringTable(),
+                        (LazyMappedINodesRepository) fsImageData.getInodes(), fsImageData.getDirectoryIndex());
+            } catch (IOException ex) {
+                LOG.warn("Can not write sidecar index {}", sidecarIndex, ex);
+            }
+        } else {
+            LOG.warn("Skipping sidecar index {}, as it requires an uncompressed fsimage", sidecarIndex);
+        }
+        return fsImageData;
+    }
+
+    private FsImageData load(FileChannel fc, String codec, FileSummary summary) throws IOException {
+        // Section list only
+        final List<FileSummary.Section> sectionsList = summary.getSectionsList();
+        FileSummary.Section sectionStringTable = findSectionByName(sectionsList, SectionName.STRING_TABLE);
+        FileSummary.Section sectionInodeRef = findSectionByName(sectionsList, SectionName.INODE_REFERENCE);
+        FileSummary.Section sectionInode = findSectionByName(sectionsList, SectionName.INODE);
+        FileSummary.Section sectionInodeDir = findSectionByName(sectionsList, SectionName.INODE_DIR);
 
-            FileSummary.Section sectionInodeRef = findSectionByName(sectionsList, SectionName.INODE_REFERENCE);
-            ImmutableLongArray refIdList = loadSection(fin, codec, sectionInodeRef, this::loadINodeReferenceSection);
+        // Hadoop 3.3+ optionally writes sub-sections for parallel loading
+        final List<FileSummary.Section> inodeSubSections = parallel ?
+                findSubSectionsByName(sectionsList, SectionName.INODE_SUB) : Collections.emptyList();
+        final List<FileSummary.Section> inodeDirSubSections = parallel ?
+                findSubSectionsByName(sectionsList, SectionName.INODE_DIR_SUB) : Collections.emptyList();
+        final ExecutorService subSectionExecutor = inodeSubSections.isEmpty() && inodeDirSubSections.isEmpty() ? null :
+                Executors.newFixedThreadPool(null != forkJoinPool || 0 != parallelism ?
+                                currentPool().getParallelism() : Runtime.getRuntime().availableProcessors(),
+                        new ThreadFactoryBuilder().setNameFormat("fsimage-subsection-loader-%d").setDaemon(true).build());
+        try {
+            final Supplier<INodesRepository> inodesLoader = inodeSubSections.isEmpty() ?
+                    () -> loadSection(fc, codec, sectionInode, this::loadINodeSection) : // SLOW!!!
+                    () -> loadINodeSubSections(fc, codec, inodeSubSections, subSectionExecutor);
+            final Function<ImmutableLongArray, DirectoryIndex.Entries> dirsLoader =
+                    inodeDirSubSections.isEmpty() ?
+                            refIdList -> loadSection(fc, codec, sectionInodeDir,
+                                    (InputStream is, long length) -> loadINodeDirectorySection(is, refIdList)) : // SLOW!!!
+                            refIdList -> loadINodeDirectorySubSections(fc, codec, inodeDirSubSections, refIdList,
+                                    subSectionExecutor);
+
+            if (pipelined) {
+                return loadPipelined(fc, codec, sectionStringTable, sectionInodeRef, inodesLoader, dirsLoader);
+            }
 
-            FileSummary.Section sectionInode = findSectionByName(sectionsList, SectionName.INODE);
-            INodesRepository inodes = loadSection(fin, codec, sectionInode, this::loadINodeSection); // SLOW!!!
+            StringTable stringTable = loadSection(fc, codec, sectionStringTable, this::loadStringTable);
+            ImmutableLongArray refIdList = loadSection(fc, codec, sectionInodeRef, this::loadINodeReferenceSection);
+            INodesRepository inodes = inodesLoader.get();
+            DirectoryIndex.Entries dirs = dirsLoader.apply(refIdList);
 
-            FileSummary.Section sectionInodeDir = findSectionByName(sectionsList, SectionName.INODE_DIR);
+            return new FsImageData(stringTable, inodes, DirectoryIndex.build(inodes, dirs, parallel));
+        } finally {
+            if (null != subSectionExecutor) {
+                subSectionExecutor.shutdownNow();
+            }
+        }
+    }
 
-            Long2ObjectLinkedOpenHashMap<long[]> dirMap = loadSection(fin, codec, sectionInodeDir,
-                    (InputStream is, long length) -> loadINodeDirectorySection(is, refIdList)); // SLOW!!!
+    /**
+     * Loads the sections concurrently, as the section offsets are known from the file summary.
+     * <p>
+     * The only dependency is INODE_DIR requiring the INODE_REFERENCE list.
+     */
+    private FsImageData loadPipelined(FileChannel fc, String codec,
+                                      FileSummary.Section sectionStringTable,
+                                      FileSummary.Section sectionInodeRef,
+                                      Supplier<INodesRepository> inodesLoader,
+                                      Function<ImmutableLongArray, DirectoryIndex.Entries> dirsLoader) {
+        final ExecutorService executor = Executors.newFixedThreadPool(3,
+                new ThreadFactoryBuilder().setNameFormat("fsimage-loader-%d").setDaemon(true).build());
+        try {
+            // Inodes and directory index may sort in parallel, so build in the fork/join pool
+            final ForkJoinPool pool = currentPool();
+            CompletableFuture<INodesRepository> inodes = CompletableFuture.supplyAsync(inodesLoader, pool);
+            // Directory index requires inode positions, so build when both inodes and directories are loaded
+            CompletableFuture<DirectoryIndex> directoryIndex = CompletableFuture.supplyAsync(
+                    () -> loadSection(fc, codec, sectionInodeRef, this::loadINodeReferenceSection), executor)
+                    .thenApplyAsync(dirsLoader, executor)
+                    .thenCombineAsync(inodes, (dirs, repository) -> DirectoryIndex.build(repository, dirs, parallel),
+                            pool);
+            CompletableFuture<StringTable> stringTable = CompletableFuture.supplyAsync(
+                    () -> loadSection(fc, codec, sectionStringTable, this::loadStringTable), executor);
 
-            return new FsImageData(stringTable, inodes, dirMap);
+            return new FsImageData(join(stringTable), join(inodes), join(directoryIndex));
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private Long2ObjectLinkedOpenHashMap<long[]> loadINodeDirectorySection(InputStream in, ImmutableLongArray refIdList)
+    private List<InputStream> openSubSections(FileChannel fc, String codec, List<FileSummary.Section> subSections)
             throws IOException {
-        Long2ObjectLinkedOpenHashMap<long[]> dirs = new Long2ObjectLinkedOpenHashMap<>(512 * 1024 /* 512K */);
-        dirs.defaultReturnValue(new long[0] /* Empty array, to avoid null */);
+        List<InputStream> streams = new ArrayList<>(subSections.size());
+        for (FileSummary.Section subSection : subSections) {
+            // Each sub-section is compressed individually
+            streams.add(FSImageUtil.wrapInputStreamForCompression(new Configuration(), codec,
+                    openSection(fc, subSection)));
+        }
+        return streams;
+    }
+
+    private INodesRepository loadINodeSubSections(FileChannel fc, String codec,
+                                                  List<FileSummary.Section> subSections,
+                                                  ExecutorService executor) {
+        LOG.debug("Loading {} fsimage sub-sections {}", subSections.size(), SectionName.INODE_SUB);
+        long startTime = System.currentTimeMillis();
+        try {
+            final List<InputStream> streams = openSubSections(fc, codec, subSections);
+            // The first sub-section starts with the INODE section header
+            FsImageProto.INodeSection s = FsImageProto.INodeSection.parseDelimitedFrom(streams.get(0));
+            final long length = subSections.stream().mapToLong(FileSummary.Section::getLength).sum();
+            final INodesRepository inodes = loadingStrategy.createInodeRepositoryBuilder(parallel)
+                    .build(s, streams, length, executor);
+            LOG.debug("Loaded fsimage sub-sections {} in {}ms", SectionName.INODE_SUB,
+                    System.currentTimeMillis() - startTime);
+            return inodes;
+        } catch (Throwable ex) { // Can be IOException or NoClassDefFoundError
+            throw new IllegalStateException("Can not load fsimage sub-sections " + SectionName.INODE_SUB, ex);
+        }
+    }
+
+    private DirectoryIndex.Entries loadINodeDirectorySubSections(FileChannel fc, String codec,
+                                                                 List<FileSummary.Section> subSections,
+                                                                 ImmutableLongArray refIdList,
+                                                                 ExecutorService executor) {
+        LOG.debug("Loading {} fsimage sub-sections {}", subSections.size(), SectionName.INODE_DIR_SUB);
+        long startTime = System.currentTimeMillis();
+        try {
+            List<Future<DirectoryIndex.Entries>> futures = new ArrayList<>(subSections.size());
+            for (InputStream in : openSubSections(fc, codec, subSections)) {
+                futures.add(executor.submit(() -> loadINodeDirectorySection(in, refIdList)));
+            }
+            final DirectoryIndex.Entries dirs = get(futures.get(0));
+            for (int i = 1; i < futures.size(); i++) {
+                dirs.addAll(get(futures.get(i)));
+            }
+            LOG.debug("Loaded fsimage sub-sections {} with {} directories in {}ms", SectionName.INODE_DIR_SUB,
+                    dirs.size(), System.currentTimeMillis() - startTime);
+            return dirs;
+        } catch (Throwable ex) { // Can be IOException or NoClassDefFoundError
+            throw new IllegalStateException("Can not load fsimage sub-sections " + SectionName.INODE_DIR_SUB, ex);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private DirectoryIndex.Entries loadINodeDirectorySection(InputStream in, ImmutableLongArray refIdList)
+            throws IOException {
+        DirectoryIndex.Entries dirs = new DirectoryIndex.Entries();
         while (true) {
             FsImageProto.INodeDirectorySection.DirEntry e =
                     FsImageProto.INodeDirectorySection.DirEntry.parseDelimitedFrom(in);
@@ -319,15 +794,15 @@ public class FsImageLoader {
             }
 
             final int childrenCount = e.getChildrenCount();
-            final long[] l = new long[childrenCount + e.getRefChildrenCount()];
+            final int refChildrenCount = e.getRefChildrenCount();
+            dirs.addDirectory(e.getParent(), childrenCount + refChildrenCount);
             for (int i = 0; i < childrenCount; ++i) {
-                l[i] = e.getChildren(i);
+                dirs.addChild(e.getChildren(i));
             }
-            for (int i = childrenCount; i < l.length; i++) {
-                int refId = e.getRefChildren(i - childrenCount);
-                l[i] = refIdList.get(refId);
+            for (int i = 0; i < refChildrenCount; i++) {
+                int refId = e.getRefChildren(i);
+                dirs.addChild(refIdList.get(refId));
             }
-            dirs.put(e.getParent(), l);
         }
         LOG.debug("Loaded {} directories", dirs.size());
         return dirs;
@@ -353,7 +828,7 @@ public class FsImageLoader {
     private INodesRepository loadINodeSection(InputStream in, long length) throws IOException {
         FsImageProto.INodeSection s = FsImageProto.INodeSection
                 .parseDelimitedFrom(in);
-        return this.loadingStrategy.createInodeRepositoryBuilder().build(s, in, length);
+        return this.loadingStrategy.createInodeRepositoryBuilder(parallel).build(s, in, length);
     }
 
     StringTable loadStringTable(InputStream in, long length) throws IOException {
@@ -370,19 +845,234 @@ public class FsImageLoader {
     }
 
     public static class Builder {
-        private LoadingStrategy loadingStrategy = PrimitiveArrayINodesRepository.Builder::new;
+        private LoadingStrategy loadingStrategy = parallel -> parallel ?
+                new PrimitiveArrayINodesRepository.ParallelBuilder() : new PrimitiveArrayINodesRepository.Builder();
+        // Name of the explicitly selected loading strategy, or null for the default
+        private String loadingStrategyName;
+        private boolean parallel;
+        private ForkJoinPool forkJoinPool;
+        private int parallelism;
+        private boolean memoryMapped;
+        private boolean pipelined;
+        private File sidecarIndex;
+        private boolean columns;
+        private boolean nameIndex;
+        private boolean sortedChildren;
+        private boolean preOrderLayout;
+        private boolean subtreeIndex;
 
         interface LoadingStrategy {
-            INodesRepositoryBuilder createInodeRepositoryBuilder();
+            INodesRepositoryBuilder createInodeRepositoryBuilder(boolean parallel);
         }
 
+        /**
+         * Uses multiple threads, eg for sorting inodes or decoding Hadoop 3.3+ INODE_SUB/INODE_DIR_SUB sub-sections.
+         *
+         * @return this builder.
+         */
         public Builder parallel() {
-            this.loadingStrategy = PrimitiveArrayINodesRepository.ParallelBuilder::new;
+            this.parallel = true;
             return this;
         }
 
+        /**
+         * Uses multiple threads like {@link #parallel()}, but in a dedicated fork/join pool per load.
+         * <p>
+         * Isolates loading from other work on the common fork/join pool.
+         *
+         * @param parallelism the number of threads, at least one.
+         * @return this builder.
+         */
+        public Builder parallel(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Expected parallelism of at least one, but got " + parallelism);
+            }
+            this.parallelism = parallelism;
+            this.forkJoinPool = null;
+            return parallel();
+        }
+
+        /**
+         * Uses multiple threads like {@link #parallel()}, but in the given fork/join pool.
+         * <p>
+         * The pool is not shut down after loading.
+         *
+         * @param forkJoinPool the pool, eg shared with {@link FsVisitor.Builder#parallel(ForkJoinPool)}.
+         * @return this builder.
+         */
+        public Builder parallel(ForkJoinPool forkJoinPool) {
+            this.forkJoinPool = forkJoinPool;
+            this.parallelism = 0;
+            return parallel();
+        }
+
+        /**
+         * Stores the inodes in a few large contiguous slabs instead of one byte array per inode.
+         * <p>
+         * Reduces heap overhead and the number of objects the GC has to trace for large fsimages.
+         *
+         * @return this builder.
+         */
+        public Builder arena() {
+            this.loadingStrategy = ArenaINodesRepository.Builder::new;
+            this.loadingStrategyName = "arena";
+            return this;
+        }
+
+        /**
+         * Keeps inode bytes and the inode id index outside the Java heap, in direct buffers.
+         * <p>
+         * Allows loading fsimages larger than the heap, without GC pressure from inode payloads.
+         * The JVM direct memory limit must be sufficient, see <code>-XX:MaxDirectMemorySize</code>.
+         *
+         * @return this builder.
+         */
+        public Builder offHeap() {
+            this.loadingStrategy = OffHeapINodesRepository.Builder::new;
+            this.loadingStrategyName = "offHeap";
+            return this;
+        }
+
+        /**
+         * Keeps only inode id and offset in memory, and parses inodes on demand from the memory mapped fsimage.
+         * <p>
+         * Suited for point lookups, as loading is a single sequential scan and the OS page cache holds the inode bytes.
+         * Implies {@link #memoryMapped()}. Falls back to {@link #arena()} for compressed fsimages.
+         * Note: The fsimage file must not be modified while the loaded data is in use.
+         *
+         * @return this builder.
+         */
+        public Builder lazy() {
+            this.loadingStrategy = LazyMappedINodesRepository.Builder::new;
+            this.loadingStrategyName = "lazy";
+            this.memoryMapped = true;
+            return this;
+        }
+
+        /**
+         * Persists the loaded fsimage structure into a sidecar file, and reuses it when loading the same fsimage again.
+         * <p>
+         * The sidecar contains the string table, the inode index and the directory tree.
+         * A stale sidecar of another fsimage is replaced.
+         * Implies {@link #lazy()}, and requires an uncompressed fsimage.
+         * Can not be combined with {@link #arena()} or {@link #offHeap()}, see {@link #build()}.
+         *
+         * @param sidecarIndex the sidecar file, eg next to the fsimage.
+         * @return this builder.
+         */
+        public Builder sidecarIndex(File sidecarIndex) {
+            this.sidecarIndex = sidecarIndex;
+            return this;
+        }
+
+        /**
+         * Builds a columnar projection of frequently used inode fields after loading.
+         * <p>
+         * Allows scanning inodes without protobuf parsing, at the cost of about 40 bytes heap per inode.
+         *
+         * @return this builder.
+         * @see FsImageData#getColumns()
+         */
+        public Builder columns() {
+            this.columns = true;
+            return this;
+        }
+
+        /**
+         * Builds a hash index of inodes by parent directory and name after loading.
+         * <p>
+         * Speeds up path lookups in large directories, at the cost of 8 to 16 bytes heap per inode.
+         *
+         * @return this builder.
+         * @see FsImageData#getINodeFromPath(String)
+         */
+        public Builder nameIndex() {
+            this.nameIndex = true;
+            return this;
+        }
+
+        /**
+         * Sorts the children of each directory by UTF-8 name bytes after loading.
+         * <p>
+         * Path lookups then use binary search, and visiting returns children in name order.
+         *
+         * @return this builder.
+         * @see FsImageData#getChildINodeIds(long)
+         */
+        public Builder sortedChildren() {
+            this.sortedChildren = true;
+            return this;
+        }
+
+        /**
+         * Lays out the inodes in depth-first pre-order of the directory tree after loading.
+         * <p>
+         * Copies the inode bytes into heap slabs, so that tree traversals mostly scan memory sequentially.
+         * Inode positions then follow the tree order instead of ascending inode ids.
+         * Note: Copies inodes onto the heap, even if loaded {@link #offHeap()} or {@link #lazy()}.
+         *
+         * @return this builder.
+         */
+        public Builder preOrderLayout() {
+            this.preOrderLayout = true;
+            return this;
+        }
+
+        /**
+         * Builds subtree ranges and prefix sums of file, directory and sym link counts, size, consumed space and
+         * blocks after loading.
+         * <p>
+         * Summarizing any directory then needs two array reads instead of a traversal,
+         * at the cost of about 50 bytes heap per inode (six int and three long arrays).
+         *
+         * @return this builder.
+         * @see FsImageData#getSubtreeIndex()
+         */
+        public Builder subtreeIndex() {
+            this.subtreeIndex = true;
+            return this;
+        }
+
+        /**
+         * Reads fsimage sections via memory mapped file regions instead of buffered streams.
+         * <p>
+         * Avoids syscalls and copying via intermediate buffers, especially for uncompressed fsimages.
+         * Sections larger than 2 GiB are mapped in chunks.
+         *
+         * @return this builder.
+         */
+        public Builder memoryMapped() {
+            this.memoryMapped = true;
+            return this;
+        }
+
+        /**
+         * Loads the fsimage sections concurrently instead of one after another.
+         *
+         * @return this builder.
+         */
+        public Builder pipelined() {
+            this.pipelined = true;
+            return this;
+        }
+
+        /**
+         * Builds the loader.
+         *
+         * @return the loader.
+         * @throws IllegalStateException if {@link #sidecarIndex(File)} is combined with another loading strategy
+         *                               than {@link #lazy()}.
+         */
         public FsImageLoader build() {
-            return new FsImageLoader(loadingStrategy);
+            if (null != sidecarIndex) {
+                if (null == loadingStrategyName) {
+                    lazy();
+                } else if (!"lazy".equals(loadingStrategyName)) {
+                    throw new IllegalStateException("Sidecar index requires lazy loading, but conflicts with "
+                            + loadingStrategyName + "() loading");
+                }
+            }
+            return new FsImageLoader(this);
         }
     }
 }
@@ -0,0 +1,133 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import org.apache.hadoop.thirdparty.protobuf.ByteString;
+
+import static de.m3y.hadoop.hdfs.hfsa.core.FsImageData.ROOT_PATH;
+
+/**
+ * Lightweight handle of a directory path, linking to its parent and keeping the raw name bytes.
+ * <p>
+ * Visiting creates one handle per directory instead of decoding names and concatenating strings.
+ * The path string is only rendered on demand by {@link #toString()}, and then cached.
+ * Handles are immutable apart from this cache, and safe to share between threads.
+ *
+ * @see FsPathVisitor
+ */
+public final class FsPath {
+    /**
+     * The root path handle.
+     */
+    public static final FsPath ROOT = new FsPath(null, ByteString.EMPTY, ROOT_PATH);
+
+    private final FsPath parent;
+    private final ByteString name;
+    private final int depth;
+    // Rendered path, racy but safe as strings are immutable
+    private String path;
+
+    private FsPath(FsPath parent, ByteString name, String path) {
+        this.parent = parent;
+        this.name = name;
+        this.depth = null == parent ? 0 : parent.depth + 1;
+        this.path = path;
+    }
+
+    /**
+     * Creates a handle for an absolute path.
+     * <p>
+     * The handle renders exactly the given path, and child handles append to it.
+     *
+     * @param path the absolute path, eg /foo/bar
+     * @return the path handle.
+     */
+    public static FsPath of(String path) {
+        if (!path.startsWith(ROOT_PATH)) {
+            throw new IllegalArgumentException("Expected absolute path but got " + path);
+        }
+        FsPath handle = ROOT;
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                handle = handle.child(ByteString.copyFromUtf8(segment));
+            }
+        }
+        return handle == ROOT ? ROOT : new FsPath(handle.parent, handle.name, path);
+    }
+
+    /**
+     * Creates a handle for a child directory.
+     *
+     * @param name the child name, eg from the inode.
+     * @return the child path handle.
+     */
+    FsPath child(ByteString name) {
+        return new FsPath(this, name, null);
+    }
+
+    /**
+     * Gets the parent handle.
+     *
+     * @return the parent handle, or null for the root path.
+     */
+    public FsPath getParent() {
+        return parent;
+    }
+
+    /**
+     * Gets the last path segment.
+     *
+     * @return the decoded name, or an empty string for the root path.
+     */
+    public String getName() {
+        return name.toStringUtf8();
+    }
+
+    /**
+     * Gets the number of path segments.
+     *
+     * @return the depth, with 0 for the root path.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Checks if root path.
+     *
+     * @return true, if root path.
+     */
+    public boolean isRoot() {
+        return null == parent;
+    }
+
+    /**
+     * Renders the path into given buffer, without caching it.
+     *
+     * @param buf the buffer to append to.
+     * @return the buffer.
+     */
+    public StringBuilder appendTo(StringBuilder buf) {
+        final String rendered = path;
+        if (null != rendered) {
+            return buf.append(rendered);
+        }
+        if (!parent.isRoot()) {
+            parent.appendTo(buf);
+        }
+        return buf.append('/').append(name.toStringUtf8());
+    }
+
+    /**
+     * Renders the path, eg /foo/bar
+     *
+     * @return the path.
+     */
+    @Override
+    public String toString() {
+        String rendered = path;
+        if (null == rendered) {
+            rendered = appendTo(new StringBuilder()).toString();
+            path = rendered;
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,37 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+
+/**
+ * Visitor for all files and directories, like {@link FsVisitor} but receiving a path handle instead of a string.
+ * <p>
+ * Path strings are only rendered if the visitor asks for them via {@link FsPath#toString()},
+ * so visitors not needing paths avoid per directory string building.
+ *
+ * @see FsVisitor.Builder#visit(FsImageData, FsPathVisitor)
+ */
+public interface FsPathVisitor {
+    /**
+     * Invoked for each file.
+     *
+     * @param inode the file inode.
+     * @param path  the parent directory path.
+     */
+    void onFile(FsImageProto.INodeSection.INode inode, FsPath path);
+
+    /**
+     * Invoked for each directory.
+     *
+     * @param inode the directory inode.
+     * @param path  the parent directory path, or {@link FsPath#ROOT} for the root directory.
+     */
+    void onDirectory(FsImageProto.INodeSection.INode inode, FsPath path);
+
+    /**
+     * Invoked for each sym link.
+     *
+     * @param inode the sym link inode.
+     * @param path  the parent directory path.
+     */
+    void onSymLink(FsImageProto.INodeSection.INode inode, FsPath path);
+}
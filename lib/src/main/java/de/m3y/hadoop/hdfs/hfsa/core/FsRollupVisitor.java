@@ -0,0 +1,260 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+
+import static de.m3y.hadoop.hdfs.hfsa.core.FsImageData.ROOT_PATH;
+
+/**
+ * Bottom-up (post-order) visitor, computing a result per inode and merging child results into their directory.
+ * <p>
+ * Each directory callback receives the merged results of its children, so per-directory totals (like du)
+ * need a single pass and no maps keyed by path.
+ * Child results are merged in no particular order, so {@link #merge(Object, Object)} must be associative and
+ * commutative. Callbacks may run concurrently when visiting in parallel, but results are never shared between threads
+ * before being merged.
+ *
+ * @param <R> the result type, eg a counter.
+ * @see Builder
+ */
+public interface FsRollupVisitor<R> {
+    /**
+     * Creates the result of no inodes, eg for an empty directory.
+     *
+     * @return the empty result.
+     */
+    R identity();
+
+    /**
+     * Merges two results.
+     *
+     * @param left  a result.
+     * @param right another result.
+     * @return the merged result, which may be one of the given results, updated.
+     */
+    R merge(R left, R right);
+
+    /**
+     * Invoked for each file.
+     *
+     * @param inode the file inode.
+     * @param path  the parent directory path.
+     * @return the file result.
+     */
+    R onFile(INode inode, String path);
+
+    /**
+     * Invoked for each sym link.
+     *
+     * @param inode the sym link inode.
+     * @param path  the parent directory path.
+     * @return the sym link result.
+     */
+    R onSymLink(INode inode, String path);
+
+    /**
+     * Invoked for each directory, after all its children.
+     *
+     * @param inode    the directory inode.
+     * @param path     the parent directory path, or {@value FsImageData#ROOT_PATH} for the root directory.
+     * @param children the merged results of all children.
+     * @return the directory result, including its children.
+     */
+    R onDirectory(INode inode, String path, R children);
+
+    /**
+     * Builds a rollup visit with single-threaded (default) or parallel fork/join execution.
+     * <p>
+     * Builder is immutable and creates a new instance if changed.
+     */
+    class Builder {
+        // Pool to visit in, or null for a new pool per visit if parallelism is set, or single-threaded otherwise
+        private final ForkJoinPool forkJoinPool;
+        private final int parallelism;
+
+        public Builder() {
+            this(null, 0);
+        }
+
+        private Builder(ForkJoinPool forkJoinPool, int parallelism) {
+            this.forkJoinPool = forkJoinPool;
+            this.parallelism = parallelism;
+        }
+
+        /**
+         * Visits child directories as fork/join tasks, in the common fork/join pool.
+         *
+         * @return a new parallel builder.
+         */
+        public Builder parallel() {
+            return parallel(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Visits in parallel like {@link #parallel()}, but in a dedicated fork/join pool per visit.
+         *
+         * @param parallelism the number of threads, at least one.
+         * @return a new parallel builder.
+         */
+        public Builder parallel(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Expected parallelism of at least one, but got " + parallelism);
+            }
+            return new Builder(null, parallelism);
+        }
+
+        /**
+         * Visits in parallel like {@link #parallel()}, but in the given fork/join pool.
+         *
+         * @param forkJoinPool the pool, which is not shut down after visiting.
+         * @return a new parallel builder.
+         */
+        public Builder parallel(ForkJoinPool forkJoinPool) {
+            return new Builder(forkJoinPool, 0);
+        }
+
+        /**
+         * Visits the whole tree, starting at the root directory.
+         *
+         * @param fsImageData the loaded fsimage.
+         * @param visitor     the visitor.
+         * @param <R>         the result type.
+         * @return the root directory result.
+         * @throws IOException on error.
+         */
+        public <R> R visit(FsImageData fsImageData, FsRollupVisitor<R> visitor) throws IOException {
+            return visit(fsImageData, visitor, ROOT_PATH);
+        }
+
+        /**
+         * Visits the tree, starting at given path.
+         *
+         * @param fsImageData the loaded fsimage.
+         * @param visitor     the visitor.
+         * @param path        the start path.
+         * @param <R>         the result type.
+         * @return the start inode result.
+         * @throws IOException on error, eg FileNotFoundException if path does not exist.
+         */
+        public <R> R visit(FsImageData fsImageData, FsRollupVisitor<R> visitor, String path) throws IOException {
+            final int position = fsImageData.lookupPosition(path);
+            final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+            final INode inode = inodes.getInodeAt(position);
+            final long inodeId = inodes.getInodeId(position);
+            final String parentPath;
+            if (INodeId.ROOT_INODE_ID == inodeId) {
+                parentPath = ROOT_PATH;
+            } else {
+                final String normalizedPath = fsImageData.getPath(inodeId);
+                final int idx = normalizedPath.lastIndexOf('/');
+                parentPath = 0 == idx ? ROOT_PATH : normalizedPath.substring(0, idx);
+            }
+
+            final boolean parallel = null != forkJoinPool || parallelism > 0;
+            final RollupTask<R> task = new RollupTask<>(fsImageData, visitor, parallel, position, inode, parentPath);
+            if (!parallel) {
+                try {
+                    return task.compute();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            final ForkJoinPool pool = null != forkJoinPool ? forkJoinPool : new ForkJoinPool(parallelism);
+            try {
+                return pool.invoke(task);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                if (null == forkJoinPool) {
+                    pool.shutdown();
+                }
+            }
+        }
+
+        /**
+         * Visits an inode and, if a directory, its subtree.
+         */
+        private static class RollupTask<R> extends RecursiveTask<R> {
+            private static final long serialVersionUID = 1L;
+
+            private final FsImageData fsImageData;
+            private final FsRollupVisitor<R> visitor;
+            private final boolean parallel;
+            private final int position;
+            private final INode inode;
+            private final String parentPath;
+
+            RollupTask(FsImageData fsImageData, FsRollupVisitor<R> visitor, boolean parallel,
+                       int position, INode inode, String parentPath) {
+                this.fsImageData = fsImageData;
+                this.visitor = visitor;
+                this.parallel = parallel;
+                this.position = position;
+                this.inode = inode;
+                this.parentPath = parentPath;
+            }
+
+            @Override
+            protected R compute() {
+                switch (inode.getType()) {
+                    case FILE:
+                        return visitor.onFile(inode, parentPath);
+                    case SYMLINK:
+                        return visitor.onSymLink(inode, parentPath);
+                    case DIRECTORY:
+                        return visitor.onDirectory(inode, parentPath, computeChildren());
+                    default:
+                        // Should not happen
+                        throw new IllegalStateException("Unsupported inode type " + inode.getType() + " for " + inode);
+                }
+            }
+
+            private R computeChildren() {
+                final String path;
+                if (INodeId.ROOT_INODE_ID == inode.getId()) {
+                    path = ROOT_PATH;
+                } else {
+                    final String name = inode.getName().toStringUtf8();
+                    path = ROOT_PATH.equals(parentPath) ? parentPath + name : parentPath + '/' + name;
+                }
+
+                final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+                final int to = directoryIndex.getChildrenEnd(position);
+                R result = visitor.identity();
+                List<RollupTask<R>> forked = null;
+                try {
+                    for (int i = directoryIndex.getChildrenStart(position); i < to; i++) {
+                        final int childPosition = directoryIndex.getChildPosition(i);
+                        final INode child = inodes.getInodeAt(childPosition);
+                        final RollupTask<R> task = new RollupTask<>(fsImageData, visitor, parallel, childPosition, child, path);
+                        if (parallel && INode.Type.DIRECTORY == child.getType()) {
+                            if (null == forked) {
+                                forked = new ArrayList<>();
+                            }
+                            task.fork();
+                            forked.add(task);
+                        } else {
+                            result = visitor.merge(result, task.compute());
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (null != forked) {
+                    for (RollupTask<R> task : forked) {
+                        result = visitor.merge(result, task.join());
+                    }
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+/**
+ * Visitor for all files and directories, receiving reusable inode views instead of parsed protobuf inodes.
+ * <p>
+ * Together with path handles, visiting allocates only per directory but not per inode.
+ * Views are only valid during the callback, see {@link INodeView}.
+ *
+ * @see FsVisitor.Builder#visit(FsImageData, FsViewVisitor)
+ */
+public interface FsViewVisitor {
+    /**
+     * Invoked for each file.
+     *
+     * @param inode the file inode view.
+     * @param path  the parent directory path.
+     */
+    void onFile(INodeView inode, FsPath path);
+
+    /**
+     * Invoked for each directory.
+     *
+     * @param inode the directory inode view.
+     * @param path  the parent directory path, or {@link FsPath#ROOT} for the root directory.
+     */
+    void onDirectory(INodeView inode, FsPath path);
+
+    /**
+     * Invoked for each sym link.
+     *
+     * @param inode the sym link inode view.
+     * @param path  the parent directory path.
+     */
+    void onSymLink(INodeView inode, FsPath path);
+}
@@ -1,8 +1,16 @@
 package de.m3y.hadoop.hdfs.hfsa.core;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
@@ -15,6 +23,10 @@ import static de.m3y.hadoop.hdfs.hfsa.util.FsUtil.isSymlink;
 
 /**
  * Visitor for all files and directories.
+ * <p>
+ * Each inode gets the path of its parent directory, or "{@value FsImageData#ROOT_PATH}" for the root directory
+ * and its children. This includes the directory to start with, eg "/a" for a visit starting at "/a/foo",
+ * no matter which {@link Builder.FsVisitorStrategy} visits.
  *
  * @see Builder
  */
@@ -23,7 +35,7 @@ public interface FsVisitor {
      * Invoked for each file.
      *
      * @param inode the file inode.
-     * @param path  the current path.
+     * @param path  the parent directory path.
      */
     void onFile(FsImageProto.INodeSection.INode inode, String path);
 
@@ -31,7 +43,7 @@ public interface FsVisitor {
      * Invoked for each directory.
      *
      * @param inode the directory inode.
-     * @param path  the current path.
+     * @param path  the parent directory path, or "{@value FsImageData#ROOT_PATH}" for the root directory.
      */
     void onDirectory(FsImageProto.INodeSection.INode inode, String path);
 
@@ -39,10 +51,47 @@ public interface FsVisitor {
      * Invoked for each sym link.
      *
      * @param inode the sym link inode.
-     * @param path  the current path.
+     * @param path  the parent directory path.
      */
     void onSymLink(FsImageProto.INodeSection.INode inode, String path);
 
+    /**
+     * Accumulates visited inodes into a mutable result container, like a visitor with state passed in.
+     * <p>
+     * Paths are passed as handles like for {@link FsPathVisitor}, rendering strings only on demand.
+     *
+     * @param <A> the result container type.
+     * @see Builder#collect(FsImageData, Supplier, Accumulator, BinaryOperator)
+     */
+    interface Accumulator<A> {
+        /**
+         * Invoked for each file.
+         *
+         * @param container the result container of the current thread.
+         * @param inode     the file inode.
+         * @param path      the parent directory path.
+         */
+        void onFile(A container, FsImageProto.INodeSection.INode inode, FsPath path);
+
+        /**
+         * Invoked for each directory.
+         *
+         * @param container the result container of the current thread.
+         * @param inode     the directory inode.
+         * @param path      the parent directory path, or {@link FsPath#ROOT} for the root directory.
+         */
+        void onDirectory(A container, FsImageProto.INodeSection.INode inode, FsPath path);
+
+        /**
+         * Invoked for each sym link.
+         *
+         * @param container the result container of the current thread.
+         * @param inode     the sym link inode.
+         * @param path      the parent directory path.
+         */
+        void onSymLink(A container, FsImageProto.INodeSection.INode inode, FsPath path);
+    }
+
     /**
      * Builds a visitor with single-threaded (default) or parallel execution.
      * <p>
@@ -52,6 +101,7 @@ public interface FsVisitor {
         private static final Logger LOG = LoggerFactory.getLogger(de.m3y.hadoop.hdfs.hfsa.core.FsVisitor.Builder.class);
         public static final FsVisitorStrategy DEFAULT_STRATEGY = new FsVisitorDefaultStrategy();
         public static final FsVisitorStrategy PARALLEL_STRATEGY = new FsVisitorParallelStrategy();
+        public static final FsVisitorStrategy FORK_JOIN_STRATEGY = new FsVisitorForkJoinStrategy();
 
         private final FsVisitorStrategy fsVisitorStrategy;
 
@@ -71,8 +121,33 @@ public interface FsVisitor {
             this.fsVisitorStrategy = fsVisitorStrategy;
         }
 
+        /**
+         * Visits in parallel, using the {@link FsVisitorForkJoinStrategy}.
+         *
+         * @return a new parallel builder.
+         */
         public Builder parallel() {
-            return new Builder(PARALLEL_STRATEGY);
+            return new Builder(FORK_JOIN_STRATEGY);
+        }
+
+        /**
+         * Visits in parallel like {@link #parallel()}, but in a dedicated fork/join pool per visit.
+         *
+         * @param parallelism the number of threads, at least one.
+         * @return a new parallel builder.
+         */
+        public Builder parallel(int parallelism) {
+            return new Builder(new FsVisitorForkJoinStrategy(parallelism));
+        }
+
+        /**
+         * Visits in parallel like {@link #parallel()}, but in the given fork/join pool.
+         *
+         * @param forkJoinPool the pool, eg for isolating visits from other work on the common pool.
+         * @return a new parallel builder.
+         */
+        public Builder parallel(ForkJoinPool forkJoinPool) {
+            return new Builder(new FsVisitorForkJoinStrategy(forkJoinPool));
         }
 
         public void visit(FsImageData fsImageData, FsVisitor visitor) throws IOException {
@@ -83,10 +158,268 @@ public interface FsVisitor {
             fsVisitorStrategy.visit(fsImageData, visitor, path);
         }
 
+        /**
+         * Visits the whole tree, passing path handles instead of strings.
+         *
+         * @param fsImageData the FSImage data.
+         * @param visitor     the visitor.
+         * @throws IOException on error.
+         * @see #visit(FsImageData, FsPathVisitor, String)
+         */
+        public void visit(FsImageData fsImageData, FsPathVisitor visitor) throws IOException {
+            visit(fsImageData, visitor, ROOT_PATH);
+        }
+
+        /**
+         * Visits the tree starting at given path, passing path handles instead of strings.
+         * <p>
+         * Unlike {@link #visit(FsImageData, FsVisitor, String)}, no path string is built per directory
+         * unless the visitor renders it. The start inode receives its parent path.
+         *
+         * @param fsImageData the FSImage data.
+         * @param visitor     the visitor.
+         * @param path        the path to start with.
+         * @throws IOException on error, eg FileNotFoundException if path does not exist.
+         */
+        public void visit(FsImageData fsImageData, FsPathVisitor visitor, String path) throws IOException {
+            fsVisitorStrategy.visit(fsImageData, positionVisitor(fsImageData, visitor), path);
+        }
+
+        /**
+         * Visits the whole tree, passing reusable inode views and path handles.
+         *
+         * @param fsImageData the FSImage data.
+         * @param visitor     the visitor.
+         * @throws IOException on error.
+         * @see #visit(FsImageData, FsViewVisitor, String)
+         */
+        public void visit(FsImageData fsImageData, FsViewVisitor visitor) throws IOException {
+            visit(fsImageData, visitor, ROOT_PATH);
+        }
+
+        /**
+         * Visits the tree starting at given path, passing reusable inode views and path handles.
+         * <p>
+         * Unlike {@link #visit(FsImageData, FsPathVisitor, String)}, no protobuf inode is parsed,
+         * as each visiting thread copies the serialized inodes into its own {@link INodeView}.
+         * The start inode receives its parent path.
+         *
+         * @param fsImageData the FSImage data.
+         * @param visitor     the visitor.
+         * @param path        the path to start with.
+         * @throws IOException on error, eg FileNotFoundException if path does not exist.
+         */
+        public void visit(FsImageData fsImageData, FsViewVisitor visitor, String path) throws IOException {
+            fsVisitorStrategy.visit(fsImageData, positionVisitor(fsImageData, visitor), path);
+        }
+
+        /**
+         * Visits the whole tree, accumulating into a result container per thread.
+         *
+         * @param fsImageData the FSImage data.
+         * @param supplier    creates an empty result container.
+         * @param accumulator accumulates an inode into a container.
+         * @param combiner    combines two containers, eg by merging the second into the first.
+         * @param <A>         the result container type.
+         * @return the combined result.
+         * @throws IOException on error.
+         * @see #collect(FsImageData, Supplier, Accumulator, BinaryOperator, String)
+         */
+        public <A> A collect(FsImageData fsImageData, Supplier<A> supplier, Accumulator<A> accumulator,
+                             BinaryOperator<A> combiner) throws IOException {
+            return collect(fsImageData, supplier, accumulator, combiner, ROOT_PATH);
+        }
+
+        /**
+         * Visits the tree starting at given path, accumulating into a result container per thread.
+         * <p>
+         * Like {@link java.util.stream.Stream#collect(Supplier, java.util.function.BiConsumer,
+         * java.util.function.BiConsumer)}, each visiting thread accumulates into its own container, so neither
+         * containers nor accumulator need any synchronization. Containers are combined once after visiting.
+         *
+         * @param fsImageData the FSImage data.
+         * @param supplier    creates an empty result container.
+         * @param accumulator accumulates an inode into a container.
+         * @param combiner    combines two containers, eg by merging the second into the first.
+         * @param path        the directory path to start with.
+         * @param <A>         the result container type.
+         * @return the combined result.
+         * @throws IOException on error.
+         */
+        public <A> A collect(FsImageData fsImageData, Supplier<A> supplier, Accumulator<A> accumulator,
+                             BinaryOperator<A> combiner, String path) throws IOException {
+            final Map<Thread, A> containers = new ConcurrentHashMap<>();
+            visit(fsImageData, new FsPathVisitor() {
+                private A container() {
+                    final Thread thread = Thread.currentThread();
+                    final A container = containers.get(thread);
+                    return null != container ? container : containers.computeIfAbsent(thread, t -> supplier.get());
+                }
+
+                @Override
+                public void onFile(FsImageProto.INodeSection.INode inode, FsPath path) {
+                    accumulator.onFile(container(), inode, path);
+                }
+
+                @Override
+                public void onDirectory(FsImageProto.INodeSection.INode inode, FsPath path) {
+                    accumulator.onDirectory(container(), inode, path);
+                }
+
+                @Override
+                public void onSymLink(FsImageProto.INodeSection.INode inode, FsPath path) {
+                    accumulator.onSymLink(container(), inode, path);
+                }
+            }, path);
+            return containers.values().stream().reduce(combiner).orElseGet(supplier);
+        }
+
         interface FsVisitorStrategy {
             void visit(FsImageData fsImageData, FsVisitor visitor) throws IOException;
 
             void visit(FsImageData fsImageData, FsVisitor visitor, String path) throws IOException;
+
+            /**
+             * Traverses FS tree by inode position, single-threaded unless overridden.
+             *
+             * @param fsImageData the FSImage data.
+             * @param visitor     the visitor.
+             * @param path        the path to start with.
+             * @throws IOException on error.
+             */
+            default void visit(FsImageData fsImageData, PositionVisitor visitor, String path) throws IOException {
+                final int position = fsImageData.lookupPosition(path);
+                final FsPath start = FsPath.of(path);
+                visitStart(visitor, position, start);
+                visitChildren(fsImageData, visitor, position, start);
+            }
+        }
+
+        /**
+         * Visits the inode at a position, decoupling the traversal from the visitor type.
+         */
+        interface PositionVisitor {
+            /**
+             * Invokes the visitor callback for the inode type.
+             *
+             * @param position    the inode position.
+             * @param path        the parent directory path.
+             * @param hasChildren true, if a directory with children.
+             * @return the directory path for visiting the children, or null if no children.
+             * @throws IOException on error.
+             */
+            FsPath visit(int position, FsPath path, boolean hasChildren) throws IOException;
+        }
+
+        private static PositionVisitor positionVisitor(FsImageData fsImageData, FsPathVisitor visitor) {
+            final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+            return (position, path, hasChildren) -> {
+                final FsImageProto.INodeSection.INode inode = inodes.getInodeAt(position);
+                if (FsUtil.isDirectory(inode)) {
+                    visitor.onDirectory(inode, path);
+                } else if (isFile(inode)) {
+                    visitor.onFile(inode, path);
+                } else if (isSymlink(inode)) {
+                    visitor.onSymLink(inode, path);
+                } else {
+                    // Should not happen
+                    throw new IllegalStateException("Unsupported inode type " + inode.getType() + " for " + inode);
+                }
+                return hasChildren ? path.child(inode.getName()) : null;
+            };
+        }
+
+        private static PositionVisitor positionVisitor(FsImageData fsImageData, FsViewVisitor visitor) {
+            final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+            // One view per visiting thread, reused for every inode
+            final ThreadLocal<INodeView> views = ThreadLocal.withInitial(INodeView::new);
+            return (position, path, hasChildren) -> {
+                final INodeView view = views.get();
+                inodes.readInodeAt(position, view);
+                switch (view.getType()) {
+                    case FILE:
+                        visitor.onFile(view, path);
+                        break;
+                    case DIRECTORY:
+                        visitor.onDirectory(view, path);
+                        break;
+                    case SYMLINK:
+                        visitor.onSymLink(view, path);
+                        break;
+                    default:
+                        // Should not happen
+                        throw new IllegalStateException("Unsupported inode type " + view.getType() + " for " + view);
+                }
+                return hasChildren ? path.child(view.getNameAsByteString()) : null;
+            };
+        }
+
+        /**
+         * Gets the parent path passed for the start inode, see {@link FsVisitor}.
+         */
+        private static String startParentPath(FsPath start) {
+            return start.isRoot() ? ROOT_PATH : start.getParent().toString();
+        }
+
+        /**
+         * Visits the start inode, passing its parent path.
+         */
+        private static void visitStart(PositionVisitor visitor, int position, FsPath start) throws IOException {
+            visitor.visit(position, start.isRoot() ? FsPath.ROOT : start.getParent(), false);
+        }
+
+        /**
+         * Visits an inode and its subtree by position, single-threaded.
+         *
+         * @param position the inode position.
+         * @param path     the parent directory path.
+         */
+        private static void visitSubtree(FsImageData fsImageData, FsVisitor visitor, int position, String path)
+                throws IOException {
+            final FsImageProto.INodeSection.INode inode = fsImageData.getInodes().getInodeAt(position);
+            if (FsUtil.isDirectory(inode)) {
+                visitor.onDirectory(inode, path);
+                final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                final int from = directoryIndex.getChildrenStart(position);
+                final int to = directoryIndex.getChildrenEnd(position);
+                if (from < to) {
+                    final String newPath;
+                    if (ROOT_PATH.equals(path)) {
+                        newPath = path + inode.getName().toStringUtf8();
+                    } else {
+                        newPath = path + '/' + inode.getName().toStringUtf8();
+                    }
+                    for (int i = from; i < to; i++) {
+                        visitSubtree(fsImageData, visitor, directoryIndex.getChildPosition(i), newPath);
+                    }
+                }
+            } else if (isFile(inode)) {
+                visitor.onFile(inode, path);
+            } else if (isSymlink(inode)) {
+                visitor.onSymLink(inode, path);
+            } else {
+                // Should not happen
+                throw new IllegalStateException("Unsupported inode type " + inode.getType() + " for " + inode);
+            }
+        }
+
+        /**
+         * Visits the children of a directory and their subtrees, single-threaded.
+         *
+         * @param position the directory position.
+         * @param path     the directory path.
+         */
+        private static void visitChildren(FsImageData fsImageData, PositionVisitor visitor, int position, FsPath path)
+                throws IOException {
+            final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+            final int to = directoryIndex.getChildrenEnd(position);
+            for (int i = directoryIndex.getChildrenStart(position); i < to; i++) {
+                final int childPosition = directoryIndex.getChildPosition(i);
+                final FsPath childPath = visitor.visit(childPosition, path, directoryIndex.getChildCount(childPosition) > 0);
+                if (null != childPath) {
+                    visitChildren(fsImageData, visitor, childPosition, childPath);
+                }
+            }
         }
 
         public static class FsVisitorDefaultStrategy implements FsVisitorStrategy {
@@ -111,51 +444,23 @@ public interface FsVisitor {
              */
             public void visit(FsImageData fsImageData, FsVisitor visitor, String path) throws IOException {
                 // Visit path dir
-                FsImageProto.INodeSection.INode pathNode = fsImageData.getINodeFromPath(path);
-                if (ROOT_PATH.equals(path)) {
-                    visitor.onDirectory(pathNode, path);
-                } else {
-                    // Need to strip current node path from path if not "/"
-                    final String substring = path.substring(0, path.length() - pathNode.getName().toStringUtf8().length());
-                    visitor.onDirectory(pathNode, substring);
-                }
+                final int position = fsImageData.lookupPosition(path);
+                visitor.onDirectory(fsImageData.getInodes().getInodeAt(position), startParentPath(FsPath.of(path)));
 
-                // Child dirs?
-                final long pathNodeId = pathNode.getId();
-                final long[] children = fsImageData.getChildINodeIds(pathNodeId);
                 // Visit children
-                for (long cid : children) {
-                    visit(fsImageData, visitor, fsImageData.getInode(cid), path);
-                }
-            }
-
-            void visit(FsImageData fsImageData, FsVisitor visitor, FsImageProto.INodeSection.INode inode, String path) throws IOException {
-                if (FsUtil.isDirectory(inode)) {
-                    visitor.onDirectory(inode, path);
-                    final long inodeId = inode.getId();
-                    final long[] children = fsImageData.getChildINodeIds(inodeId);
-                    if (children.length>0) {
-                        String newPath;
-                        if (ROOT_PATH.equals(path)) {
-                            newPath = path + inode.getName().toStringUtf8();
-                        } else {
-                            newPath = path + '/' + inode.getName().toStringUtf8();
-                        }
-                        for (long cid : children) {
-                            visit(fsImageData, visitor, fsImageData.getInode(cid), newPath);
-                        }
-                    }
-                } else if (isFile(inode)) {
-                    visitor.onFile(inode, path);
-                } else if (isSymlink(inode)) {
-                    visitor.onSymLink(inode, path);
-                } else {
-                    // Should not happen
-                    throw new IllegalStateException("Unsupported inode type " + inode.getType() + " for " + inode);
+                final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                final int to = directoryIndex.getChildrenEnd(position);
+                for (int i = directoryIndex.getChildrenStart(position); i < to; i++) {
+                    visitSubtree(fsImageData, visitor, directoryIndex.getChildPosition(i), path);
                 }
             }
         }
 
+        /**
+         * Parallelizes over the direct child directories of the start path, visiting each subtree single-threaded.
+         * <p>
+         * Note: Scales poorly if a few directories hold most of the namespace, see {@link FsVisitorForkJoinStrategy}.
+         */
         public static class FsVisitorParallelStrategy implements FsVisitorStrategy {
 
             /**
@@ -176,53 +481,257 @@ public interface FsVisitor {
              * @throws IOException on error.
              */
             public void visit(FsImageData fsImageData, FsVisitor visitor, String path) throws IOException {
-                FsImageProto.INodeSection.INode rootNode = fsImageData.getINodeFromPath(path);
-                visitor.onDirectory(rootNode, path);
-                final long rootNodeId = rootNode.getId();
-                final long[] children = fsImageData.getChildINodeIds(rootNodeId);
-                if (children.length>0) {
-                    List<FsImageProto.INodeSection.INode> dirs = new ArrayList<>();
-                    for (long cid : children) {
-                        final FsImageProto.INodeSection.INode inode = fsImageData.getInode(cid);
-                        if (inode.getType() == FsImageProto.INodeSection.INode.Type.DIRECTORY) {
-                            dirs.add(inode);
-                        } else {
-                            visit(fsImageData, visitor, inode, path);
-                        }
+                final int position = fsImageData.lookupPosition(path);
+                visitor.onDirectory(fsImageData.getInodes().getInodeAt(position), startParentPath(FsPath.of(path)));
+                final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                final List<Integer> dirPositions = new ArrayList<>();
+                final int to = directoryIndex.getChildrenEnd(position);
+                for (int i = directoryIndex.getChildrenStart(position); i < to; i++) {
+                    final int childPosition = directoryIndex.getChildPosition(i);
+                    if (directoryIndex.getChildCount(childPosition) > 0) {
+                        dirPositions.add(childPosition);
+                    } else {
+                        visitSubtree(fsImageData, visitor, childPosition, path);
                     }
-                    // Go over top level dirs in parallel
-                    dirs.parallelStream().forEach(inode -> {
-                        try {
-                            visit(fsImageData, visitor, inode, path);
-                        } catch (IOException e) {
-                            LOG.error("Can not traverse {} : {}", inode.getId(), inode.getName().toStringUtf8(), e);
-                        }
-                    });
                 }
+                // Go over top level dirs in parallel
+                dirPositions.parallelStream().forEach(childPosition -> {
+                    try {
+                        visitSubtree(fsImageData, visitor, childPosition, path);
+                    } catch (IOException e) {
+                        LOG.error("Can not traverse child at position {} of {}", childPosition, path, e);
+                    }
+                });
             }
 
-            void visit(FsImageData fsImageData, FsVisitor visitor, FsImageProto.INodeSection.INode inode, String path) throws IOException {
-                if (FsUtil.isDirectory(inode)) {
-                    visitor.onDirectory(inode, path);
-                    final long inodeId = inode.getId();
-                    final long[] children = fsImageData.getChildINodeIds(inodeId);
-                    if (children.length > 0) {
-                        String newPath;
-                        if (ROOT_PATH.equals(path)) {
-                            newPath = path + inode.getName().toStringUtf8();
-                        } else {
-                            newPath = path + '/' + inode.getName().toStringUtf8();
-                        }
-                        for (long cid : children) {
-                            visit(fsImageData, visitor, fsImageData.getInode(cid), newPath);
+            /**
+             * Traverses FS tree by inode position, using Java parallel stream.
+             *
+             * @param fsImageData the FSImage data.
+             * @param visitor     the visitor.
+             * @param path        the path to start with.
+             * @throws IOException on error.
+             */
+            @Override
+            public void visit(FsImageData fsImageData, PositionVisitor visitor, String path) throws IOException {
+                final int position = fsImageData.lookupPosition(path);
+                final FsPath start = FsPath.of(path);
+                visitStart(visitor, position, start);
+                final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                final List<Integer> dirPositions = new ArrayList<>();
+                final List<FsPath> dirPaths = new ArrayList<>();
+                final int to = directoryIndex.getChildrenEnd(position);
+                for (int i = directoryIndex.getChildrenStart(position); i < to; i++) {
+                    final int childPosition = directoryIndex.getChildPosition(i);
+                    final FsPath childPath = visitor.visit(childPosition, start,
+                            directoryIndex.getChildCount(childPosition) > 0);
+                    if (null != childPath) {
+                        dirPositions.add(childPosition);
+                        dirPaths.add(childPath);
+                    }
+                }
+                // Go over top level dirs in parallel
+                IntStream.range(0, dirPositions.size()).parallel().forEach(i -> {
+                    try {
+                        visitChildren(fsImageData, visitor, dirPositions.get(i), dirPaths.get(i));
+                    } catch (IOException e) {
+                        LOG.error("Can not traverse {}", dirPaths.get(i), e);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Traverses FS tree with fork/join tasks, splitting work at any depth.
+         * <p>
+         * Wide directories are split into ranges of children, and child directories are forked as long as the
+         * current worker has few queued tasks, so idle workers steal subtrees no matter how skewed the tree is.
+         */
+        public static class FsVisitorForkJoinStrategy implements FsVisitorStrategy {
+            static final int DEFAULT_SPLIT_THRESHOLD = 1024;
+            // Forks child directories only while the current worker has no more queued tasks than this
+            static final int SURPLUS_THRESHOLD = 2;
+
+            // Pool to visit in, or null for a new pool per visit
+            private final ForkJoinPool forkJoinPool;
+            private final int parallelism;
+            // Max number of children visited by a single task before splitting the range
+            private final int splitThreshold;
+
+            /**
+             * Visits in the common fork/join pool.
+             */
+            public FsVisitorForkJoinStrategy() {
+                this(ForkJoinPool.commonPool());
+            }
+
+            /**
+             * Visits in the given pool.
+             *
+             * @param forkJoinPool the pool, which is not shut down after visiting.
+             */
+            public FsVisitorForkJoinStrategy(ForkJoinPool forkJoinPool) {
+                this(forkJoinPool, DEFAULT_SPLIT_THRESHOLD);
+            }
+
+            /**
+             * Visits in a new pool per visit.
+             *
+             * @param parallelism the number of threads, at least one.
+             */
+            public FsVisitorForkJoinStrategy(int parallelism) {
+                if (parallelism < 1) {
+                    throw new IllegalArgumentException("Expected parallelism of at least one, but got " + parallelism);
+                }
+                this.forkJoinPool = null;
+                this.parallelism = parallelism;
+                this.splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+            }
+
+            FsVisitorForkJoinStrategy(ForkJoinPool forkJoinPool, int splitThreshold) {
+                this.forkJoinPool = forkJoinPool;
+                this.parallelism = forkJoinPool.getParallelism();
+                this.splitThreshold = splitThreshold;
+            }
+
+            /**
+             * Traverses FS tree, starting at root ("{@value FsImageData#ROOT_PATH}").
+             *
+             * @param fsImageData the FSImage data.
+             * @param visitor     the visitor.
+             * @throws IOException on error.
+             */
+            public void visit(FsImageData fsImageData, FsVisitor visitor) throws IOException {
+                visit(fsImageData, visitor, ROOT_PATH);
+            }
+
+            /**
+             * Traverses FS tree, starting at given directory path.
+             *
+             * @param fsImageData the FSImage data.
+             * @param visitor     the visitor.
+             * @param path        the directory path to start with
+             * @throws IOException on error.
+             */
+            public void visit(FsImageData fsImageData, FsVisitor visitor, String path) throws IOException {
+                final int position = fsImageData.lookupPosition(path);
+                final FsPath start = FsPath.of(path);
+                visitor.onDirectory(fsImageData.getInodes().getInodeAt(position), startParentPath(start));
+                // Render the path strings of the visitor on demand, once per directory
+                final FsPathVisitor pathVisitor = new FsPathVisitor() {
+                    @Override
+                    public void onFile(FsImageProto.INodeSection.INode inode, FsPath path) {
+                        visitor.onFile(inode, path.toString());
+                    }
+
+                    @Override
+                    public void onDirectory(FsImageProto.INodeSection.INode inode, FsPath path) {
+                        visitor.onDirectory(inode, path.toString());
+                    }
+
+                    @Override
+                    public void onSymLink(FsImageProto.INodeSection.INode inode, FsPath path) {
+                        visitor.onSymLink(inode, path.toString());
+                    }
+                };
+                invoke(fsImageData, positionVisitor(fsImageData, pathVisitor), position, start);
+            }
+
+            /**
+             * Traverses FS tree by inode position, starting at given path.
+             *
+             * @param fsImageData the FSImage data.
+             * @param visitor     the visitor.
+             * @param path        the path to start with.
+             * @throws IOException on error.
+             */
+            @Override
+            public void visit(FsImageData fsImageData, PositionVisitor visitor, String path) throws IOException {
+                final int position = fsImageData.lookupPosition(path);
+                final FsPath start = FsPath.of(path);
+                visitStart(visitor, position, start);
+                invoke(fsImageData, visitor, position, start);
+            }
+
+            private void invoke(FsImageData fsImageData, PositionVisitor visitor, int position, FsPath path)
+                    throws IOException {
+                final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                final VisitTask task = new VisitTask(fsImageData, visitor,
+                        directoryIndex.getChildrenStart(position), directoryIndex.getChildrenEnd(position), path);
+                final ForkJoinPool pool = null != forkJoinPool ? forkJoinPool : new ForkJoinPool(parallelism);
+                try {
+                    pool.invoke(task);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    if (null == forkJoinPool) {
+                        pool.shutdown();
+                    }
+                }
+            }
+
+            /**
+             * Visits a range of children of a directory, and their subtrees.
+             */
+            private class VisitTask extends RecursiveAction {
+                private static final long serialVersionUID = 1L;
+
+                private final FsImageData fsImageData;
+                private final PositionVisitor visitor;
+                // Range of child indexes, see DirectoryIndex.getChildPosition(int)
+                private final int from;
+                private final int to;
+                // Path of the parent directory
+                private final FsPath path;
+
+                VisitTask(FsImageData fsImageData, PositionVisitor visitor, int from, int to, FsPath path) {
+                    this.fsImageData = fsImageData;
+                    this.visitor = visitor;
+                    this.from = from;
+                    this.to = to;
+                    this.path = path;
+                }
+
+                @Override
+                protected void compute() {
+                    final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+                    final List<VisitTask> forked = new ArrayList<>();
+
+                    // Split wide directories, forking the upper halves
+                    int end = to;
+                    while (end - from > splitThreshold) {
+                        final int mid = (from + end) >>> 1;
+                        final VisitTask task = new VisitTask(fsImageData, visitor, mid, end, path);
+                        task.fork();
+                        forked.add(task);
+                        end = mid;
+                    }
+
+                    try {
+                        for (int i = from; i < end; i++) {
+                            final int childPosition = directoryIndex.getChildPosition(i);
+                            final int childrenStart = directoryIndex.getChildrenStart(childPosition);
+                            final int childrenEnd = directoryIndex.getChildrenEnd(childPosition);
+                            final FsPath childPath = visitor.visit(childPosition, path, childrenStart < childrenEnd);
+                            if (null != childPath) {
+                                final VisitTask task = new VisitTask(fsImageData, visitor,
+                                        childrenStart, childrenEnd, childPath);
+                                if (getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD) {
+                                    task.fork();
+                                    forked.add(task);
+                                } else {
+                                    task.compute();
+                                }
+                            }
                         }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+
+                    // Join in reverse fork order, so that unstolen tasks are popped and run by this worker
+                    for (int i = forked.size() - 1; i >= 0; i--) {
+                        forked.get(i).join();
                     }
-                } else if (isFile(inode)) {
-                    visitor.onFile(inode, path);
-                } else if (isSymlink(inode)) {
-                    visitor.onSymLink(inode, path);
-                } else {
-                    throw new IllegalStateException("Unsupported inode type " + inode.getType() + " for " + inode);
                 }
             }
         }
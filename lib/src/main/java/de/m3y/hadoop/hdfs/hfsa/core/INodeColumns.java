@@ -0,0 +1,262 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Columnar projection of frequently used inode fields, as primitive arrays indexed by inode position.
+ * <p>
+ * Positions are the inode repository positions, see {@link #getPosition(long)}.
+ * Reading columns requires no protobuf parsing, so scanning all inodes is much cheaper than a tree traversal.
+ * <p>
+ * Note: Inodes not reachable via the directory tree (eg only referenced by snapshots) have no parent.
+ */
+public class INodeColumns {
+    private static final Logger LOG = LoggerFactory.getLogger(INodeColumns.class);
+    /**
+     * Parent position of inodes without parent, such as the root inode.
+     */
+    public static final int NO_PARENT = DirectoryIndex.NO_PARENT;
+
+    private final FsImageLoader.INodesRepository inodes;
+    private final DirectoryIndex directoryIndex;
+    private final byte[] types;
+    private final long[] permissions;
+    private final long[] fileSizes;
+    private final int[] blockCounts;
+    private final short[] replications;
+    private final long[] modificationTimes;
+    private final long[] accessTimes;
+
+    private INodeColumns(FsImageLoader.INodesRepository inodes, DirectoryIndex directoryIndex) {
+        this.inodes = inodes;
+        this.directoryIndex = directoryIndex;
+        final int size = inodes.getSize();
+        types = new byte[size];
+        permissions = new long[size];
+        fileSizes = new long[size];
+        blockCounts = new int[size];
+        replications = new short[size];
+        modificationTimes = new long[size];
+        accessTimes = new long[size];
+    }
+
+    /**
+     * Builds the columns by extracting the fields from the serialized inodes, without parsing.
+     *
+     * @param inodes         the inodes.
+     * @param directoryIndex the directory adjacency, for the parents.
+     * @param parallel       true, if extracting should use multiple threads.
+     * @return the columns.
+     */
+    static INodeColumns build(FsImageLoader.INodesRepository inodes, DirectoryIndex directoryIndex,
+                              boolean parallel) {
+        long start = System.currentTimeMillis();
+        final INodeColumns columns = new INodeColumns(inodes, directoryIndex);
+        IntStream positions = IntStream.range(0, inodes.getSize());
+        if (parallel) {
+            positions = positions.parallel();
+        }
+        positions.forEach(columns::project);
+        LOG.debug("Built columns for {} inodes [{}ms]", inodes.getSize(), System.currentTimeMillis() - start);
+        return columns;
+    }
+
+    private void project(int position) {
+        final ByteBuffer inode = inodes.getInodeBytesAt(position);
+        final INode.Type type = INodeWireFormat.getType(inode);
+        types[position] = (byte) type.getNumber();
+        permissions[position] = INodeWireFormat.getPermission(inode);
+        modificationTimes[position] = INodeWireFormat.getModificationTime(inode);
+        accessTimes[position] = INodeWireFormat.getAccessTime(inode);
+        if (INode.Type.FILE == type) {
+            fileSizes[position] = INodeWireFormat.getFileSize(inode);
+            blockCounts[position] = INodeWireFormat.getBlockCount(inode);
+            replications[position] = (short) INodeWireFormat.getFileReplication(inode);
+        }
+    }
+
+    /**
+     * Gets the number of inodes.
+     *
+     * @return the number of inodes, and the exclusive upper bound of positions.
+     */
+    public int getSize() {
+        return types.length;
+    }
+
+    /**
+     * Gets the position of an inode.
+     *
+     * @param inodeId the inode id.
+     * @return the position, or a negative value if no such inode exists.
+     */
+    public int getPosition(long inodeId) {
+        return inodes.getPosition(inodeId);
+    }
+
+    /**
+     * Gets the inode id.
+     *
+     * @param position the inode position.
+     * @return the inode id.
+     */
+    public long getInodeId(int position) {
+        return inodes.getInodeId(position);
+    }
+
+    /**
+     * Gets the inode type.
+     *
+     * @param position the inode position.
+     * @return the type.
+     */
+    public INode.Type getType(int position) {
+        return INode.Type.forNumber(types[position]);
+    }
+
+    /**
+     * Checks if inode is a file.
+     *
+     * @param position the inode position.
+     * @return true, if file.
+     */
+    public boolean isFile(int position) {
+        return types[position] == INode.Type.FILE_VALUE;
+    }
+
+    /**
+     * Checks if inode is a directory.
+     *
+     * @param position the inode position.
+     * @return true, if directory.
+     */
+    public boolean isDirectory(int position) {
+        return types[position] == INode.Type.DIRECTORY_VALUE;
+    }
+
+    /**
+     * Checks if inode is a sym link.
+     *
+     * @param position the inode position.
+     * @return true, if sym link.
+     */
+    public boolean isSymlink(int position) {
+        return types[position] == INode.Type.SYMLINK_VALUE;
+    }
+
+    /**
+     * Gets the parent position.
+     *
+     * @param position the inode position.
+     * @return the parent position, or {@value #NO_PARENT}.
+     */
+    public int getParent(int position) {
+        return directoryIndex.getParentPosition(position);
+    }
+
+    /**
+     * Gets the permission, encoding user, group and mode.
+     *
+     * @param position the inode position.
+     * @return the permission.
+     * @see FsImageData#getPermissionStatus(long)
+     */
+    public long getPermission(int position) {
+        return permissions[position];
+    }
+
+    /**
+     * Gets the file size, as sum of all block sizes.
+     *
+     * @param position the inode position.
+     * @return the file size, or 0 if not a file.
+     */
+    public long getFileSize(int position) {
+        return fileSizes[position];
+    }
+
+    /**
+     * Gets the number of blocks.
+     *
+     * @param position the inode position.
+     * @return the number of blocks, or 0 if not a file.
+     */
+    public int getBlockCount(int position) {
+        return blockCounts[position];
+    }
+
+    /**
+     * Gets the replication, with erasure coded files counting as {@code INodeFile#DEFAULT_REPL_FOR_STRIPED_BLOCKS}.
+     *
+     * @param position the inode position.
+     * @return the replication, or 0 if not a file.
+     * @see FsUtil#getFileReplication(FsImageProto.INodeSection.INodeFile)
+     */
+    public short getReplication(int position) {
+        return replications[position];
+    }
+
+    /**
+     * Gets the modification time.
+     *
+     * @param position the inode position.
+     * @return the modification time.
+     */
+    public long getModificationTime(int position) {
+        return modificationTimes[position];
+    }
+
+    /**
+     * Gets the access time.
+     *
+     * @param position the inode position.
+     * @return the access time, or 0 if a directory.
+     */
+    public long getAccessTime(int position) {
+        return accessTimes[position];
+    }
+
+    /**
+     * Creates a filter matching all inodes within the subtree of given directory, excluding the directory itself.
+     * <p>
+     * Membership is decided by walking up the parents, remembering the result for each visited directory.
+     * The filter is thread safe.
+     *
+     * @param directoryPosition the subtree root directory position.
+     * @return the filter, accepting inode positions.
+     */
+    public IntPredicate subtreeFilter(int directoryPosition) {
+        final byte unknown = 0;
+        final byte inside = 1;
+        final byte outside = 2;
+        // Concurrent updates are idempotent, so no synchronization required
+        final byte[] memo = new byte[getSize()];
+        memo[directoryPosition] = inside;
+        return position -> {
+            final int parent = directoryIndex.getParentPosition(position);
+            if (NO_PARENT == parent) {
+                return false;
+            }
+            // Walk up until a known directory or the top
+            int current = parent;
+            while (NO_PARENT != current && unknown == memo[current]) {
+                current = directoryIndex.getParentPosition(current);
+            }
+            final byte state = NO_PARENT == current ? outside : memo[current];
+            // Remember state for walked directories
+            for (int walked = parent; walked != current; walked = directoryIndex.getParentPosition(walked)) {
+                memo[walked] = state;
+            }
+            return inside == state;
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Looks up the position of an inode id within the ascending sorted inode ids.
+ * <p>
+ * Inode ids are allocated nearly densely, starting at
+ * {@link org.apache.hadoop.hdfs.server.namenode.INodeId#ROOT_INODE_ID}.
+ * If all ids are dense, the position is computed directly from the id.
+ * Otherwise, the id range is split into buckets of equal id span, storing the position of the first id per bucket.
+ * A lookup directly addresses the bucket, and guesses the position by assuming dense ids within the bucket.
+ * As ids are unique, the guess is an upper bound, so a miss (eg due to gaps of deleted inodes)
+ * falls back to a binary search between bucket start and guess.
+ * <p>
+ * Compared to a binary search over all ids, a lookup typically needs a single id probe instead of ~log2(n).
+ */
+class INodeIdIndex {
+    // Target average number of ids per bucket, trading table size against fallback search length
+    private static final int IDS_PER_BUCKET = 8;
+
+    private final IntToLongFunction ids;
+    private final int size;
+    private final long minId;
+    private final long maxOffset;
+    private final boolean dense;
+    private final int shift;
+    // Position of first id per bucket, plus size as end marker
+    private final int[] bucketStarts;
+
+    /**
+     * Creates an index.
+     *
+     * @param ids the ascending sorted, unique ids.
+     */
+    INodeIdIndex(long[] ids) {
+        this(ids.length, position -> ids[position]);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param size the number of ids.
+     * @param ids  the ascending sorted, unique ids, by position.
+     */
+    INodeIdIndex(int size, IntToLongFunction ids) {
+        this.ids = ids;
+        this.size = size;
+        minId = size > 0 ? ids.applyAsLong(0) : 0;
+        maxOffset = size > 0 ? ids.applyAsLong(size - 1) - minId : -1;
+        dense = maxOffset == size - 1;
+        if (dense) {
+            shift = 0;
+            bucketStarts = null;
+        } else {
+            int s = 0;
+            final long maxBuckets = size / IDS_PER_BUCKET + 1;
+            while ((maxOffset >>> s) + 1 > maxBuckets) {
+                s++;
+            }
+            shift = s;
+            final int numBuckets = (int) (maxOffset >>> shift) + 1;
+            bucketStarts = new int[numBuckets + 1];
+            for (int position = 0; position < size; position++) {
+                bucketStarts[(int) ((ids.applyAsLong(position) - minId) >>> shift) + 1]++;
+            }
+            for (int b = 0; b < numBuckets; b++) {
+                bucketStarts[b + 1] += bucketStarts[b];
+            }
+        }
+    }
+
+    /**
+     * Gets the position of an id.
+     *
+     * @param id the inode id.
+     * @return the position, or a negative value if not found.
+     */
+    int getPosition(long id) {
+        final long offset = id - minId;
+        if (offset < 0 || offset > maxOffset) {
+            return -1;
+        }
+        if (dense) {
+            return (int) offset;
+        }
+
+        final int bucket = (int) (offset >>> shift);
+        int low = bucketStarts[bucket];
+        int high = bucketStarts[bucket + 1] - 1;
+        final long guess = low + (offset - ((long) bucket << shift));
+        if (guess <= high) {
+            if (ids.applyAsLong((int) guess) == id) {
+                return (int) guess;
+            }
+            // Unique ascending ids, so any id at the guessed position is greater
+            high = (int) guess - 1;
+        }
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midId = ids.applyAsLong(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    boolean isDense() {
+        return dense;
+    }
+
+    int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,242 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.thirdparty.protobuf.ByteString;
+import org.apache.hadoop.thirdparty.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Reusable, read-only view of a serialized inode, for visiting without parsing protobuf messages.
+ * <p>
+ * A view is refilled for each visited inode by copying the inode bytes into a buffer owned by the view,
+ * so visiting creates no INode, INodeFile, BlockProto or ByteString instances.
+ * Accessors extract single fields on demand via {@link INodeWireFormat}.
+ * <p>
+ * A view belongs to the visiting thread and is only valid during a visitor callback.
+ * Use {@link #toINode()} for keeping an inode.
+ *
+ * @see FsViewVisitor
+ */
+public final class INodeView {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] bytes;
+    // Wraps bytes, from 0 to the inode length
+    private ByteBuffer buffer;
+    // Decoded on first access, as needed for every visited inode
+    private INode.Type type;
+
+    INodeView() {
+        bytes = new byte[INITIAL_CAPACITY];
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Prepares the view for another inode, growing the buffer if required.
+     *
+     * @param length the serialized inode length.
+     * @return the array to copy the inode bytes into, starting at index 0.
+     */
+    byte[] prepare(int length) {
+        if (length > bytes.length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        ((Buffer) buffer).limit(length);
+        type = null;
+        return bytes;
+    }
+
+    /**
+     * Fills the view with a copy of the serialized inode.
+     *
+     * @param src    the source array.
+     * @param offset the inode offset in source array.
+     * @param length the inode length.
+     */
+    void reset(byte[] src, int offset, int length) {
+        System.arraycopy(src, offset, prepare(length), 0, length);
+    }
+
+    /**
+     * Fills the view with a copy of the serialized inode, without modifying the source position.
+     *
+     * @param src the inode bytes, from position to limit.
+     */
+    void reset(ByteBuffer src) {
+        final int length = src.remaining();
+        if (src.hasArray()) {
+            reset(src.array(), src.arrayOffset() + src.position(), length);
+        } else {
+            final byte[] dst = prepare(length);
+            final int offset = src.position();
+            for (int i = 0; i < length; i++) {
+                dst[i] = src.get(offset + i);
+            }
+        }
+    }
+
+    /**
+     * Gets the inode id.
+     *
+     * @return the inode id.
+     */
+    public long getId() {
+        return INodeWireFormat.getId(buffer);
+    }
+
+    /**
+     * Gets the inode type.
+     *
+     * @return the type.
+     */
+    public INode.Type getType() {
+        INode.Type t = type;
+        if (null == t) {
+            t = INodeWireFormat.getType(buffer);
+            type = t;
+        }
+        return t;
+    }
+
+    /**
+     * Checks if a file.
+     *
+     * @return true, if a file.
+     */
+    public boolean isFile() {
+        return INode.Type.FILE == getType();
+    }
+
+    /**
+     * Checks if a directory.
+     *
+     * @return true, if a directory.
+     */
+    public boolean isDirectory() {
+        return INode.Type.DIRECTORY == getType();
+    }
+
+    /**
+     * Checks if a symlink.
+     *
+     * @return true, if a symlink.
+     */
+    public boolean isSymlink() {
+        return INode.Type.SYMLINK == getType();
+    }
+
+    /**
+     * Decodes the name. Note: Allocates a new string, see {@link #hasName(byte[])} for comparing without.
+     *
+     * @return the name, or an empty string for the root directory.
+     */
+    public String getName() {
+        final ByteBuffer name = INodeWireFormat.getName(buffer);
+        return new String(name.array(), name.arrayOffset() + name.position(), name.remaining(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the name, eg for creating a path handle.
+     *
+     * @return a copy of the name bytes.
+     */
+    ByteString getNameAsByteString() {
+        return ByteString.copyFrom(INodeWireFormat.getName(buffer));
+    }
+
+    /**
+     * Checks if the inode has given name, without decoding the name.
+     *
+     * @param name the UTF-8 encoded name.
+     * @return true, if same name.
+     */
+    public boolean hasName(byte[] name) {
+        return INodeWireFormat.hasName(buffer, name);
+    }
+
+    /**
+     * Gets the permission of a file, directory or symlink.
+     *
+     * @return the permission, see {@link de.m3y.hadoop.hdfs.hfsa.util.FsUtil#getUserId(long)} for decoding.
+     */
+    public long getPermission() {
+        return INodeWireFormat.getPermission(buffer);
+    }
+
+    /**
+     * Gets the modification time of a file, directory or symlink.
+     *
+     * @return the modification time.
+     */
+    public long getModificationTime() {
+        return INodeWireFormat.getModificationTime(buffer);
+    }
+
+    /**
+     * Gets the access time of a file or symlink.
+     *
+     * @return the access time, or 0 for a directory.
+     */
+    public long getAccessTime() {
+        return INodeWireFormat.getAccessTime(buffer);
+    }
+
+    /**
+     * Gets the replication of a file, with erasure coded files counting as
+     * {@code INodeFile#DEFAULT_REPL_FOR_STRIPED_BLOCKS}.
+     *
+     * @return the replication, or 0 if not a file.
+     * @see de.m3y.hadoop.hdfs.hfsa.util.FsUtil#getFileReplication(org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile)
+     */
+    public int getReplication() {
+        return INodeWireFormat.getFileReplication(buffer);
+    }
+
+    /**
+     * Gets the number of blocks of a file.
+     *
+     * @return the number of blocks, or 0 if not a file.
+     */
+    public int getBlockCount() {
+        return INodeWireFormat.getBlockCount(buffer);
+    }
+
+    /**
+     * Computes the file size as sum of all block sizes.
+     *
+     * @return the size in bytes, or 0 if not a file.
+     */
+    public long getFileSize() {
+        return INodeWireFormat.getFileSize(buffer);
+    }
+
+    /**
+     * Gets the serialized inode, eg for other {@link INodeWireFormat} extractors.
+     *
+     * @return the inode bytes from position to limit, shared with this view - must not be modified.
+     */
+    public ByteBuffer getBytes() {
+        return buffer;
+    }
+
+    /**
+     * Parses the inode, eg for accessing fields without accessor or for keeping the inode after the callback.
+     *
+     * @return the parsed inode.
+     * @throws InvalidProtocolBufferException if protobuf deserialization fails.
+     */
+    public INode toINode() throws InvalidProtocolBufferException {
+        return INode.parser().parseFrom(bytes, 0, buffer.limit());
+    }
+
+    @Override
+    public String toString() {
+        return "INodeView{id=" + getId() + ", type=" + getType() + ", name=" + getName() + '}';
+    }
+}
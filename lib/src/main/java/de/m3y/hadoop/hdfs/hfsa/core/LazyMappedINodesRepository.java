@@ -0,0 +1,266 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.thirdparty.protobuf.InvalidProtocolBufferException;
+import org.apache.hadoop.thirdparty.protobuf.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of INode repository keeping only inode id and offset, parsing inodes lazily from the mapped fsimage.
+ * <p>
+ * Loading is a single sequential scan over the INODE section, skipping the inode payload.
+ * Inode bytes stay in the OS page cache instead of the heap.
+ * Requires an uncompressed fsimage read via memory mapping, and otherwise falls back to an {@link ArenaINodesRepository}.
+ */
+class LazyMappedINodesRepository implements FsImageLoader.INodesRepository {
+    private static final Logger LOG = LoggerFactory.getLogger(LazyMappedINodesRepository.class);
+    private static final Parser<INode> INODE_PARSER = INode.parser();
+    // Inode offset encodes section index in the upper 16 bits, and position in section in the lower 48 bits
+    private static final int SECTION_SHIFT = 48;
+    private static final long POSITION_MASK = (1L << SECTION_SHIFT) - 1;
+
+    private final MappedSection[] sections;
+    // inode ids, sorted
+    private final long[] inodeIds;
+    private final INodeIdIndex idIndex;
+    // inode offsets, in order of inodeIds
+    private final long[] inodeOffsets;
+    private final INode rootInode;
+
+    LazyMappedINodesRepository(MappedSection[] sections, long[] inodeIds, long[] inodeOffsets)
+            throws InvalidProtocolBufferException {
+        this.sections = sections;
+        this.inodeIds = inodeIds;
+        idIndex = new INodeIdIndex(inodeIds);
+        this.inodeOffsets = inodeOffsets;
+        rootInode = parseInode(findOffset(INodeId.ROOT_INODE_ID));
+    }
+
+    static class Builder implements FsImageLoader.INodesRepositoryBuilder {
+        private final boolean parallel;
+
+        Builder(boolean parallel) {
+            this.parallel = parallel;
+        }
+
+        @Override
+        public FsImageLoader.INodesRepository build(FsImageProto.INodeSection s, InputStream in, long length)
+                throws IOException {
+            if (!(in instanceof MappedSection.MappedSectionInputStream)) {
+                return fallback().build(s, in, length);
+            }
+            long start = System.currentTimeMillis();
+            final int numInodes = (int) s.getNumInodes();
+            final LongArrayList inodeIds = new LongArrayList(numInodes);
+            final LongArrayList inodeOffsets = new LongArrayList(numInodes);
+            final MappedSection.MappedSectionInputStream mappedIn = (MappedSection.MappedSectionInputStream) in;
+            scan(mappedIn, 0, numInodes, inodeIds, inodeOffsets);
+            if (inodeIds.size() != numInodes) {
+                throw new IllegalStateException("Expected " + numInodes + " inodes but section contains " +
+                        inodeIds.size());
+            }
+            LOG.debug("Scanned {} inodes [{}ms] of length {} bytes",
+                    numInodes, System.currentTimeMillis() - start, length);
+            return build(new MappedSection[]{mappedIn.getMappedSection()},
+                    inodeIds.elements(), inodeOffsets.elements());
+        }
+
+        @Override
+        public FsImageLoader.INodesRepository build(FsImageProto.INodeSection s, List<InputStream> subSections,
+                                                   long length, ExecutorService executor) throws IOException {
+            for (InputStream in : subSections) {
+                if (!(in instanceof MappedSection.MappedSectionInputStream)) {
+                    return fallback().build(s, subSections, length, executor);
+                }
+            }
+            long start = System.currentTimeMillis();
+            final MappedSection[] sections = new MappedSection[subSections.size()];
+            List<Future<LongArrayList[]>> futures = new ArrayList<>(subSections.size());
+            for (int i = 0; i < sections.length; i++) {
+                final MappedSection.MappedSectionInputStream in =
+                        (MappedSection.MappedSectionInputStream) subSections.get(i);
+                sections[i] = in.getMappedSection();
+                final int sectionIdx = i;
+                futures.add(executor.submit(() -> {
+                    final LongArrayList ids = new LongArrayList(1024);
+                    final LongArrayList offsets = new LongArrayList(1024);
+                    scan(in, sectionIdx, Long.MAX_VALUE, ids, offsets);
+                    return new LongArrayList[]{ids, offsets};
+                }));
+            }
+
+            final long[] inodeIds = new long[(int) s.getNumInodes()];
+            final long[] inodeOffsets = new long[inodeIds.length];
+            int pos = 0;
+            for (Future<LongArrayList[]> future : futures) {
+                final LongArrayList[] idsAndOffsets = FsImageLoader.get(future);
+                final int size = idsAndOffsets[0].size();
+                if (pos + size > inodeIds.length) {
+                    throw new IllegalStateException("Expected " + inodeIds.length + " inodes but sub-sections contain more");
+                }
+                idsAndOffsets[0].getElements(0, inodeIds, pos, size);
+                idsAndOffsets[1].getElements(0, inodeOffsets, pos, size);
+                pos += size;
+            }
+            if (pos != inodeIds.length) {
+                throw new IllegalStateException("Expected " + inodeIds.length + " inodes but sub-sections contain " + pos);
+            }
+            LOG.debug("Scanned {} inodes from {} sub-sections [{}ms] of length {} bytes",
+                    inodeIds.length, sections.length, System.currentTimeMillis() - start, length);
+            return build(sections, inodeIds, inodeOffsets);
+        }
+
+        private FsImageLoader.INodesRepositoryBuilder fallback() {
+            LOG.warn("Lazy loading requires an uncompressed and memory mapped fsimage, falling back to arena loading");
+            return new ArenaINodesRepository.Builder(parallel);
+        }
+
+        private FsImageLoader.INodesRepository build(MappedSection[] sections, long[] inodeIds, long[] inodeOffsets)
+                throws InvalidProtocolBufferException {
+            long start = System.currentTimeMillis();
+            // Ids are unique, so sorting the pairs lexicographically sorts by id
+            if (parallel) {
+                LongArrays.parallelRadixSort(inodeIds, inodeOffsets);
+            } else {
+                LongArrays.radixSort(inodeIds, inodeOffsets);
+            }
+            LOG.debug("Sorted {} inodes [{}ms]", inodeIds.length, System.currentTimeMillis() - start);
+            return new LazyMappedINodesRepository(sections, inodeIds, inodeOffsets);
+        }
+    }
+
+    /**
+     * Records id and offset of each length delimited inode, skipping the inode payload.
+     *
+     * @param in         the stream, positioned at the first inode.
+     * @param sectionIdx the index of the mapped section.
+     * @param maxInodes  the max number of inodes to scan, or until section end.
+     * @param ids        the scanned inode ids.
+     * @param offsets    the scanned inode offsets.
+     */
+    static void scan(MappedSection.MappedSectionInputStream in, int sectionIdx, long maxInodes,
+                     LongArrayList ids, LongArrayList offsets) {
+        final MappedSection section = in.getMappedSection();
+        final long sectionBase = (long) sectionIdx << SECTION_SHIFT;
+        final long end = section.length();
+        long pos = in.position();
+        for (long i = 0; i < maxInodes && pos < end; i++) {
+            offsets.add(sectionBase | pos);
+            final int size = LengthDelimited.readLength(section, pos);
+            pos += LengthDelimited.prefixSize(size);
+            ids.add(extractNodeId(section, pos));
+            pos += size;
+        }
+        in.skip(pos - in.position());
+    }
+
+    /**
+     * Extracts the inode id without parsing the inode.
+     *
+     * @see FsImageLoader.PrimitiveArrayINodesRepository#extractNodeId(byte[], int)
+     */
+    private static long extractNodeId(MappedSection section, long pos) {
+        long bufferPos = pos + 3; /* tag + enum + tag */
+        int shift = 0;
+        long result = 0;
+        while (shift < 64) {
+            final byte b = section.get(bufferPos++);
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IllegalArgumentException("Malformed Varint at pos " + (pos + 3));
+    }
+
+    @Override
+    public int getPosition(final long inodeId) {
+        return idIndex.getPosition(inodeId);
+    }
+
+    private long findOffset(final long inodeId) {
+        final int position = getPosition(inodeId);
+        if (position < 0) {
+            throw new IllegalArgumentException("Can not find inode by id " + inodeId);
+        }
+        return inodeOffsets[position];
+    }
+
+    @Override
+    public long getInodeId(int position) {
+        return inodeIds[position];
+    }
+
+    @Override
+    public INode getInodeAt(int position) throws IOException {
+        return parseInode(inodeOffsets[position]);
+    }
+
+    @Override
+    public ByteBuffer getInodeBytesAt(int position) {
+        return view(inodeOffsets[position]);
+    }
+
+    @Override
+    public void readInodeAt(int position, INodeView view) {
+        final long offset = inodeOffsets[position];
+        final MappedSection section = sections[(int) (offset >>> SECTION_SHIFT)];
+        final long start = offset & POSITION_MASK;
+        final int size = LengthDelimited.readLength(section, start);
+        final long pos = start + LengthDelimited.prefixSize(size);
+        final byte[] bytes = view.prepare(size);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = section.get(pos + i);
+        }
+    }
+
+    private INode parseInode(long offset) throws InvalidProtocolBufferException {
+        return INODE_PARSER.parseFrom(view(offset));
+    }
+
+    private ByteBuffer view(long offset) {
+        final MappedSection section = sections[(int) (offset >>> SECTION_SHIFT)];
+        final long start = offset & POSITION_MASK;
+        final int size = LengthDelimited.readLength(section, start);
+        return section.view(start + LengthDelimited.prefixSize(size), size);
+    }
+
+    @Override
+    public INode getInode(long inodeId) throws IOException {
+        if (INodeId.ROOT_INODE_ID == inodeId) {
+            return rootInode;
+        }
+        return parseInode(findOffset(inodeId));
+    }
+
+    MappedSection[] getSections() {
+        return sections;
+    }
+
+    long[] getInodeIds() {
+        return inodeIds;
+    }
+
+    long[] getInodeOffsets() {
+        return inodeOffsets;
+    }
+
+    @Override
+    public int getSize() {
+        return inodeIds.length;
+    }
+}
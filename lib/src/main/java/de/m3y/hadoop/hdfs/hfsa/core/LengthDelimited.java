@@ -0,0 +1,83 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
+
+/**
+ * Decodes the varint32 length prefix of length delimited inodes, as stored by the inode repositories.
+ * <p>
+ * Inlined decoding without stream or bounds checks, as invoked for every inode access.
+ */
+final class LengthDelimited {
+    private LengthDelimited() {
+        // Static helper
+    }
+
+    /**
+     * Reads the length prefix.
+     *
+     * @param buf the buffer.
+     * @param pos the position of the length prefix.
+     * @return the inode length, excluding the prefix.
+     */
+    static int readLength(byte[] buf, int pos) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+
+    /**
+     * Reads the length prefix with absolute gets, not modifying the buffer position.
+     *
+     * @param buf the buffer.
+     * @param pos the position of the length prefix.
+     * @return the inode length, excluding the prefix.
+     */
+    static int readLength(ByteBuffer buf, int pos) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get(pos++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+
+    /**
+     * Reads the length prefix.
+     *
+     * @param section the mapped section.
+     * @param pos     the position of the length prefix.
+     * @return the inode length, excluding the prefix.
+     */
+    static int readLength(MappedSection section, long pos) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = section.get(pos++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+
+    /**
+     * Computes the size of the length prefix, for skipping to the inode bytes.
+     *
+     * @param length the inode length, see {@link #readLength(byte[], int)}.
+     * @return the number of prefix bytes.
+     */
+    static int prefixSize(int length) {
+        return CodedOutputStream.computeUInt32SizeNoTag(length);
+    }
+}
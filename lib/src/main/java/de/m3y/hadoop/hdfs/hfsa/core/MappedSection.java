@@ -0,0 +1,219 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory maps an fsimage section (or any other file region).
+ * <p>
+ * A single mapping is limited to 2 GiB, so the region is split into fixed size chunks.
+ * Reads spanning a chunk border are handled transparently.
+ */
+class MappedSection {
+    /**
+     * Default chunk size of 1 GiB, must be a power of two.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private final MappedByteBuffer[] chunks;
+    private final long offset;
+    private final long length;
+    private final int chunkShift;
+    private final int chunkMask;
+
+    MappedSection(FileChannel fc, long offset, long length) throws IOException {
+        this(fc, offset, length, DEFAULT_CHUNK_SIZE);
+    }
+
+    MappedSection(FileChannel fc, long offset, long length, int chunkSize) throws IOException {
+        if (Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("Chunk size " + chunkSize + " must be a power of two");
+        }
+        this.offset = offset;
+        this.length = length;
+        chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        chunkMask = chunkSize - 1;
+
+        final int numChunks = (int) ((length + chunkSize - 1) / chunkSize);
+        chunks = new MappedByteBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            final long chunkOffset = (long) i * chunkSize;
+            chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY, offset + chunkOffset,
+                    Math.min(chunkSize, length - chunkOffset));
+        }
+    }
+
+    /**
+     * Gets the file offset of the mapped region.
+     *
+     * @return the offset in bytes.
+     */
+    long offset() {
+        return offset;
+    }
+
+    /**
+     * Gets the length of the mapped region.
+     *
+     * @return the length in bytes.
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Reads a single byte.
+     *
+     * @param pos the position relative to the region start.
+     * @return the byte.
+     */
+    byte get(long pos) {
+        return chunks[(int) (pos >>> chunkShift)].get((int) (pos & chunkMask));
+    }
+
+    /**
+     * Bulk copies bytes, even when crossing chunk borders.
+     *
+     * @param pos the position relative to the region start.
+     * @param dst the destination.
+     * @param off the destination offset.
+     * @param len the number of bytes to copy.
+     */
+    void get(long pos, byte[] dst, int off, int len) {
+        checkBounds(pos, len);
+        while (len > 0) {
+            final MappedByteBuffer chunk = chunks[(int) (pos >>> chunkShift)];
+            final int chunkPos = (int) (pos & chunkMask);
+            final int n = Math.min(len, chunk.limit() - chunkPos);
+            // Absolute bulk get is Java 13+, so use a thread confined duplicate.
+            // Buffer cast keeps Java 8 binary compatibility of covariant position(int)
+            final ByteBuffer view = chunk.duplicate();
+            ((Buffer) view).position(chunkPos);
+            view.get(dst, off, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Gets a read only view of a region, without copying if the region is within a single chunk.
+     *
+     * @param pos the position relative to the region start.
+     * @param len the number of bytes.
+     * @return the view, positioned at the region start with the region length as limit.
+     */
+    ByteBuffer view(long pos, int len) {
+        checkBounds(pos, len);
+        final MappedByteBuffer chunk = chunks[(int) (pos >>> chunkShift)];
+        final int chunkPos = (int) (pos & chunkMask);
+        if (chunkPos + len <= chunk.limit()) {
+            final ByteBuffer view = chunk.duplicate();
+            ((Buffer) view).limit(chunkPos + len);
+            ((Buffer) view).position(chunkPos);
+            return view;
+        }
+        // Spans a chunk border
+        final byte[] buf = new byte[len];
+        get(pos, buf, 0, len);
+        return ByteBuffer.wrap(buf);
+    }
+
+    private void checkBounds(long pos, int len) {
+        if (pos < 0 || len < 0 || pos + len > length) {
+            throw new IndexOutOfBoundsException("Can not read " + len + " bytes at position " + pos +
+                    " of mapped region with length " + length);
+        }
+    }
+
+    /**
+     * Creates a new stream reading the mapped region from the start.
+     * <p>
+     * Streams are independent of each other and not thread safe.
+     *
+     * @return the stream.
+     */
+    MappedSectionInputStream newInputStream() {
+        return new MappedSectionInputStream();
+    }
+
+    /**
+     * Streams the mapped region, without any intermediate buffering.
+     */
+    class MappedSectionInputStream extends InputStream {
+        private long pos;
+        private long mark;
+
+        /**
+         * Gets the underlying mapped region.
+         *
+         * @return the mapped region.
+         */
+        MappedSection getMappedSection() {
+            return MappedSection.this;
+        }
+
+        /**
+         * Gets the current stream position.
+         *
+         * @return the position relative to the region start.
+         */
+        long position() {
+            return pos;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= length) {
+                return -1;
+            }
+            return get(pos++) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            final long remaining = length - pos;
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = (int) Math.min(len, remaining);
+            get(pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0L, Math.min(n, length - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - pos);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            mark = pos;
+        }
+
+        @Override
+        public void reset() {
+            pos = mark;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hash index of inodes by parent directory and name, for resolving a path segment without scanning all children.
+ * <p>
+ * Open addressing table of inode positions with linear probing.
+ * Keys are not stored, but verified via the parent position of the {@link DirectoryIndex}
+ * and the serialized inode name, so the slots need 8 to 16 bytes per inode, depending on the power of two table size.
+ * Building temporarily needs another 4 bytes per inode for the name hashes.
+ */
+class NameIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NameIndex.class);
+    // Empty slot marker, as slots store position + 1
+    private static final int EMPTY = 0;
+    // Largest power of two array length
+    static final int MAX_CAPACITY = 1 << 30;
+    // Max number of indexed inodes, keeping the load factor of the largest table at most 0.75
+    static final int MAX_SIZE = MAX_CAPACITY / 4 * 3;
+
+    private final FsImageLoader.INodesRepository inodes;
+    private final DirectoryIndex directoryIndex;
+    private final int[] slots;
+    private final int mask;
+
+    private NameIndex(FsImageLoader.INodesRepository inodes, DirectoryIndex directoryIndex, int[] slots) {
+        this.inodes = inodes;
+        this.directoryIndex = directoryIndex;
+        this.slots = slots;
+        mask = slots.length - 1;
+    }
+
+    /**
+     * Builds the index for all inodes linked into the directory tree.
+     *
+     * @param inodes         the inodes.
+     * @param directoryIndex the directory adjacency.
+     * @param parallel       true, if hashing the names should use multiple threads.
+     * @return the index.
+     */
+    static NameIndex build(FsImageLoader.INodesRepository inodes, DirectoryIndex directoryIndex, boolean parallel) {
+        long start = System.currentTimeMillis();
+        final int size = inodes.getSize();
+        final int[] slots = new int[capacity(size)];
+        final int mask = slots.length - 1;
+
+        // Hashing requires reading the name, so compute hashes concurrently
+        final int[] hashes = new int[size];
+        IntStream positions = IntStream.range(0, size);
+        if (parallel) {
+            positions = positions.parallel();
+        }
+        positions.forEach(position -> {
+            final int parent = directoryIndex.getParentPosition(position);
+            if (DirectoryIndex.NO_PARENT != parent) {
+                hashes[position] = hash(parent, INodeWireFormat.getName(inodes.getInodeBytesAt(position)));
+            }
+        });
+
+        int indexed = 0;
+        for (int position = 0; position < size; position++) {
+            if (DirectoryIndex.NO_PARENT != directoryIndex.getParentPosition(position)) {
+                int slot = hashes[position] & mask;
+                while (EMPTY != slots[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = position + 1;
+                indexed++;
+            }
+        }
+        LOG.debug("Built name index for {} inodes [{}ms]", indexed, System.currentTimeMillis() - start);
+        return new NameIndex(inodes, directoryIndex, slots);
+    }
+
+    /**
+     * Computes the table size, as a power of two.
+     *
+     * @param size the number of inodes.
+     * @return the capacity for a load factor of at most 0.5, or of at most 0.75 if capped at {@link #MAX_CAPACITY}.
+     * @throws IllegalArgumentException if exceeding {@link #MAX_SIZE} inodes.
+     */
+    static int capacity(int size) {
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Can not build name index for " + size
+                    + " inodes, exceeding max of " + MAX_SIZE + " inodes");
+        }
+        final long capacity = Long.highestOneBit(Math.max(2L, size) - 1) << 2;
+        return (int) Math.min(capacity, MAX_CAPACITY);
+    }
+
+    /**
+     * Finds a child by name.
+     *
+     * @param parentPosition the directory position.
+     * @param name           the UTF-8 encoded child name.
+     * @return the child position, or a negative value if no such child.
+     */
+    int find(int parentPosition, byte[] name) {
+        int slot = hash(parentPosition, ByteBuffer.wrap(name)) & mask;
+        int entry;
+        while (EMPTY != (entry = slots[slot])) {
+            final int position = entry - 1;
+            if (directoryIndex.getParentPosition(position) == parentPosition &&
+                    INodeWireFormat.hasName(inodes.getInodeBytesAt(position), name)) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(int parentPosition, ByteBuffer name) {
+        int h = parentPosition;
+        for (int i = name.position(); i < name.limit(); i++) {
+            h = 31 * h + name.get(i);
+        }
+        // Spread bits, as the table uses the lower bits only
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
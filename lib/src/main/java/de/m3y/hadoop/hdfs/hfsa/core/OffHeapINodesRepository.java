@@ -0,0 +1,334 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.thirdparty.protobuf.CodedInputStream;
+import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
+import org.apache.hadoop.thirdparty.protobuf.InvalidProtocolBufferException;
+import org.apache.hadoop.thirdparty.protobuf.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of INode repository keeping inode bytes and the inode id index outside the Java heap.
+ * <p>
+ * Same layout as {@link ArenaINodesRepository}, but slabs and index are direct buffers.
+ * The heap only holds a few buffer objects, independent of the number of inodes.
+ * Note: Direct memory is limited by <code>-XX:MaxDirectMemorySize</code>, which defaults to the max heap size.
+ */
+class OffHeapINodesRepository implements FsImageLoader.INodesRepository {
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapINodesRepository.class);
+    private static final Parser<INode> INODE_PARSER = INode.parser();
+
+    private final ByteBuffer[] slabs;
+    // inode ids, sorted
+    private final LongPages inodeIds;
+    // inode offsets (slab index in upper 32 bits, position in slab in lower 32 bits), in order of inodeIds
+    private final LongPages inodeOffsets;
+    private final INodeIdIndex idIndex;
+    private final int size;
+    private final INode rootInode;
+
+    OffHeapINodesRepository(ByteBuffer[] slabs, LongPages inodeIds, LongPages inodeOffsets, int size)
+            throws InvalidProtocolBufferException {
+        this.slabs = slabs;
+        this.inodeIds = inodeIds;
+        this.inodeOffsets = inodeOffsets;
+        this.size = size;
+        idIndex = new INodeIdIndex(size, inodeIds::get);
+        rootInode = parseInode(findOffset(INodeId.ROOT_INODE_ID));
+    }
+
+    static class Builder implements FsImageLoader.INodesRepositoryBuilder {
+        private final boolean parallel;
+        private final int slabSize;
+
+        Builder(boolean parallel) {
+            this(parallel, ArenaINodesRepository.DEFAULT_SLAB_SIZE);
+        }
+
+        Builder(boolean parallel, int slabSize) {
+            this.parallel = parallel;
+            this.slabSize = slabSize;
+        }
+
+        @Override
+        public FsImageLoader.INodesRepository build(FsImageProto.INodeSection s, InputStream in, long length)
+                throws IOException {
+            long start = System.currentTimeMillis();
+            final int numInodes = (int) s.getNumInodes();
+            SlabWriter writer = new SlabWriter(slabSize, numInodes);
+            for (int i = 0; i < numInodes; ++i) {
+                writer.append(in, CodedInputStream.readRawVarint32(in.read(), in));
+            }
+            LOG.debug("Loaded {} inodes into {} off-heap slabs [{}ms] of length {} bytes",
+                    numInodes, writer.slabs.size(), System.currentTimeMillis() - start, length);
+            return build(writer.getSlabs(), writer.inodeIds, writer.inodeOffsets, numInodes);
+        }
+
+        @Override
+        public FsImageLoader.INodesRepository build(FsImageProto.INodeSection s, List<InputStream> subSections,
+                                                   long length, ExecutorService executor) throws IOException {
+            long start = System.currentTimeMillis();
+            List<Future<SlabWriter>> futures = new ArrayList<>(subSections.size());
+            for (InputStream in : subSections) {
+                futures.add(executor.submit(() -> {
+                    SlabWriter writer = new SlabWriter(slabSize, 0);
+                    int firstByte;
+                    while ((firstByte = in.read()) >= 0) {
+                        writer.append(in, CodedInputStream.readRawVarint32(firstByte, in));
+                    }
+                    return writer;
+                }));
+            }
+
+            // Concatenate the slabs and rebase the slab index of the inode offsets
+            List<ByteBuffer> slabs = new ArrayList<>();
+            final int numInodes = (int) s.getNumInodes();
+            final LongPages inodeIds = new LongPages(numInodes);
+            final LongPages inodeOffsets = new LongPages(numInodes);
+            int pos = 0;
+            for (Future<SlabWriter> future : futures) {
+                final SlabWriter writer = FsImageLoader.get(future);
+                final int writerSize = writer.inodeIds.size();
+                if (pos + writerSize > numInodes) {
+                    throw new IllegalStateException("Expected " + numInodes + " inodes but sub-sections contain more");
+                }
+                final long slabBase = (long) slabs.size() << 32;
+                for (int i = 0; i < writerSize; i++) {
+                    inodeIds.add(writer.inodeIds.get(i));
+                    inodeOffsets.add(writer.inodeOffsets.get(i) + slabBase);
+                }
+                slabs.addAll(Arrays.asList(writer.getSlabs()));
+                pos += writerSize;
+            }
+            if (pos != numInodes) {
+                throw new IllegalStateException("Expected " + numInodes + " inodes but sub-sections contain " + pos);
+            }
+            LOG.debug("Loaded {} inodes from {} sub-sections into {} off-heap slabs [{}ms] of length {} bytes",
+                    numInodes, subSections.size(), slabs.size(), System.currentTimeMillis() - start, length);
+            return build(slabs.toArray(new ByteBuffer[0]), inodeIds, inodeOffsets, numInodes);
+        }
+
+        private FsImageLoader.INodesRepository build(ByteBuffer[] slabs, LongPages inodeIds, LongPages inodeOffsets,
+                                                    int size) throws InvalidProtocolBufferException {
+            long start = System.currentTimeMillis();
+            // Sorts in place, so that the index never gets copied to the heap
+            final IntComparator comparator =
+                    (a, b) -> Long.compare(inodeIds.get(a), inodeIds.get(b));
+            final Swapper swapper = (a, b) -> {
+                inodeIds.swap(a, b);
+                inodeOffsets.swap(a, b);
+            };
+            if (parallel) {
+                it.unimi.dsi.fastutil.Arrays.parallelQuickSort(0, size, comparator, swapper);
+            } else {
+                it.unimi.dsi.fastutil.Arrays.quickSort(0, size, comparator, swapper);
+            }
+            LOG.debug("Sorted {} inodes [{}ms]", size, System.currentTimeMillis() - start);
+            return new OffHeapINodesRepository(slabs, inodeIds, inodeOffsets, size);
+        }
+    }
+
+    /**
+     * Growable array of longs, stored in fixed size direct buffer pages.
+     * <p>
+     * Paging avoids the 2 GiB limit of a single direct buffer and copying when growing.
+     */
+    static final class LongPages {
+        private static final int PAGE_SHIFT = 20;
+        private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+        private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+        private LongBuffer[] pages = new LongBuffer[0];
+        private int size;
+
+        LongPages(int expectedSize) {
+            ensureCapacity(expectedSize);
+        }
+
+        void add(long value) {
+            ensureCapacity(size + 1);
+            set(size++, value);
+        }
+
+        long get(int index) {
+            return pages[index >>> PAGE_SHIFT].get(index & PAGE_MASK);
+        }
+
+        void set(int index, long value) {
+            pages[index >>> PAGE_SHIFT].put(index & PAGE_MASK, value);
+        }
+
+        void swap(int a, int b) {
+            final long tmp = get(a);
+            set(a, get(b));
+            set(b, tmp);
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void ensureCapacity(int capacity) {
+            final int numPages = (int) (((long) capacity + PAGE_MASK) >>> PAGE_SHIFT);
+            if (numPages > pages.length) {
+                final int oldLength = pages.length;
+                pages = Arrays.copyOf(pages, numPages);
+                for (int i = oldLength; i < numPages; i++) {
+                    pages[i] = ByteBuffer.allocateDirect(PAGE_SIZE * Long.BYTES)
+                            .order(ByteOrder.nativeOrder()).asLongBuffer();
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends length delimited inodes to direct buffer slabs, recording inode id and offset.
+     */
+    static class SlabWriter {
+        private final int slabSize;
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        private final LongPages inodeIds;
+        private final LongPages inodeOffsets;
+        // Reused for reading each inode, as streams can not read into direct buffers
+        private byte[] scratch = new byte[1024];
+        private ByteBuffer slab;
+
+        SlabWriter(int slabSize, int expectedInodes) {
+            this.slabSize = slabSize;
+            inodeIds = new LongPages(expectedInodes);
+            inodeOffsets = new LongPages(expectedInodes);
+        }
+
+        void append(InputStream in, int size) throws IOException {
+            final int delimitedSize = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+            if (null == slab || slab.remaining() < delimitedSize) {
+                nextSlab(delimitedSize);
+            }
+            if (scratch.length < size) {
+                scratch = new byte[Math.max(size, scratch.length * 2)];
+            }
+            IOUtils.readFully(in, scratch, 0, size);
+            inodeOffsets.add((long) (slabs.size() - 1) << 32 | slab.position());
+            inodeIds.add(FsImageLoader.PrimitiveArrayINodesRepository.extractNodeId(scratch, 0));
+            writeRawVarint32(slab, size);
+            slab.put(scratch, 0, size);
+        }
+
+        private void nextSlab(int minSize) {
+            trimSlab();
+            // A single inode larger than the slab size gets a slab on its own
+            slab = ByteBuffer.allocateDirect(Math.max(slabSize, minSize));
+            slabs.add(slab);
+        }
+
+        private void trimSlab() {
+            if (null != slab && slab.hasRemaining()) {
+                final ByteBuffer trimmed = ByteBuffer.allocateDirect(slab.position());
+                ((Buffer) slab).flip();
+                trimmed.put(slab);
+                slabs.set(slabs.size() - 1, trimmed);
+            }
+        }
+
+        ByteBuffer[] getSlabs() {
+            trimSlab();
+            slab = null;
+            return slabs.toArray(new ByteBuffer[0]);
+        }
+
+        private static void writeRawVarint32(ByteBuffer buf, int value) {
+            while ((value & ~0x7F) != 0) {
+                buf.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buf.put((byte) value);
+        }
+    }
+
+    @Override
+    public int getPosition(final long inodeId) {
+        return idIndex.getPosition(inodeId);
+    }
+
+    private long findOffset(final long inodeId) {
+        final int position = getPosition(inodeId);
+        if (position < 0) {
+            throw new IllegalArgumentException("Can not find inode by id " + inodeId);
+        }
+        return inodeOffsets.get(position);
+    }
+
+    @Override
+    public long getInodeId(int position) {
+        return inodeIds.get(position);
+    }
+
+    @Override
+    public INode getInodeAt(int position) throws IOException {
+        return parseInode(inodeOffsets.get(position));
+    }
+
+    @Override
+    public ByteBuffer getInodeBytesAt(int position) {
+        return view(inodeOffsets.get(position));
+    }
+
+    @Override
+    public void readInodeAt(int position, INodeView view) {
+        final long offset = inodeOffsets.get(position);
+        final ByteBuffer slab = slabs[(int) (offset >>> 32)];
+        final int inodeSize = LengthDelimited.readLength(slab, (int) offset);
+        final int pos = (int) offset + LengthDelimited.prefixSize(inodeSize);
+        // Copy with absolute reads, as the slab is shared
+        final byte[] bytes = view.prepare(inodeSize);
+        for (int i = 0; i < inodeSize; i++) {
+            bytes[i] = slab.get(pos + i);
+        }
+    }
+
+    private INode parseInode(long offset) throws InvalidProtocolBufferException {
+        return INODE_PARSER.parseFrom(view(offset));
+    }
+
+    private ByteBuffer view(long offset) {
+        final ByteBuffer slab = slabs[(int) (offset >>> 32)];
+        final int inodeSize = LengthDelimited.readLength(slab, (int) offset);
+        final int pos = (int) offset + LengthDelimited.prefixSize(inodeSize);
+        // Thread confined view, parsable without copying to the heap
+        final ByteBuffer view = slab.duplicate();
+        ((Buffer) view).limit(pos + inodeSize);
+        ((Buffer) view).position(pos);
+        return view;
+    }
+
+    @Override
+    public INode getInode(long inodeId) throws IOException {
+        if (INodeId.ROOT_INODE_ID == inodeId) {
+            return rootInode;
+        }
+        return parseInode(findOffset(inodeId));
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+}
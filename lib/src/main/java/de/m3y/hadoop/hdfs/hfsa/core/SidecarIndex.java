@@ -0,0 +1,270 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.hadoop.hdfs.server.namenode.SerialNumberManager.StringTable;
+import static org.apache.hadoop.hdfs.server.namenode.SerialNumberManager.newStringTable;
+
+/**
+ * Persists the loaded fsimage structure into a sidecar file, for fast reloading of the same fsimage.
+ * <p>
+ * Contains the string table, the sorted inode ids and offsets of a {@link LazyMappedINodesRepository}
+ * and the {@link DirectoryIndex}. Inodes themselves are still parsed lazily from the memory mapped fsimage.
+ * <p>
+ * The sidecar is keyed by fsimage length, transaction id and a checksum of the fsimage file summary,
+ * as computing a digest of the whole fsimage would require a full read.
+ */
+class SidecarIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(SidecarIndex.class);
+    private static final int MAGIC = 0x48464958; // HFIX
+    static final int VERSION = 2;
+    // Max number of bytes for bulk reading, to limit copying for reads crossing chunk borders
+    private static final int BULK_SIZE = 8 * 1024 * 1024;
+
+    private SidecarIndex() {
+        // No instantiation
+    }
+
+    /**
+     * Identifies an fsimage.
+     */
+    static final class Key {
+        final long fileLength;
+        final long txId;
+        final long summaryChecksum;
+
+        Key(long fileLength, long txId, long summaryChecksum) {
+            this.fileLength = fileLength;
+            this.txId = txId;
+            this.summaryChecksum = summaryChecksum;
+        }
+
+        static Key of(long fileLength, long txId, FsImageProto.FileSummary summary) {
+            CRC32 crc = new CRC32();
+            crc.update(summary.toByteArray());
+            return new Key(fileLength, txId, crc.getValue());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return fileLength == key.fileLength && txId == key.txId && summaryChecksum == key.summaryChecksum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new long[]{fileLength, txId, summaryChecksum});
+        }
+
+        @Override
+        public String toString() {
+            return "Key{fileLength=" + fileLength + ", txId=" + txId + ", summaryChecksum=" + summaryChecksum + '}';
+        }
+    }
+
+    /**
+     * Writes the sidecar, replacing any existing sidecar.
+     *
+     * @param sidecar        the sidecar file.
+     * @param key            the fsimage key.
+     * @param stringTable    the string table.
+     * @param inodes         the inodes.
+     * @param directoryIndex the directory adjacency.
+     * @throws IOException on error.
+     */
+    static void write(File sidecar, Key key, StringTable stringTable, LazyMappedINodesRepository inodes,
+                      DirectoryIndex directoryIndex) throws IOException {
+        long start = System.currentTimeMillis();
+        File tmp = new File(sidecar.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1024 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(key.fileLength);
+            out.writeLong(key.txId);
+            out.writeLong(key.summaryChecksum);
+
+            out.writeInt(stringTable.getMaskBits());
+            out.writeInt(stringTable.size());
+            for (Map.Entry<Integer, String> entry : stringTable) {
+                out.writeInt(entry.getKey());
+                final byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            final MappedSection[] sections = inodes.getSections();
+            out.writeInt(sections.length);
+            for (MappedSection section : sections) {
+                out.writeLong(section.offset());
+                out.writeLong(section.length());
+            }
+            out.writeInt(inodes.getSize());
+            writeLongs(out, inodes.getInodeIds());
+            writeLongs(out, inodes.getInodeOffsets());
+
+            // Offsets length is implied by number of inodes
+            writeInts(out, directoryIndex.getOffsets());
+            out.writeInt(directoryIndex.getChildPositions().length);
+            writeInts(out, directoryIndex.getChildPositions());
+        }
+        try {
+            Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOG.debug("Wrote sidecar index {} of {} bytes [{}ms]", sidecar, sidecar.length(),
+                System.currentTimeMillis() - start);
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads the sidecar, if present and matching the fsimage.
+     *
+     * @param sidecar the sidecar file.
+     * @param key     the expected fsimage key.
+     * @param fc      the fsimage file channel, for mapping the inode sections.
+     * @return the loaded fsimage, or null if the sidecar does not exist or is stale.
+     * @throws IOException on error.
+     */
+    static FsImageData read(File sidecar, Key key, FileChannel fc) throws IOException {
+        if (!sidecar.exists()) {
+            LOG.debug("No sidecar index {}", sidecar);
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (RandomAccessFile file = new RandomAccessFile(sidecar, "r")) {
+            // Mapping stays valid after closing the file
+            Reader reader = new Reader(new MappedSection(file.getChannel(), 0, file.length()));
+            if (reader.readInt() != MAGIC) {
+                LOG.warn("Ignoring sidecar index {} with unknown format", sidecar);
+                return null;
+            }
+            final int version = reader.readInt();
+            if (version != VERSION) {
+                LOG.info("Ignoring sidecar index {} of version {}, expected version {}", sidecar, version, VERSION);
+                return null;
+            }
+            final Key sidecarKey = new Key(reader.readLong(), reader.readLong(), reader.readLong());
+            if (!key.equals(sidecarKey)) {
+                LOG.info("Ignoring stale sidecar index {} with {}, expected {}", sidecar, sidecarKey, key);
+                return null;
+            }
+
+            final int maskBits = reader.readInt();
+            final int numStrings = reader.readInt();
+            StringTable stringTable = newStringTable(numStrings, maskBits);
+            for (int i = 0; i < numStrings; i++) {
+                final int id = reader.readInt();
+                stringTable.put(id, reader.readString());
+            }
+
+            final MappedSection[] sections = new MappedSection[reader.readInt()];
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = new MappedSection(fc, reader.readLong(), reader.readLong());
+            }
+            final int numInodes = reader.readInt();
+            final long[] inodeIds = reader.readLongs(numInodes);
+            final long[] inodeOffsets = reader.readLongs(numInodes);
+            LazyMappedINodesRepository inodes = new LazyMappedINodesRepository(sections, inodeIds, inodeOffsets);
+
+            final int[] offsets = reader.readInts(numInodes + 1);
+            final int[] childPositions = reader.readInts(reader.readInt());
+            final DirectoryIndex directoryIndex = new DirectoryIndex(inodes, offsets, childPositions);
+
+            LOG.debug("Loaded sidecar index {} with {} inodes and {} directory children [{}ms]", sidecar, numInodes,
+                    childPositions.length, System.currentTimeMillis() - start);
+            return new FsImageData(stringTable, inodes, directoryIndex);
+        }
+    }
+
+    /**
+     * Reads big endian values from a mapped sidecar.
+     */
+    private static class Reader {
+        private final MappedSection mapped;
+        private long pos;
+
+        Reader(MappedSection mapped) {
+            this.mapped = mapped;
+        }
+
+        int readInt() {
+            final int value = mapped.view(pos, Integer.BYTES).getInt();
+            pos += Integer.BYTES;
+            return value;
+        }
+
+        long readLong() {
+            final long value = mapped.view(pos, Long.BYTES).getLong();
+            pos += Long.BYTES;
+            return value;
+        }
+
+        String readString() {
+            final byte[] bytes = new byte[readInt()];
+            mapped.get(pos, bytes, 0, bytes.length);
+            pos += bytes.length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long[] readLongs(int length) {
+            final long[] values = new long[length];
+            int off = 0;
+            while (off < length) {
+                final int n = Math.min(length - off, BULK_SIZE / Long.BYTES);
+                mapped.view(pos, n * Long.BYTES).asLongBuffer().get(values, off, n);
+                pos += (long) n * Long.BYTES;
+                off += n;
+            }
+            return values;
+        }
+
+        int[] readInts(int length) {
+            final int[] values = new int[length];
+            int off = 0;
+            while (off < length) {
+                final int n = Math.min(length - off, BULK_SIZE / Integer.BYTES);
+                mapped.view(pos, n * Integer.BYTES).asIntBuffer().get(values, off, n);
+                pos += (long) n * Integer.BYTES;
+                off += n;
+            }
+            return values;
+        }
+    }
+}
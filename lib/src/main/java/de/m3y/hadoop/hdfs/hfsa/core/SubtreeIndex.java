@@ -0,0 +1,257 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subtree ranges and aggregates, for summarizing any directory without traversing it.
+ * <p>
+ * Each inode gets a rank in depth-first pre-order of the directory tree, so that the subtree of an inode
+ * is the contiguous rank range from {@link #getSubtreeStart(int)} (inclusive) to {@link #getSubtreeEnd(int)}
+ * (exclusive). Prefix sums over ranks of file, directory and symlink count, file size, consumed space and block count
+ * give the aggregate of any subtree as the difference of two array reads.
+ * <p>
+ * Note: Aggregates include the inode itself, eg a directory subtree counts the directory.
+ */
+public class SubtreeIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(SubtreeIndex.class);
+
+    private final FsImageLoader.INodesRepository inodes;
+    // pre-order rank by position
+    private final int[] ranks;
+    // position by pre-order rank
+    private final int[] positions;
+    // exclusive subtree end rank, by rank
+    private final int[] subtreeEnds;
+    // prefix sums by rank, of length size + 1
+    private final int[] fileCounts;
+    private final int[] directoryCounts;
+    private final int[] symlinkCounts;
+    private final long[] fileSizes;
+    private final long[] spaceConsumed;
+    private final long[] blockCounts;
+
+    private SubtreeIndex(FsImageLoader.INodesRepository inodes, int[] ranks, int[] positions, int[] subtreeEnds,
+                         int[] fileCounts, int[] directoryCounts, int[] symlinkCounts,
+                         long[] fileSizes, long[] spaceConsumed, long[] blockCounts) {
+        this.inodes = inodes;
+        this.ranks = ranks;
+        this.positions = positions;
+        this.subtreeEnds = subtreeEnds;
+        this.fileCounts = fileCounts;
+        this.directoryCounts = directoryCounts;
+        this.symlinkCounts = symlinkCounts;
+        this.fileSizes = fileSizes;
+        this.spaceConsumed = spaceConsumed;
+        this.blockCounts = blockCounts;
+    }
+
+    /**
+     * Builds the index.
+     *
+     * @param inodes         the inodes.
+     * @param directoryIndex the directory adjacency.
+     * @param parallel       true, if extracting inode fields and summing should use multiple threads.
+     * @return the index.
+     */
+    static SubtreeIndex build(FsImageLoader.INodesRepository inodes, DirectoryIndex directoryIndex,
+                              boolean parallel) {
+        long start = System.currentTimeMillis();
+        final int size = inodes.getSize();
+        final int[] positions = directoryIndex.preOrder();
+        final int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            ranks[positions[rank]] = rank;
+        }
+
+        // Children follow their parent in pre-order, so propagate ends from the last rank backwards
+        final int[] subtreeEnds = new int[size];
+        for (int rank = size - 1; rank >= 0; rank--) {
+            subtreeEnds[rank] = Math.max(subtreeEnds[rank], rank + 1);
+            final int parentPosition = directoryIndex.getParentPosition(positions[rank]);
+            if (DirectoryIndex.NO_PARENT != parentPosition) {
+                final int parentRank = ranks[parentPosition];
+                subtreeEnds[parentRank] = Math.max(subtreeEnds[parentRank], subtreeEnds[rank]);
+            }
+        }
+
+        // Values at rank + 1, turned into prefix sums afterwards
+        final int[] fileCounts = new int[size + 1];
+        final int[] directoryCounts = new int[size + 1];
+        final int[] symlinkCounts = new int[size + 1];
+        final long[] fileSizes = new long[size + 1];
+        final long[] spaceConsumed = new long[size + 1];
+        final long[] blockCounts = new long[size + 1];
+        IntStream range = IntStream.range(0, size);
+        if (parallel) {
+            range = range.parallel();
+        }
+        range.forEach(rank -> {
+            final ByteBuffer inode = inodes.getInodeBytesAt(positions[rank]);
+            final INode.Type type = INodeWireFormat.getType(inode);
+            if (INode.Type.FILE == type) {
+                fileCounts[rank + 1] = 1;
+                final long fileSize = INodeWireFormat.getFileSize(inode);
+                fileSizes[rank + 1] = fileSize;
+                spaceConsumed[rank + 1] = INodeWireFormat.getSpaceConsumed(inode);
+                blockCounts[rank + 1] = INodeWireFormat.getBlockCount(inode);
+            } else if (INode.Type.DIRECTORY == type) {
+                directoryCounts[rank + 1] = 1;
+            } else if (INode.Type.SYMLINK == type) {
+                symlinkCounts[rank + 1] = 1;
+            }
+        });
+        if (parallel) {
+            Arrays.parallelPrefix(fileCounts, Integer::sum);
+            Arrays.parallelPrefix(directoryCounts, Integer::sum);
+            Arrays.parallelPrefix(symlinkCounts, Integer::sum);
+            Arrays.parallelPrefix(fileSizes, Long::sum);
+            Arrays.parallelPrefix(spaceConsumed, Long::sum);
+            Arrays.parallelPrefix(blockCounts, Long::sum);
+        } else {
+            for (int i = 1; i <= size; i++) {
+                fileCounts[i] += fileCounts[i - 1];
+                directoryCounts[i] += directoryCounts[i - 1];
+                symlinkCounts[i] += symlinkCounts[i - 1];
+                fileSizes[i] += fileSizes[i - 1];
+                spaceConsumed[i] += spaceConsumed[i - 1];
+                blockCounts[i] += blockCounts[i - 1];
+            }
+        }
+        LOG.debug("Built subtree index for {} inodes [{}ms]", size, System.currentTimeMillis() - start);
+        return new SubtreeIndex(inodes, ranks, positions, subtreeEnds,
+                fileCounts, directoryCounts, symlinkCounts, fileSizes, spaceConsumed, blockCounts);
+    }
+
+    /**
+     * Gets the number of inodes.
+     *
+     * @return the number of inodes, and the exclusive upper bound of positions and ranks.
+     */
+    public int getSize() {
+        return ranks.length;
+    }
+
+    /**
+     * Gets the position of an inode.
+     *
+     * @param inodeId the inode id.
+     * @return the position, or a negative value if no such inode exists.
+     */
+    public int getPosition(long inodeId) {
+        return inodes.getPosition(inodeId);
+    }
+
+    /**
+     * Gets the pre-order rank.
+     *
+     * @param position the inode position.
+     * @return the rank.
+     */
+    public int getRank(int position) {
+        return ranks[position];
+    }
+
+    /**
+     * Gets the inode position for a pre-order rank, eg for iterating a subtree range.
+     *
+     * @param rank the rank.
+     * @return the inode position.
+     */
+    public int getPositionAtRank(int rank) {
+        return positions[rank];
+    }
+
+    /**
+     * Gets the start of the subtree range.
+     *
+     * @param position the inode position.
+     * @return the inclusive start rank, which is the rank of the inode itself.
+     */
+    public int getSubtreeStart(int position) {
+        return ranks[position];
+    }
+
+    /**
+     * Gets the end of the subtree range.
+     *
+     * @param position the inode position.
+     * @return the exclusive end rank.
+     */
+    public int getSubtreeEnd(int position) {
+        return subtreeEnds[ranks[position]];
+    }
+
+    /**
+     * Gets the number of files in the subtree.
+     *
+     * @param position the inode position.
+     * @return the number of files, including the inode itself if a file.
+     */
+    public int getSubtreeFileCount(int position) {
+        final int rank = ranks[position];
+        return fileCounts[subtreeEnds[rank]] - fileCounts[rank];
+    }
+
+    /**
+     * Gets the number of directories in the subtree.
+     *
+     * @param position the inode position.
+     * @return the number of directories, including the inode itself if a directory.
+     */
+    public int getSubtreeDirectoryCount(int position) {
+        final int rank = ranks[position];
+        return directoryCounts[subtreeEnds[rank]] - directoryCounts[rank];
+    }
+
+    /**
+     * Gets the number of symlinks in the subtree.
+     *
+     * @param position the inode position.
+     * @return the number of symlinks, including the inode itself if a symlink.
+     */
+    public int getSubtreeSymlinkCount(int position) {
+        final int rank = ranks[position];
+        return symlinkCounts[subtreeEnds[rank]] - symlinkCounts[rank];
+    }
+
+    /**
+     * Gets the total file size in the subtree.
+     *
+     * @param position the inode position.
+     * @return the sum of file sizes, excluding replication.
+     */
+    public long getSubtreeFileSize(int position) {
+        final int rank = ranks[position];
+        return fileSizes[subtreeEnds[rank]] - fileSizes[rank];
+    }
+
+    /**
+     * Gets the consumed space in the subtree.
+     *
+     * @param position the inode position.
+     * @return the sum of file sizes multiplied by their replication, with data and parity for erasure coded files.
+     * @see INodeWireFormat#getSpaceConsumed(java.nio.ByteBuffer)
+     */
+    public long getSubtreeSpaceConsumed(int position) {
+        final int rank = ranks[position];
+        return spaceConsumed[subtreeEnds[rank]] - spaceConsumed[rank];
+    }
+
+    /**
+     * Gets the number of blocks in the subtree.
+     *
+     * @param position the inode position.
+     * @return the sum of file block counts.
+     */
+    public long getSubtreeBlockCount(int position) {
+        final int rank = ranks[position];
+        return blockCounts[subtreeEnds[rank]] - blockCounts[rank];
+    }
+}
@@ -1,11 +1,16 @@
 package de.m3y.hadoop.hdfs.hfsa.util;
 
+import java.nio.ByteBuffer;
+
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 
 /**
  * Helper for dealing with FSImage and INodes.
@@ -97,4 +102,70 @@ public class FsUtil {
         }
         return size;
     }
+
+    /**
+     * Computes the consumed space of a file, like HDFS content summaries.
+     * <p>
+     * Replicated files consume the file size times replication.
+     * Erasure coded files consume the data and parity cells of each block group, as defined by the system policy.
+     * Files with an unknown (user defined) policy count with their file size only.
+     *
+     * @param file the file.
+     * @return the consumed space in bytes.
+     */
+    public static long getSpaceConsumed(FsImageProto.INodeSection.INodeFile file) {
+        if (!file.hasErasureCodingPolicyID()) {
+            return getFileSize(file) * file.getReplication();
+        }
+        final ErasureCodingPolicy policy = SystemErasureCodingPolicies.getByID((byte) file.getErasureCodingPolicyID());
+        if (null == policy) {
+            return getFileSize(file) * INodeFile.DEFAULT_REPL_FOR_STRIPED_BLOCKS;
+        }
+        long space = 0;
+        for (HdfsProtos.BlockProto p : file.getBlocksList()) {
+            space += StripedBlockUtil.spaceConsumedByStripedBlock(p.getNumBytes(),
+                    policy.getNumDataUnits(), policy.getNumParityUnits(), policy.getCellSize());
+        }
+        return space;
+    }
+
+    /**
+     * Computes the file size for all blocks, directly from the serialized inode.
+     *
+     * @param inode the serialized inode, see {@link de.m3y.hadoop.hdfs.hfsa.core.FsImageData#getInodeBytes(long)}.
+     * @return the size in bytes, or 0 if not a file.
+     */
+    public static long getFileSize(ByteBuffer inode) {
+        return INodeWireFormat.getFileSize(inode);
+    }
+
+    /**
+     * Extracts the user serial number from a packed permission (bits 40 to 63).
+     *
+     * @param permission the permission, eg {@link FsImageProto.INodeSection.INodeFile#getPermission()}.
+     * @return the user serial number, see {@link de.m3y.hadoop.hdfs.hfsa.core.FsImageData#getUserName(int)}.
+     */
+    public static int getUserId(long permission) {
+        return (int) (permission >>> 40) & 0xFFFFFF;
+    }
+
+    /**
+     * Extracts the group serial number from a packed permission (bits 16 to 39).
+     *
+     * @param permission the permission, eg {@link FsImageProto.INodeSection.INodeFile#getPermission()}.
+     * @return the group serial number, see {@link de.m3y.hadoop.hdfs.hfsa.core.FsImageData#getGroupName(int)}.
+     */
+    public static int getGroupId(long permission) {
+        return (int) (permission >>> 16) & 0xFFFFFF;
+    }
+
+    /**
+     * Extracts the mode bits from a packed permission (bits 0 to 15), without allocating a FsPermission.
+     *
+     * @param permission the permission, eg {@link FsImageProto.INodeSection.INodeFile#getPermission()}.
+     * @return the mode, eg 0755 (octal).
+     */
+    public static short getMode(long permission) {
+        return (short) (permission & 0xFFFF);
+    }
 }
@@ -0,0 +1,399 @@
+package de.m3y.hadoop.hdfs.hfsa.util;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeSymlink;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+
+/**
+ * Extracts single inode fields directly from the serialized protobuf inode, without parsing the inode.
+ * <p>
+ * Each extractor scans the inode bytes from buffer position to buffer limit, skipping unrelated fields.
+ * Reading a few fields this way avoids creating INode, INodeFile and BlockProto instances,
+ * and is several times faster than a full parse.
+ * Extractors never modify the buffer position or limit, so a buffer may be shared by concurrent readers.
+ * <p>
+ * Absent optional fields return the protobuf default value, just like the generated getters.
+ */
+public class INodeWireFormat {
+    /**
+     * Erasure coding policy id of files with replicated (contiguous) blocks.
+     */
+    public static final int NO_ERASURE_CODING_POLICY = -1;
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_FIXED64 = 1;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRETYPE_FIXED32 = 5;
+    private static final int TAG_TYPE_BITS = 3;
+
+    private INodeWireFormat() {
+        // No instantiation.
+    }
+
+    /**
+     * Gets the inode type.
+     *
+     * @param inode the serialized inode.
+     * @return the type.
+     */
+    public static INode.Type getType(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (!reader.seek(INode.TYPE_FIELD_NUMBER)) {
+            throw new IllegalArgumentException("No type in serialized inode");
+        }
+        final INode.Type type = INode.Type.forNumber(reader.readVarint32());
+        if (null == type) {
+            throw new IllegalArgumentException("Unknown type in serialized inode");
+        }
+        return type;
+    }
+
+    /**
+     * Gets the inode id.
+     *
+     * @param inode the serialized inode.
+     * @return the inode id.
+     */
+    public static long getId(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (!reader.seek(INode.ID_FIELD_NUMBER)) {
+            throw new IllegalArgumentException("No id in serialized inode");
+        }
+        return reader.readVarint64();
+    }
+
+    /**
+     * Gets the name bytes.
+     *
+     * @param inode the serialized inode.
+     * @return a view of the UTF-8 encoded name, sharing the inode bytes, or an empty buffer if no name (root).
+     */
+    public static ByteBuffer getName(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (!reader.seek(INode.NAME_FIELD_NUMBER)) {
+            return ByteBuffer.allocate(0);
+        }
+        final int length = reader.readVarint32();
+        final ByteBuffer name = inode.duplicate();
+        ((Buffer) name).limit(reader.pos + length);
+        ((Buffer) name).position(reader.pos);
+        return name.slice();
+    }
+
+    /**
+     * Checks if the inode has given name, without decoding the name.
+     *
+     * @param inode the serialized inode.
+     * @param name  the UTF-8 encoded name.
+     * @return true, if same name.
+     */
+    public static boolean hasName(ByteBuffer inode, byte[] name) {
+        final Reader reader = new Reader(inode);
+        if (!reader.seek(INode.NAME_FIELD_NUMBER)) {
+            return 0 == name.length;
+        }
+        final int length = reader.readVarint32();
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (inode.get(reader.pos + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the permission of a file, directory or symlink.
+     *
+     * @param inode the serialized inode.
+     * @return the permission, encoding user, group and mode.
+     */
+    public static long getPermission(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        switch (reader.enterTypeMessage()) {
+            case FILE:
+                return reader.seek(INodeFile.PERMISSION_FIELD_NUMBER) ? reader.readFixed64() : 0L;
+            case DIRECTORY:
+                return reader.seek(INodeDirectory.PERMISSION_FIELD_NUMBER) ? reader.readFixed64() : 0L;
+            case SYMLINK:
+                return reader.seek(INodeSymlink.PERMISSION_FIELD_NUMBER) ? reader.readFixed64() : 0L;
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Gets the modification time of a file, directory or symlink.
+     *
+     * @param inode the serialized inode.
+     * @return the modification time.
+     */
+    public static long getModificationTime(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        switch (reader.enterTypeMessage()) {
+            case FILE:
+                return reader.seek(INodeFile.MODIFICATIONTIME_FIELD_NUMBER) ? reader.readVarint64() : 0L;
+            case DIRECTORY:
+                return reader.seek(INodeDirectory.MODIFICATIONTIME_FIELD_NUMBER) ? reader.readVarint64() : 0L;
+            case SYMLINK:
+                return reader.seek(INodeSymlink.MODIFICATIONTIME_FIELD_NUMBER) ? reader.readVarint64() : 0L;
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Gets the access time of a file or symlink.
+     *
+     * @param inode the serialized inode.
+     * @return the access time, or 0 for a directory.
+     */
+    public static long getAccessTime(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        switch (reader.enterTypeMessage()) {
+            case FILE:
+                return reader.seek(INodeFile.ACCESSTIME_FIELD_NUMBER) ? reader.readVarint64() : 0L;
+            case SYMLINK:
+                return reader.seek(INodeSymlink.ACCESSTIME_FIELD_NUMBER) ? reader.readVarint64() : 0L;
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Gets the replication of a file, as stored in the fsimage.
+     *
+     * @param inode the serialized inode.
+     * @return the replication, or 0 if not a file.
+     * @see FsUtil#getFileReplication(INodeFile)
+     */
+    public static int getReplication(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (INode.Type.FILE != reader.enterTypeMessage()) {
+            return 0;
+        }
+        return reader.seek(INodeFile.REPLICATION_FIELD_NUMBER) ? reader.readVarint32() : 0;
+    }
+
+    /**
+     * Gets the erasure coding policy id of a file.
+     *
+     * @param inode the serialized inode.
+     * @return the policy id, or {@link #NO_ERASURE_CODING_POLICY} if replicated or not a file.
+     */
+    public static int getErasureCodingPolicyId(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (INode.Type.FILE != reader.enterTypeMessage()) {
+            return NO_ERASURE_CODING_POLICY;
+        }
+        return reader.seek(INodeFile.ERASURECODINGPOLICYID_FIELD_NUMBER) ?
+                reader.readVarint32() : NO_ERASURE_CODING_POLICY;
+    }
+
+    /**
+     * Gets the replication of a file, honouring erasure coding like {@link FsUtil#getFileReplication(INodeFile)}.
+     *
+     * @param inode the serialized inode.
+     * @return the replication, or 0 if not a file.
+     */
+    public static int getFileReplication(ByteBuffer inode) {
+        if (NO_ERASURE_CODING_POLICY != getErasureCodingPolicyId(inode)) {
+            return org.apache.hadoop.hdfs.server.namenode.INodeFile.DEFAULT_REPL_FOR_STRIPED_BLOCKS;
+        }
+        return getReplication(inode);
+    }
+
+    /**
+     * Computes the consumed space of a file, like HDFS content summaries.
+     * <p>
+     * Replicated files consume the file size times replication.
+     * Erasure coded files consume the data and parity cells of each block group, as defined by the system policy.
+     * Files with an unknown (user defined) policy count with their file size only.
+     *
+     * @param inode the serialized inode.
+     * @return the consumed space in bytes, or 0 if not a file.
+     * @see FsUtil#getSpaceConsumed(INodeFile)
+     */
+    public static long getSpaceConsumed(ByteBuffer inode) {
+        final int policyId = getErasureCodingPolicyId(inode);
+        if (NO_ERASURE_CODING_POLICY == policyId) {
+            return getFileSize(inode) * getReplication(inode);
+        }
+        final ErasureCodingPolicy policy = SystemErasureCodingPolicies.getByID((byte) policyId);
+        if (null == policy) {
+            return getFileSize(inode) * org.apache.hadoop.hdfs.server.namenode.INodeFile.DEFAULT_REPL_FOR_STRIPED_BLOCKS;
+        }
+        final Reader reader = new Reader(inode);
+        reader.enterTypeMessage();
+        long space = 0;
+        while (reader.seek(INodeFile.BLOCKS_FIELD_NUMBER)) {
+            final int blockEnd = reader.readVarint32() + reader.pos;
+            final int fileEnd = reader.end;
+            reader.end = blockEnd;
+            final long numBytes = reader.seek(HdfsProtos.BlockProto.NUMBYTES_FIELD_NUMBER) ? reader.readVarint64() : 0L;
+            space += StripedBlockUtil.spaceConsumedByStripedBlock(numBytes,
+                    policy.getNumDataUnits(), policy.getNumParityUnits(), policy.getCellSize());
+            reader.pos = blockEnd;
+            reader.end = fileEnd;
+        }
+        return space;
+    }
+
+    /**
+     * Gets the number of blocks of a file.
+     *
+     * @param inode the serialized inode.
+     * @return the number of blocks, or 0 if not a file.
+     */
+    public static int getBlockCount(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (INode.Type.FILE != reader.enterTypeMessage()) {
+            return 0;
+        }
+        int count = 0;
+        while (reader.seek(INodeFile.BLOCKS_FIELD_NUMBER)) {
+            reader.skip(WIRETYPE_LENGTH_DELIMITED);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Computes the file size as sum of all block sizes.
+     *
+     * @param inode the serialized inode.
+     * @return the size in bytes, or 0 if not a file.
+     * @see FsUtil#getFileSize(INodeFile)
+     */
+    public static long getFileSize(ByteBuffer inode) {
+        final Reader reader = new Reader(inode);
+        if (INode.Type.FILE != reader.enterTypeMessage()) {
+            return 0L;
+        }
+        long size = 0;
+        while (reader.seek(INodeFile.BLOCKS_FIELD_NUMBER)) {
+            final int blockEnd = reader.readVarint32() + reader.pos;
+            final int fileEnd = reader.end;
+            reader.end = blockEnd;
+            if (reader.seek(HdfsProtos.BlockProto.NUMBYTES_FIELD_NUMBER)) {
+                size += reader.readVarint64();
+            }
+            reader.pos = blockEnd;
+            reader.end = fileEnd;
+        }
+        return size;
+    }
+
+    /**
+     * Sequential reader of protobuf fields, bounded by the current message end.
+     */
+    private static final class Reader {
+        private final ByteBuffer buf;
+        private int pos;
+        private int end;
+
+        Reader(ByteBuffer buf) {
+            this.buf = buf;
+            pos = buf.position();
+            end = buf.limit();
+        }
+
+        /**
+         * Advances to the value of the next field with given number, skipping other fields.
+         *
+         * @return false, if no such field before message end.
+         */
+        boolean seek(int fieldNumber) {
+            while (pos < end) {
+                final int tag = readVarint32();
+                if (tag >>> TAG_TYPE_BITS == fieldNumber) {
+                    return true;
+                }
+                skip(tag & ((1 << TAG_TYPE_BITS) - 1));
+            }
+            return false;
+        }
+
+        /**
+         * Reads the inode type and narrows the reader to the type specific message (file, directory or symlink).
+         *
+         * @return the inode type.
+         */
+        INode.Type enterTypeMessage() {
+            if (!seek(INode.TYPE_FIELD_NUMBER)) {
+                throw new IllegalArgumentException("No type in serialized inode");
+            }
+            final INode.Type type = INode.Type.forNumber(readVarint32());
+            final int fieldNumber;
+            if (INode.Type.FILE == type) {
+                fieldNumber = INode.FILE_FIELD_NUMBER;
+            } else if (INode.Type.DIRECTORY == type) {
+                fieldNumber = INode.DIRECTORY_FIELD_NUMBER;
+            } else if (INode.Type.SYMLINK == type) {
+                fieldNumber = INode.SYMLINK_FIELD_NUMBER;
+            } else {
+                throw new IllegalArgumentException("Unknown type in serialized inode");
+            }
+            // Absent message behaves like an empty message, returning defaults
+            end = seek(fieldNumber) ? readVarint32() + pos : pos;
+            return type;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case WIRETYPE_VARINT:
+                    readVarint64();
+                    break;
+                case WIRETYPE_FIXED64:
+                    pos += Long.BYTES;
+                    break;
+                case WIRETYPE_LENGTH_DELIMITED:
+                    final int length = readVarint32();
+                    pos += length;
+                    break;
+                case WIRETYPE_FIXED32:
+                    pos += Integer.BYTES;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported wire type " + wireType + " at pos " + pos);
+            }
+        }
+
+        int readVarint32() {
+            return (int) readVarint64();
+        }
+
+        // Extracted from CodedInputStream.readRawVarint64()
+        long readVarint64() {
+            int shift = 0;
+            long result = 0;
+            while (shift < 64) {
+                final byte b = buf.get(pos++);
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+            throw new IllegalArgumentException("Malformed Varint at pos " + pos);
+        }
+
+        // Little endian, independent of buffer byte order
+        long readFixed64() {
+            long result = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                result |= (buf.get(pos++) & 0xFFL) << (i * 8);
+            }
+            return result;
+        }
+    }
+}
@@ -115,6 +115,20 @@ public class SizeBucket {
         fileSizeBuckets[bucket]++;
     }
 
+    /**
+     * Adds the bucket counters of another size bucket with the same bucket model.
+     *
+     * @param other the other size bucket, eg computed by another thread.
+     */
+    public void add(SizeBucket other) {
+        if (other.fileSizeBuckets.length > fileSizeBuckets.length) {
+            fileSizeBuckets = Arrays.copyOf(fileSizeBuckets, other.fileSizeBuckets.length);
+        }
+        for (int i = 0; i < other.fileSizeBuckets.length; i++) {
+            fileSizeBuckets[i] += other.fileSizeBuckets[i];
+        }
+    }
+
 
     /**
      * Computes the bucket upper borders, for the max number filled of buckets.
@@ -0,0 +1,87 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class ArenaINodesRepositoryTest {
+
+    static FsImageLoader.INodesRepository buildRepository(String fsImage, FsImageLoader.INodesRepositoryBuilder builder)
+            throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fsImage, "r")) {
+            final FsImageProto.FileSummary summary = FSImageUtil.loadSummary(file);
+            for (FsImageProto.FileSummary.Section section : summary.getSectionsList()) {
+                if (SectionName.INODE.name().equals(section.getName())) {
+                    InputStream in = new MappedSection(file.getChannel(), section.getOffset(), section.getLength())
+                            .newInputStream();
+                    FsImageProto.INodeSection s = FsImageProto.INodeSection.parseDelimitedFrom(in);
+                    return builder.build(s, in, section.getLength());
+                }
+            }
+        }
+        throw new IllegalStateException("No INODE section in " + fsImage);
+    }
+
+    /**
+     * Asserts both repositories hold the same inodes, and reject the same missing ids.
+     */
+    static void assertSameInodes(FsImageLoader.INodesRepository expected, FsImageLoader.INodesRepository actual)
+            throws IOException {
+        assertThat(actual.getSize()).isEqualTo(expected.getSize());
+        int found = 0;
+        for (long id = INodeId.ROOT_INODE_ID; found < expected.getSize(); id++) {
+            FsImageProto.INodeSection.INode inode;
+            try {
+                inode = expected.getInode(id);
+            } catch (IllegalArgumentException e) {
+                final long missingId = id;
+                assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> actual.getInode(missingId));
+                continue;
+            }
+            assertThat(actual.getInode(id)).isEqualTo(inode);
+            found++;
+        }
+    }
+
+    @Test
+    public void testSmallSlabs() throws IOException {
+        final String fsImage = "src/test/resources/fsi_small_h3_2.img";
+        final FsImageLoader.INodesRepository expected =
+                buildRepository(fsImage, new FsImageLoader.PrimitiveArrayINodesRepository.Builder());
+        // Tiny slabs, so that inodes are spread over many slabs and some inodes exceed the slab size
+        final FsImageLoader.INodesRepository arena = buildRepository(fsImage, new ArenaINodesRepository.Builder(false, 64));
+
+        assertSameInodes(expected, arena);
+    }
+
+    @Test
+    public void testCopyOf() throws IOException {
+        final FsImageLoader.INodesRepository source = buildRepository("src/test/resources/fsi_small_h3_2.img",
+                new FsImageLoader.PrimitiveArrayINodesRepository.Builder());
+        // Reverse order
+        final int[] order = new int[source.getSize()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = order.length - 1 - i;
+        }
+        final ArenaINodesRepository copy = ArenaINodesRepository.copyOf(source, order);
+
+        assertThat(copy.getSize()).isEqualTo(source.getSize());
+        for (int position = 0; position < order.length; position++) {
+            final long id = source.getInodeId(order[position]);
+            assertThat(copy.getInodeId(position)).isEqualTo(id);
+            assertThat(copy.getPosition(id)).isEqualTo(position);
+            assertThat(copy.getInodeAt(position)).isEqualTo(source.getInodeAt(order[position]));
+            assertThat(copy.getInode(id)).isEqualTo(source.getInode(id));
+        }
+        assertThat(copy.getPosition(Long.MAX_VALUE)).isNegative();
+    }
+}
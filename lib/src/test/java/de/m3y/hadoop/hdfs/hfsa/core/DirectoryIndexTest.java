@@ -0,0 +1,182 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectoryIndexTest {
+
+    /**
+     * Minimal repository of given sorted ids, without inode content.
+     */
+    static class IdsOnlyRepository implements FsImageLoader.INodesRepository {
+        private final long[] ids;
+
+        IdsOnlyRepository(long... ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public INode getInode(long inodeId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getPosition(long inodeId) {
+            final int idx = Arrays.binarySearch(ids, inodeId);
+            return idx < 0 ? -1 : idx;
+        }
+
+        @Override
+        public long getInodeId(int position) {
+            return ids[position];
+        }
+
+        @Override
+        public INode getInodeAt(int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ByteBuffer getInodeBytesAt(int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getSize() {
+            return ids.length;
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        final IdsOnlyRepository inodes = new IdsOnlyRepository(10, 20, 30, 40, 50, 60);
+        final DirectoryIndex.Entries entries = new DirectoryIndex.Entries();
+        entries.addDirectory(10, 3);
+        entries.addChild(40);
+        entries.addChild(20);
+        entries.addChild(99); // Unknown child, dropped
+        entries.addDirectory(20, 1);
+        entries.addChild(30);
+        entries.addDirectory(98, 1); // Unknown parent, dropped
+        entries.addChild(50);
+        entries.addDirectory(10, 1); // Parent split across entries
+        entries.addChild(60);
+
+        final DirectoryIndex index = DirectoryIndex.build(inodes, entries, true);
+        assertThat(index.getChildIds(10)).containsExactly(40, 20, 60);
+        assertThat(index.getChildIds(20)).containsExactly(30);
+        assertThat(index.getChildIds(30)).isEmpty();
+        assertThat(index.getChildIds(98)).isEmpty();
+        assertThat(index.getChildCount(0)).isEqualTo(3);
+        assertThat(index.getChildCount(5)).isZero();
+        assertThat(index.getChildPosition(index.getChildrenStart(1))).isEqualTo(2);
+        assertThat(index.getOffsets()).containsExactly(0, 3, 4, 4, 4, 4, 4);
+    }
+
+    @Test
+    public void testSameAsDirMap() throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+        final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+        final Long2ObjectLinkedOpenHashMap<long[]> dirMap = new Long2ObjectLinkedOpenHashMap<>();
+        for (int p = 0; p < inodes.getSize(); p++) {
+            final long[] children = fsImageData.getChildINodeIds(inodes.getInodeId(p));
+            if (children.length > 0) {
+                dirMap.put(inodes.getInodeId(p), children);
+            }
+        }
+        assertThat(dirMap).hasSize(807);
+
+        final FsImageData fromDirMap = new FsImageData(fsImageData.getStringTable(), inodes, dirMap);
+        assertThat(fromDirMap.getDirectoryIndex().getOffsets())
+                .isEqualTo(fsImageData.getDirectoryIndex().getOffsets());
+        assertThat(fromDirMap.getDirectoryIndex().getChildPositions())
+                .isEqualTo(fsImageData.getDirectoryIndex().getChildPositions());
+    }
+
+    @Test
+    public void testSortByName() throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+        final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+        final DirectoryIndex unsorted = fsImageData.getDirectoryIndex();
+        assertThat(unsorted.isSortedByName()).isFalse();
+
+        final DirectoryIndex sorted = unsorted.sortByName(true);
+        assertThat(sorted.isSortedByName()).isTrue();
+        assertThat(sorted.sortByName(true)).isSameAs(sorted);
+        assertThat(sorted.getOffsets()).isEqualTo(unsorted.getOffsets());
+        for (int p = 0; p < inodes.getSize(); p++) {
+            final int from = sorted.getChildrenStart(p);
+            final int to = sorted.getChildrenEnd(p);
+            final int[] expected = Arrays.copyOfRange(unsorted.getChildPositions(), from, to);
+            final int[] actual = Arrays.copyOfRange(sorted.getChildPositions(), from, to);
+            Arrays.sort(expected);
+            assertThat(actual).containsExactlyInAnyOrder(expected);
+            for (int i = from; i < to; i++) {
+                final ByteBuffer name = INodeWireFormat.getName(inodes.getInodeBytesAt(sorted.getChildPosition(i)));
+                if (i > from) {
+                    final ByteBuffer previousName =
+                            INodeWireFormat.getName(inodes.getInodeBytesAt(sorted.getChildPosition(i - 1)));
+                    assertThat(DirectoryIndex.compareNames(previousName, name)).isNegative();
+                }
+                final byte[] nameBytes = new byte[name.remaining()];
+                name.get(nameBytes);
+                assertThat(sorted.findChildSorted(p, nameBytes)).isEqualTo(sorted.getChildPosition(i));
+            }
+            assertThat(sorted.findChildSorted(p, "no_such_name".getBytes(StandardCharsets.UTF_8))).isNegative();
+        }
+    }
+
+    @Test
+    public void testCompareNames() {
+        assertThat(DirectoryIndex.compareNames(utf8("a"), utf8("b"))).isNegative();
+        assertThat(DirectoryIndex.compareNames(utf8("ab"), utf8("a"))).isPositive();
+        assertThat(DirectoryIndex.compareNames(utf8("a"), utf8("a"))).isZero();
+        // Unsigned, so multi-byte UTF-8 sorts after ASCII
+        assertThat(DirectoryIndex.compareNames(utf8("\u00e4"), utf8("z"))).isPositive();
+    }
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPreOrderLayout() throws IOException {
+        final FsImageData fsImageData;
+        final FsImageData preOrderFsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            preOrderFsImageData = new FsImageLoader.Builder().parallel().preOrderLayout().build().load(file);
+        }
+        final FsImageLoader.INodesRepository inodes = preOrderFsImageData.getInodes();
+        final DirectoryIndex directoryIndex = preOrderFsImageData.getDirectoryIndex();
+        assertThat(inodes.getSize()).isEqualTo(fsImageData.getInodes().getSize());
+        assertThat(inodes.getInodeId(0)).isEqualTo(INodeId.ROOT_INODE_ID);
+        for (int position = 0; position < inodes.getSize(); position++) {
+            final long id = inodes.getInodeId(position);
+            assertThat(inodes.getPosition(id)).isEqualTo(position);
+            // Pre-order, so parents precede children
+            assertThat(directoryIndex.getParentPosition(position)).isLessThan(position);
+            assertThat(preOrderFsImageData.getChildINodeIds(id)).containsExactly(fsImageData.getChildINodeIds(id));
+            assertThat(preOrderFsImageData.getPath(id)).isEqualTo(fsImageData.getPath(id));
+        }
+    }
+}
@@ -28,15 +28,23 @@ public class FSImageLoaderMicroBenchmarkIT {
     public static class LoaderState {
         FsImageLoader imageLoader = new FsImageLoader.Builder().build();
         FsImageLoader parallelImageLoader = new FsImageLoader.Builder().parallel().build();
+        FsImageLoader arenaImageLoader = new FsImageLoader.Builder().arena().build();
         FsVisitor.Builder visitorBuilder = new FsVisitor.Builder();
         FsVisitor.Builder parallelVisitorBuilder = new FsVisitor.Builder().parallel();
 
         FsImageData fsImageData;
+        // Baseline for the pre-order layout, which also stores inodes in arena slabs
+        FsImageData arenaFsImageData;
+        FsImageData preOrderFsImageData;
 
         @Setup(Level.Trial)
         public void setUp() {
-            try (RandomAccessFile file = openFile()) {
+            try (RandomAccessFile file = openFile();
+                 RandomAccessFile arenaFile = openFile();
+                 RandomAccessFile preOrderFile = openFile()) {
                 fsImageData = new FsImageLoader.Builder().build().load(file);
+                arenaFsImageData = new FsImageLoader.Builder().arena().build().load(arenaFile);
+                preOrderFsImageData = new FsImageLoader.Builder().arena().preOrderLayout().build().load(preOrderFile);
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
@@ -57,6 +65,13 @@ public class FSImageLoaderMicroBenchmarkIT {
         }
     }
 
+    @Benchmark
+    public void loadFsImageFileArena(LoaderState state, Blackhole blackhole) throws IOException {
+        try (RandomAccessFile file = openFile()) {
+            blackhole.consume(state.arenaImageLoader.load(file));
+        }
+    }
+
     @Benchmark
     public void visitFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
         state.visitorBuilder.visit(state.fsImageData, new BenchmarkVisitor(blackhole));
@@ -67,6 +82,56 @@ public class FSImageLoaderMicroBenchmarkIT {
         state.parallelVisitorBuilder.visit(state.fsImageData, new BenchmarkVisitor(blackhole));
     }
 
+    @Benchmark
+    public void visitParallelPathHandlesFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.parallelVisitorBuilder.visit(state.fsImageData, new FsPathVisitor() {
+            @Override
+            public void onFile(FsImageProto.INodeSection.INode inode, FsPath path) {
+                blackhole.consume(inode);
+            }
+
+            @Override
+            public void onDirectory(FsImageProto.INodeSection.INode inode, FsPath path) {
+                blackhole.consume(inode);
+            }
+
+            @Override
+            public void onSymLink(FsImageProto.INodeSection.INode inode, FsPath path) {
+                blackhole.consume(inode);
+            }
+        });
+    }
+
+    @Benchmark
+    public void visitViewsFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.visitorBuilder.visit(state.fsImageData, new BenchmarkViewVisitor(blackhole));
+    }
+
+    @Benchmark
+    public void visitParallelViewsFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.parallelVisitorBuilder.visit(state.fsImageData, new BenchmarkViewVisitor(blackhole));
+    }
+
+    @Benchmark
+    public void visitArenaFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.visitorBuilder.visit(state.arenaFsImageData, new BenchmarkVisitor(blackhole));
+    }
+
+    @Benchmark
+    public void visitParallelArenaFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.parallelVisitorBuilder.visit(state.arenaFsImageData, new BenchmarkVisitor(blackhole));
+    }
+
+    @Benchmark
+    public void visitPreOrderFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.visitorBuilder.visit(state.preOrderFsImageData, new BenchmarkVisitor(blackhole));
+    }
+
+    @Benchmark
+    public void visitParallelPreOrderFsImageFile(LoaderState state, Blackhole blackhole) throws IOException {
+        state.parallelVisitorBuilder.visit(state.preOrderFsImageData, new BenchmarkVisitor(blackhole));
+    }
+
     @Test
     public void runMicroBenchMark() throws RunnerException {
         String reportPath = "target/jmh-reports/";
@@ -109,6 +174,29 @@ public class FSImageLoaderMicroBenchmarkIT {
         }
     }
 
+    private static class BenchmarkViewVisitor implements FsViewVisitor {
+        private final Blackhole blackhole;
+
+        public BenchmarkViewVisitor(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onFile(INodeView inode, FsPath path) {
+            blackhole.consume(inode.getFileSize());
+        }
+
+        @Override
+        public void onDirectory(INodeView inode, FsPath path) {
+            blackhole.consume(inode.getPermission());
+        }
+
+        @Override
+        public void onSymLink(INodeView inode, FsPath path) {
+            blackhole.consume(inode.getPermission());
+        }
+    }
+
     public static void main(String[] args) throws RunnerException {
         new FSImageLoaderMicroBenchmarkIT().runMicroBenchMark();
     }
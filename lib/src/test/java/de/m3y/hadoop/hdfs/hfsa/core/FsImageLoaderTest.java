@@ -1,27 +1,41 @@
 package de.m3y.hadoop.hdfs.hfsa.core;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
 import java.util.stream.Collectors;
 
 import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.thirdparty.protobuf.CodedInputStream;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static de.m3y.hadoop.hdfs.hfsa.core.FsImageData.ROOT_PATH;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.entry;
 
 /**
  * fsi_small.img test data content:
@@ -66,6 +80,9 @@ public class FsImageLoaderTest {
     private static final Logger LOG = LoggerFactory.getLogger(FsImageLoaderTest.class);
     private FsImageData fsImageData;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setUp() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
@@ -170,11 +187,288 @@ public class FsImageLoaderTest {
         }
     }
 
+    @Test
+    public void testLoadMemoryMapped() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            final FsImageData memoryMappedImage = new FsImageLoader.Builder().memoryMapped().build().load(file);
+            loadAndVisit(memoryMappedImage, new FsVisitor.Builder());
+        }
+        loadAndVisitLarge(new File("src/test/resources/fsimage_d800_f210k_compressed.img"),
+                new FsImageLoader.Builder().parallel().memoryMapped());
+    }
+
+    @Test
+    public void testLoadPipelined() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            final FsImageData pipelinedImage = new FsImageLoader.Builder().pipelined().build().load(file);
+            loadAndVisit(pipelinedImage, new FsVisitor.Builder().parallel());
+        }
+        loadAndVisitLarge(new File("src/test/resources/fsimage_d800_f210k_compressed.img"),
+                new FsImageLoader.Builder().parallel().pipelined().memoryMapped());
+    }
+
+    @Test
+    public void testLoadSubSections() throws IOException {
+        File smallImage = temporaryFolder.newFile();
+        writeImageWithSubSections(new File("src/test/resources/fsi_small_h3_2.img"), smallImage, 7, 4);
+        try (RandomAccessFile file = new RandomAccessFile(smallImage, "r")) {
+            loadAndVisit(new FsImageLoader.Builder().parallel().build().load(file), new FsVisitor.Builder());
+        }
+        try (RandomAccessFile file = new RandomAccessFile(smallImage, "r")) {
+            // Serial loading ignores sub-sections
+            loadAndVisit(new FsImageLoader.Builder().build().load(file), new FsVisitor.Builder());
+        }
+
+        loadAndVisitLarge(writeLargeImageWithSubSections(),
+                new FsImageLoader.Builder().parallel().pipelined().memoryMapped());
+    }
+
+    @Test
+    public void testLoadArena() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            loadAndVisit(new FsImageLoader.Builder().arena().build().load(file), new FsVisitor.Builder());
+        }
+
+        loadAndVisitLarge(writeLargeImageWithSubSections(), new FsImageLoader.Builder().arena().parallel());
+    }
+
+    @Test
+    public void testLoadOffHeap() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            loadAndVisit(new FsImageLoader.Builder().offHeap().build().load(file), new FsVisitor.Builder());
+        }
+
+        loadAndVisitLarge(writeLargeImageWithSubSections(), new FsImageLoader.Builder().offHeap().parallel());
+    }
+
+    @Test
+    public void testLoadLazy() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            loadAndVisit(new FsImageLoader.Builder().lazy().build().load(file), new FsVisitor.Builder());
+        }
+
+        loadAndVisitLarge(writeLargeImageWithSubSections(), new FsImageLoader.Builder().lazy().parallel());
+
+        // Falls back for compressed fsimages
+        loadAndVisitLarge(new File("src/test/resources/fsimage_d800_f210k_compressed.img"),
+                new FsImageLoader.Builder().lazy());
+    }
+
+    /**
+     * Loads the fsimage_d800_f210k content with given options, and checks a parallel visit.
+     */
+    private static void loadAndVisitLarge(File image, FsImageLoader.Builder loaderBuilder) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(image, "r")) {
+            final FsImageData fsImageData = loaderBuilder.build().load(file);
+            final CountingVisitor visitor = new CountingVisitor(fsImageData);
+            new FsVisitor.Builder().parallel().visit(fsImageData, visitor);
+            assertThat(visitor.numFiles.get()).isEqualTo(209560L);
+            assertThat(visitor.numDirs.get()).isEqualTo(807L);
+        }
+    }
+
+    /**
+     * Creates a copy of fsimage_d800_f210k with sub-sections, see {@link #writeImageWithSubSections(File, File, int, int)}.
+     */
+    private File writeLargeImageWithSubSections() throws IOException {
+        File largeImage = temporaryFolder.newFile();
+        writeImageWithSubSections(new File("src/test/resources/fsimage_d800_f210k.img"), largeImage, 50000, 200);
+        return largeImage;
+    }
+
+    /**
+     * Creates an fsimage with INODE_SUB and INODE_DIR_SUB sub-sections, like Hadoop 3.3+ parallel saving does.
+     */
+    static void writeImageWithSubSections(File source, File target, int inodesPerSubSection,
+                                          int dirEntriesPerSubSection) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            final FsImageProto.FileSummary summary = FSImageUtil.loadSummary(file);
+            assertThat(summary.getCodec()).isEmpty();
+            final FsImageProto.FileSummary.Builder summaryBuilder = summary.toBuilder();
+            for (FsImageProto.FileSummary.Section section : summary.getSectionsList()) {
+                if (SectionName.INODE.name().equals(section.getName())) {
+                    summaryBuilder.addAllSections(
+                            splitSection(file, section, SectionName.INODE_SUB, true, inodesPerSubSection));
+                } else if (SectionName.INODE_DIR.name().equals(section.getName())) {
+                    summaryBuilder.addAllSections(
+                            splitSection(file, section, SectionName.INODE_DIR_SUB, false, dirEntriesPerSubSection));
+                }
+            }
+
+            file.seek(file.length() - 4);
+            final long summaryOffset = file.length() - 4 - file.readInt();
+            byte[] sections = new byte[(int) summaryOffset];
+            file.seek(0);
+            file.readFully(sections);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(target))) {
+                out.write(sections);
+                ByteArrayOutputStream summaryBytes = new ByteArrayOutputStream();
+                summaryBuilder.build().writeDelimitedTo(summaryBytes);
+                summaryBytes.writeTo(out);
+                out.writeInt(summaryBytes.size());
+            }
+        }
+    }
+
+    private static List<FsImageProto.FileSummary.Section> splitSection(
+            RandomAccessFile file, FsImageProto.FileSummary.Section section, SectionName subSectionName,
+            boolean hasHeader, int entriesPerSubSection) throws IOException {
+        byte[] bytes = new byte[(int) section.getLength()];
+        file.seek(section.getOffset());
+        file.readFully(bytes);
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        if (hasHeader) {
+            in.skipRawBytes(in.readRawVarint32());
+        }
+        List<FsImageProto.FileSummary.Section> subSections = new ArrayList<>();
+        long subSectionStart = 0;
+        int entries = 0;
+        while (!in.isAtEnd()) {
+            in.skipRawBytes(in.readRawVarint32());
+            if (++entries % entriesPerSubSection == 0 || in.isAtEnd()) {
+                subSections.add(FsImageProto.FileSummary.Section.newBuilder()
+                        .setName(subSectionName.name())
+                        .setOffset(section.getOffset() + subSectionStart)
+                        .setLength(in.getTotalBytesRead() - subSectionStart)
+                        .build());
+                subSectionStart = in.getTotalBytesRead();
+            }
+        }
+        assertThat(subSections.size()).isGreaterThan(1);
+        return subSections;
+    }
+
     @Test
     public void testLoadAndVisitParallel() throws IOException {
         loadAndVisit(fsImageData, new FsVisitor.Builder().parallel());
     }
 
+    @Test
+    public void testLoadAndVisitForkJoin() throws IOException {
+        // Splits child ranges of every directory
+        loadAndVisit(fsImageData, new FsVisitor.Builder(new FsVisitor.Builder.FsVisitorForkJoinStrategy(ForkJoinPool.commonPool(), 1)));
+
+        final FsImageData largeImage;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            largeImage = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+        final ExtendedCountingVisitor expected = new ExtendedCountingVisitor(largeImage);
+        new FsVisitor.Builder().visit(largeImage, expected);
+        final ExtendedCountingVisitor visitor = new ExtendedCountingVisitor(largeImage);
+        new FsVisitor.Builder(new FsVisitor.Builder.FsVisitorForkJoinStrategy(ForkJoinPool.commonPool(), 16)).visit(largeImage, visitor);
+        assertThat(visitor.numFiles.get()).isEqualTo(expected.numFiles.get());
+        assertThat(visitor.numDirs.get()).isEqualTo(expected.numDirs.get());
+        assertThat(visitor.sumFileSize.get()).isEqualTo(expected.sumFileSize.get());
+        assertThat(visitor.files.keySet()).isEqualTo(expected.files.keySet());
+        assertThat(visitor.paths.keySet()).isEqualTo(expected.paths.keySet());
+    }
+
+    @Test
+    public void testLoadAndVisitInPool() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+                loadAndVisit(new FsImageLoader.Builder().parallel(pool).pipelined().build().load(file),
+                        new FsVisitor.Builder().parallel(pool));
+            }
+            try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+                loadAndVisit(new FsImageLoader.Builder().parallel(1).build().load(file),
+                        new FsVisitor.Builder().parallel(1));
+            }
+
+            // Callbacks run in the given pool
+            final Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+            new FsVisitor.Builder().parallel(pool).visit(fsImageData, new CountingVisitor(fsImageData) {
+                @Override
+                public void onFile(FsImageProto.INodeSection.INode inode, String path) {
+                    pools.add(ForkJoinTask.getPool());
+                }
+            });
+            assertThat(pools).containsExactly(pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> new FsImageLoader.Builder().parallel(0));
+    }
+
+    @Test
+    public void testCollect() throws IOException {
+        final CountingVisitor expected = new CountingVisitor(fsImageData);
+        new FsVisitor.Builder().visit(fsImageData, expected);
+
+        final FsVisitor.Accumulator<long[]> accumulator = new FsVisitor.Accumulator<long[]>() {
+            @Override
+            public void onFile(long[] container, FsImageProto.INodeSection.INode inode, FsPath path) {
+                container[0]++;
+                container[1] += FsUtil.getFileSize(inode.getFile());
+            }
+
+            @Override
+            public void onDirectory(long[] container, FsImageProto.INodeSection.INode inode, FsPath path) {
+                container[2]++;
+            }
+
+            @Override
+            public void onSymLink(long[] container, FsImageProto.INodeSection.INode inode, FsPath path) {
+                container[3]++;
+            }
+        };
+        final BinaryOperator<long[]> combiner = (left, right) -> {
+            for (int i = 0; i < left.length; i++) {
+                left[i] += right[i];
+            }
+            return left;
+        };
+        final long[] expectedCounts = {expected.numFiles.get(), expected.sumFileSize.get(), expected.numDirs.get(),
+                expected.numSymLinks.get()};
+        assertThat(new FsVisitor.Builder().collect(fsImageData, () -> new long[4], accumulator, combiner))
+                .isEqualTo(expectedCounts);
+        assertThat(new FsVisitor.Builder().parallel().collect(fsImageData, () -> new long[4], accumulator, combiner))
+                .isEqualTo(expectedCounts);
+        assertThat(new FsVisitor.Builder().parallel()
+                .collect(fsImageData, () -> new long[4], accumulator, combiner, "/test3/foo/bar"))
+                .containsExactly(6, fsImageData.getContentSummary("/test3/foo/bar").getLength(), 1, 0);
+    }
+
+    @Test
+    public void testGetUserAndGroupName() throws IOException {
+        assertUserAndGroupNames(fsImageData);
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h2x.img", "r")) {
+            assertUserAndGroupNames(new FsImageLoader.Builder().build().load(file));
+        }
+    }
+
+    private static void assertUserAndGroupNames(FsImageData fsImageData) throws IOException {
+        final Set<String> userNames = new HashSet<>();
+        new FsVisitor.Builder().visit(fsImageData, new CountingVisitor(fsImageData) {
+            @Override
+            public void onFile(FsImageProto.INodeSection.INode inode, String path) {
+                assertNames(inode);
+            }
+
+            @Override
+            public void onDirectory(FsImageProto.INodeSection.INode inode, String path) {
+                assertNames(inode);
+            }
+
+            private void assertNames(FsImageProto.INodeSection.INode inode) {
+                final long permission = fsImageData.getPermission(inode);
+                final PermissionStatus p = fsImageData.getPermissionStatus(permission);
+                assertThat(fsImageData.getUserName(FsUtil.getUserId(permission))).isEqualTo(p.getUserName());
+                assertThat(fsImageData.getGroupName(FsUtil.getGroupId(permission))).isEqualTo(p.getGroupName());
+                assertThat(fsImageData.getUserNameOfPermission(permission)).isSameAs(p.getUserName());
+                assertThat(fsImageData.getGroupNameOfPermission(permission)).isSameAs(p.getGroupName());
+                assertThat(FsUtil.getMode(permission)).isEqualTo(p.getPermission().toShort());
+                // Pre-resolved
+                assertThat(FsUtil.getUserId(permission)).isLessThanOrEqualTo(fsImageData.getStringTable().size());
+                assertThat(FsUtil.getGroupId(permission)).isLessThanOrEqualTo(fsImageData.getStringTable().size());
+                userNames.add(p.getUserName());
+            }
+        });
+        assertThat(userNames).hasSize(3);
+    }
+
     @Test
     public void testLoadAndVisit() throws IOException {
         loadAndVisit(fsImageData, new FsVisitor.Builder());
@@ -268,6 +562,140 @@ public class FsImageLoaderTest {
         assertThat(visitor.files.keySet()).containsExactlyInAnyOrder(expectedFiles);
     }
 
+    @Test
+    public void testVisitPathHandles() throws IOException {
+        final ExtendedCountingVisitor expected = new ExtendedCountingVisitor(fsImageData);
+        new FsVisitor.Builder().visit(fsImageData, expected);
+        for (FsVisitor.Builder builder : new FsVisitor.Builder[]{new FsVisitor.Builder(),
+                new FsVisitor.Builder(FsVisitor.Builder.PARALLEL_STRATEGY), new FsVisitor.Builder().parallel(),
+                new FsVisitor.Builder(new FsVisitor.Builder.FsVisitorForkJoinStrategy(ForkJoinPool.commonPool(), 1))}) {
+            final PathCollectingVisitor visitor = new PathCollectingVisitor();
+            builder.visit(fsImageData, visitor);
+            assertThat(visitor.files).containsExactlyInAnyOrderElementsOf(expected.files.keySet());
+            assertThat(visitor.directories).containsExactlyInAnyOrderElementsOf(expected.paths.keySet());
+            assertThat(visitor.symLinks).isEmpty();
+
+            final PathCollectingVisitor subtree = new PathCollectingVisitor();
+            builder.visit(fsImageData, subtree, "/test3/foo");
+            assertThat(subtree.directories).containsExactlyInAnyOrder("/test3/foo", "/test3/foo/bar");
+            assertThat(subtree.files).hasSize(8).allMatch(f -> f.startsWith("/test3/foo/"));
+
+            final PathCollectingVisitor file = new PathCollectingVisitor();
+            builder.visit(fsImageData, file, "/test3/foo/bar/test_2MiB.img");
+            assertThat(file.files).containsExactly("/test3/foo/bar/test_2MiB.img");
+            assertThat(file.directories).isEmpty();
+        }
+    }
+
+    @Test
+    public void testVisitViews() throws IOException {
+        final PathCollectingVisitor expected = new PathCollectingVisitor();
+        new FsVisitor.Builder().visit(fsImageData, expected);
+        for (FsVisitor.Builder builder : new FsVisitor.Builder[]{new FsVisitor.Builder(),
+                new FsVisitor.Builder(FsVisitor.Builder.PARALLEL_STRATEGY), new FsVisitor.Builder().parallel(),
+                new FsVisitor.Builder(new FsVisitor.Builder.FsVisitorForkJoinStrategy(ForkJoinPool.commonPool(), 1))}) {
+            final Set<String> files = ConcurrentHashMap.newKeySet();
+            final Set<String> directories = ConcurrentHashMap.newKeySet();
+            final AtomicLong sumFileSize = new AtomicLong();
+            builder.visit(fsImageData, new FsViewVisitor() {
+                private String toPath(INodeView inode, FsPath path) {
+                    return path.isRoot() ? path + inode.getName() : path + "/" + inode.getName();
+                }
+
+                @Override
+                public void onFile(INodeView inode, FsPath path) {
+                    files.add(toPath(inode, path));
+                    sumFileSize.addAndGet(inode.getFileSize());
+                }
+
+                @Override
+                public void onDirectory(INodeView inode, FsPath path) {
+                    directories.add(toPath(inode, path));
+                }
+
+                @Override
+                public void onSymLink(INodeView inode, FsPath path) {
+                    files.add(toPath(inode, path));
+                }
+            });
+            assertThat(files).containsExactlyInAnyOrderElementsOf(expected.files);
+            assertThat(directories).containsExactlyInAnyOrderElementsOf(expected.directories);
+            assertThat(sumFileSize.get()).isEqualTo(fsImageData.getContentSummary(ROOT_PATH).getLength());
+        }
+    }
+
+    /**
+     * Renders paths of all visited inodes.
+     */
+    static class PathCollectingVisitor implements FsPathVisitor {
+        final Set<String> files = ConcurrentHashMap.newKeySet();
+        final Set<String> directories = ConcurrentHashMap.newKeySet();
+        final Set<String> symLinks = ConcurrentHashMap.newKeySet();
+
+        private static String toPath(FsImageProto.INodeSection.INode inode, FsPath path) {
+            final String name = inode.getName().toStringUtf8();
+            return name.isEmpty() ? path.toString() : path.appendTo(new StringBuilder())
+                    .append(path.isRoot() ? "" : "/").append(name).toString();
+        }
+
+        @Override
+        public void onFile(FsImageProto.INodeSection.INode inode, FsPath path) {
+            files.add(toPath(inode, path));
+        }
+
+        @Override
+        public void onDirectory(FsImageProto.INodeSection.INode inode, FsPath path) {
+            directories.add(toPath(inode, path));
+        }
+
+        @Override
+        public void onSymLink(FsImageProto.INodeSection.INode inode, FsPath path) {
+            symLinks.add(toPath(inode, path));
+        }
+    }
+
+    @Test
+    public void testVisitStartPathOfStrategies() throws IOException {
+        for (FsVisitor.Builder builder : new FsVisitor.Builder[]{new FsVisitor.Builder(),
+                new FsVisitor.Builder(FsVisitor.Builder.PARALLEL_STRATEGY), new FsVisitor.Builder().parallel(),
+                new FsVisitor.Builder().parallel(2)}) {
+            for (String[] startAndParent : new String[][]{
+                    {"/", "/"}, {"/test3", "/"}, {"/test3/foo", "/test3"}, {"/test3/foo/bar", "/test3/foo"}}) {
+                final Map<String, String> startPaths = new ConcurrentHashMap<>();
+                final long startId = fsImageData.getINodeFromPath(startAndParent[0]).getId();
+                builder.visit(fsImageData, new FsVisitor() {
+                    @Override
+                    public void onFile(FsImageProto.INodeSection.INode inode, String path) {
+                        // Not checked
+                    }
+
+                    @Override
+                    public void onDirectory(FsImageProto.INodeSection.INode inode, String path) {
+                        if (inode.getId() == startId) {
+                            startPaths.put(startAndParent[0], path);
+                        }
+                    }
+
+                    @Override
+                    public void onSymLink(FsImageProto.INodeSection.INode inode, String path) {
+                        // Not checked
+                    }
+                }, startAndParent[0]);
+                assertThat(startPaths).containsExactly(entry(startAndParent[0], startAndParent[1]));
+            }
+        }
+    }
+
+    @Test
+    public void testVisitForkJoinWithNestedPath() throws IOException {
+        final ExtendedCountingVisitor visitor = new ExtendedCountingVisitor(fsImageData);
+        new FsVisitor.Builder().parallel().visit(fsImageData, visitor, "/test3/foo");
+
+        assertThat(visitor.numDirs.get()).isEqualTo(2);
+        assertThat(visitor.numFiles.get()).isEqualTo(8);
+        assertThat(visitor.paths.keySet()).containsExactlyInAnyOrder("/test3/foo", "/test3/foo/bar");
+    }
+
     @Test
     public void testGetInodeFromPath() throws IOException {
         final FsImageProto.INodeSection.INode rootNode = fsImageData.getINodeFromPath("/");
@@ -298,6 +726,97 @@ public class FsImageLoaderTest {
         assertThat(r3FileNode.getName().toStringUtf8()).isEqualTo("test_160MiB.img");
     }
 
+    @Test
+    public void testGetContentSummary() throws IOException {
+        final FsContentSummary bar = fsImageData.getContentSummary("/test3/foo/bar");
+        assertThat(bar.getFileCount()).isEqualTo(6);
+        assertThat(bar.getDirectoryCount()).isEqualTo(1);
+        assertThat(bar.getSymlinkCount()).isZero();
+        assertThat(bar.getFileAndDirectoryCount()).isEqualTo(7);
+        long barLength = 0;
+        long barSpaceConsumed = 0;
+        for (long childId : fsImageData.getChildINodeIds(fsImageData.getINodeFromPath("/test3/foo/bar").getId())) {
+            final FsImageProto.INodeSection.INodeFile file = fsImageData.getInode(childId).getFile();
+            barLength += FsUtil.getFileSize(file);
+            barSpaceConsumed += FsUtil.getFileSize(file) * file.getReplication();
+        }
+        assertThat(bar.getLength()).isEqualTo(barLength);
+        assertThat(bar.getSpaceConsumed()).isEqualTo(barSpaceConsumed);
+        assertThat(bar.getQuota()).isEqualTo(FsContentSummary.QUOTA_NOT_SET);
+        assertThat(bar.getSpaceQuota()).isEqualTo(FsContentSummary.QUOTA_NOT_SET);
+
+        final FsContentSummary datalake = fsImageData.getContentSummary("/datalake/");
+        assertThat(datalake.getFileCount()).isEqualTo(5);
+        assertThat(datalake.getDirectoryCount()).isEqualTo(6);
+        assertThat(datalake.getLength()).isEqualTo(1024L + 4 * 2097152L);
+
+        final FsContentSummary root = fsImageData.getContentSummary(ROOT_PATH);
+        final CountingVisitor visitor = new CountingVisitor(fsImageData);
+        new FsVisitor.Builder().visit(fsImageData, visitor);
+        assertThat(root.getFileCount()).isEqualTo(visitor.numFiles.get());
+        assertThat(root.getDirectoryCount()).isEqualTo(visitor.numDirs.get());
+        assertThat(root.getLength()).isEqualTo(visitor.sumFileSize.get());
+        assertThat(root.getQuota()).isEqualTo(Long.MAX_VALUE);
+
+        final FsContentSummary file = fsImageData.getContentSummary("/test_2KiB.img");
+        assertThat(file.getFileCount()).isEqualTo(1);
+        assertThat(file.getDirectoryCount()).isZero();
+        assertThat(file.getLength()).isEqualTo(2048);
+        assertThat(file.getQuota()).isEqualTo(FsContentSummary.QUOTA_NOT_SET);
+
+        assertThatExceptionOfType(FileNotFoundException.class)
+                .isThrownBy(() -> fsImageData.getContentSummary("/no_such_path"));
+    }
+
+    @Test
+    public void testGetPathAndParentId() throws IOException {
+        assertThat(fsImageData.getPath(INodeId.ROOT_INODE_ID)).isEqualTo(ROOT_PATH);
+        assertThat(fsImageData.getParentId(INodeId.ROOT_INODE_ID)).isEqualTo(HdfsConstants.GRANDFATHER_INODE_ID);
+
+        for (String path : new String[]{"/test3", "/test3/foo/bar", "/test3/test_160MiB.img",
+                "/test3/foo/bar/test_80MiB.img", "/datalake/asset3/subasset2/test_2MiB.img"}) {
+            final FsImageProto.INodeSection.INode inode = fsImageData.getINodeFromPath(path);
+            assertThat(fsImageData.getPath(inode.getId())).isEqualTo(path);
+            final String parentPath = path.substring(0, Math.max(1, path.lastIndexOf(FsImageData.PATH_SEPARATOR)));
+            assertThat(fsImageData.getParentId(inode.getId()))
+                    .isEqualTo(fsImageData.getINodeFromPath(parentPath).getId());
+        }
+
+        // Every visited inode
+        new FsVisitor.Builder().visit(fsImageData, new FsVisitor() {
+            @Override
+            public void onFile(FsImageProto.INodeSection.INode inode, String path) {
+                assertPath(inode, path);
+            }
+
+            @Override
+            public void onDirectory(FsImageProto.INodeSection.INode inode, String path) {
+                if (INodeId.ROOT_INODE_ID != inode.getId()) {
+                    assertPath(inode, path);
+                }
+            }
+
+            @Override
+            public void onSymLink(FsImageProto.INodeSection.INode inode, String path) {
+                assertPath(inode, path);
+            }
+
+            private void assertPath(FsImageProto.INodeSection.INode inode, String parentPath) {
+                try {
+                    assertThat(fsImageData.getPath(inode.getId())).isEqualTo(
+                            (ROOT_PATH.equals(parentPath) ? "" : parentPath) + '/' + inode.getName().toStringUtf8());
+                } catch (FileNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> fsImageData.getPath(Long.MAX_VALUE));
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> fsImageData.getParentId(Long.MAX_VALUE));
+    }
+
     @Test
     public void testGetChildDirectories() throws IOException {
         List<String> childPaths = fsImageData.getChildDirectories("/");
@@ -0,0 +1,49 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import org.apache.hadoop.thirdparty.protobuf.ByteString;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class FsPathTest {
+
+    @Test
+    public void testRoot() {
+        assertThat(FsPath.ROOT.isRoot()).isTrue();
+        assertThat(FsPath.ROOT.getParent()).isNull();
+        assertThat(FsPath.ROOT.getName()).isEmpty();
+        assertThat(FsPath.ROOT.getDepth()).isZero();
+        assertThat(FsPath.ROOT).hasToString("/");
+        assertThat(FsPath.of("/")).isSameAs(FsPath.ROOT);
+    }
+
+    @Test
+    public void testOf() {
+        final FsPath path = FsPath.of("/foo/bar");
+        assertThat(path).hasToString("/foo/bar");
+        assertThat(path.isRoot()).isFalse();
+        assertThat(path.getName()).isEqualTo("bar");
+        assertThat(path.getDepth()).isEqualTo(2);
+        assertThat(path.getParent()).hasToString("/foo");
+        assertThat(path.getParent().getParent()).isSameAs(FsPath.ROOT);
+
+        // Keeps given path
+        assertThat(FsPath.of("/foo/bar/")).hasToString("/foo/bar/");
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> FsPath.of("foo"));
+    }
+
+    @Test
+    public void testChild() {
+        final FsPath foo = FsPath.ROOT.child(ByteString.copyFromUtf8("foo"));
+        final FsPath bar = foo.child(ByteString.copyFromUtf8("bär"));
+        assertThat(bar.getDepth()).isEqualTo(2);
+        assertThat(bar.getName()).isEqualTo("bär");
+        assertThat(bar.appendTo(new StringBuilder("path=")).toString()).isEqualTo("path=/foo/bär");
+        assertThat(bar).hasToString("/foo/bär");
+        assertThat(bar.toString()).isSameAs(bar.toString());
+        assertThat(foo).hasToString("/foo");
+        assertThat(FsPath.of("/foo").child(ByteString.copyFromUtf8("bar"))).hasToString("/foo/bar");
+    }
+}
@@ -0,0 +1,139 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FsRollupVisitorTest {
+    private static FsImageData fsImageData;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+    }
+
+    /**
+     * Counts files, directories and file size, remembering each directory result by path.
+     */
+    static class CountingRollup implements FsRollupVisitor<long[]> {
+        final Map<String, long[]> directories = new ConcurrentHashMap<>();
+
+        @Override
+        public long[] identity() {
+            return new long[3];
+        }
+
+        @Override
+        public long[] merge(long[] left, long[] right) {
+            for (int i = 0; i < left.length; i++) {
+                left[i] += right[i];
+            }
+            return left;
+        }
+
+        @Override
+        public long[] onFile(INode inode, String path) {
+            return new long[]{1, 0, FsUtil.getFileSize(inode.getFile())};
+        }
+
+        @Override
+        public long[] onSymLink(INode inode, String path) {
+            return identity();
+        }
+
+        @Override
+        public long[] onDirectory(INode inode, String path, long[] children) {
+            children[1]++;
+            final String name = inode.getName().toStringUtf8();
+            final String directoryPath = name.isEmpty() ? path :
+                    (FsImageData.ROOT_PATH.equals(path) ? path + name : path + '/' + name);
+            directories.put(directoryPath, children.clone());
+            return children;
+        }
+    }
+
+    @Test
+    public void testVisit() throws IOException {
+        final CountingRollup sequential = new CountingRollup();
+        final long[] root = new FsRollupVisitor.Builder().visit(fsImageData, sequential);
+        assertRollup(sequential, root);
+
+        final CountingRollup parallel = new CountingRollup();
+        final long[] parallelRoot = new FsRollupVisitor.Builder().parallel().visit(fsImageData, parallel);
+        assertThat(parallelRoot).isEqualTo(root);
+        assertThat(parallel.directories).containsOnlyKeys(sequential.directories.keySet());
+        for (Map.Entry<String, long[]> entry : sequential.directories.entrySet()) {
+            assertThat(parallel.directories.get(entry.getKey())).isEqualTo(entry.getValue());
+        }
+    }
+
+    @Test
+    public void testVisitInPool() throws IOException {
+        final long[] root = new FsRollupVisitor.Builder().visit(fsImageData, new CountingRollup());
+
+        final CountingRollup dedicated = new CountingRollup();
+        assertThat(new FsRollupVisitor.Builder().parallel(2).visit(fsImageData, dedicated)).isEqualTo(root);
+        assertRollup(dedicated, root);
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final CountingRollup pooled = new CountingRollup();
+            assertThat(new FsRollupVisitor.Builder().parallel(pool).visit(fsImageData, pooled)).isEqualTo(root);
+            assertRollup(pooled, root);
+            // Not shut down by visit
+            assertThat(pool.isShutdown()).isFalse();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThatThrownBy(() -> new FsRollupVisitor.Builder().parallel(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void assertRollup(CountingRollup rollup, long[] root) throws IOException {
+        assertThat(rollup.directories).containsKeys("/", "/test3", "/test3/foo/bar", "/datalake");
+        assertThat(rollup.directories.get("/")).isEqualTo(root);
+        for (Map.Entry<String, long[]> entry : rollup.directories.entrySet()) {
+            final FsContentSummary summary = fsImageData.getContentSummary(entry.getKey());
+            assertThat(entry.getValue()).containsExactly(
+                    summary.getFileCount(), summary.getDirectoryCount(), summary.getLength());
+        }
+    }
+
+    @Test
+    public void testVisitPath() throws IOException {
+        final CountingRollup rollup = new CountingRollup();
+        final long[] result = new FsRollupVisitor.Builder().parallel().visit(fsImageData, rollup, "/test3/foo");
+        assertThat(rollup.directories).containsKeys("/test3/foo", "/test3/foo/bar");
+        assertThat(rollup.directories.keySet()).allMatch(p -> p.startsWith("/test3/foo"));
+        final FsContentSummary summary = fsImageData.getContentSummary("/test3/foo");
+        assertThat(result).containsExactly(
+                summary.getFileCount(), summary.getDirectoryCount(), summary.getLength());
+
+        // Single file, with parent path
+        final long[] file = new FsRollupVisitor.Builder().visit(fsImageData, new CountingRollup() {
+            @Override
+            public long[] onFile(INode inode, String path) {
+                assertThat(path).isEqualTo("/test3/foo/bar");
+                return super.onFile(inode, path);
+            }
+        }, "/test3/foo/bar/test_20MiB.img");
+        assertThat(file).containsExactly(1, 0, 20 * 1024 * 1024);
+
+        assertThatThrownBy(() -> new FsRollupVisitor.Builder().visit(fsImageData, new CountingRollup(), "/no_such_path"))
+                .isInstanceOf(FileNotFoundException.class);
+    }
+}
@@ -0,0 +1,86 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.function.IntPredicate;
+
+import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class INodeColumnsTest {
+
+    private static FsImageData load(FsImageLoader.Builder builder) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            return builder.build().load(file);
+        }
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        final FsImageData fsImageData = load(new FsImageLoader.Builder().columns());
+        assertThat(fsImageData.hasColumns()).isTrue();
+        final INodeColumns columns = fsImageData.getColumns();
+        assertThat(columns.getSize()).isEqualTo(fsImageData.getInodes().getSize());
+
+        for (int position = 0; position < columns.getSize(); position++) {
+            final long inodeId = columns.getInodeId(position);
+            assertThat(columns.getPosition(inodeId)).isEqualTo(position);
+            final FsImageProto.INodeSection.INode inode = fsImageData.getInode(inodeId);
+            assertThat(columns.getType(position)).isEqualTo(inode.getType());
+            assertThat(columns.getPermission(position)).isEqualTo(fsImageData.getPermission(inode));
+            if (FsUtil.isFile(inode)) {
+                assertThat(columns.isFile(position)).isTrue();
+                assertThat(columns.getFileSize(position)).isEqualTo(FsUtil.getFileSize(inode.getFile()));
+                assertThat(columns.getBlockCount(position)).isEqualTo(inode.getFile().getBlocksCount());
+                assertThat(columns.getReplication(position)).isEqualTo((short) FsUtil.getFileReplication(inode.getFile()));
+                assertThat(columns.getModificationTime(position)).isEqualTo(inode.getFile().getModificationTime());
+                assertThat(columns.getAccessTime(position)).isEqualTo(inode.getFile().getAccessTime());
+            } else if (FsUtil.isDirectory(inode)) {
+                assertThat(columns.isDirectory(position)).isTrue();
+                assertThat(columns.getModificationTime(position)).isEqualTo(inode.getDirectory().getModificationTime());
+                for (long childId : fsImageData.getChildINodeIds(inodeId)) {
+                    assertThat(columns.getParent(columns.getPosition(childId))).isEqualTo(position);
+                }
+            }
+        }
+        assertThat(columns.getParent(columns.getPosition(INodeId.ROOT_INODE_ID))).isEqualTo(INodeColumns.NO_PARENT);
+    }
+
+    @Test
+    public void testSubtreeFilter() throws IOException {
+        final FsImageData fsImageData = load(new FsImageLoader.Builder().columns().parallel());
+        final INodeColumns columns = fsImageData.getColumns();
+
+        final FsImageLoaderTest.CountingVisitor visitor = new FsImageLoaderTest.CountingVisitor(fsImageData);
+        new FsVisitor.Builder().visit(fsImageData, visitor, "/test3");
+
+        final int test3 = columns.getPosition(fsImageData.getINodeFromPath("/test3").getId());
+        final IntPredicate filter = columns.subtreeFilter(test3);
+        assertThat(filter.test(test3)).isFalse();
+        long files = 0;
+        long dirs = 1; // Visitor includes the subtree root
+        for (int position = 0; position < columns.getSize(); position++) {
+            if (filter.test(position)) {
+                if (columns.isFile(position)) {
+                    files++;
+                } else if (columns.isDirectory(position)) {
+                    dirs++;
+                }
+            }
+        }
+        assertThat(files).isEqualTo(visitor.numFiles.get());
+        assertThat(dirs).isEqualTo(visitor.numDirs.get());
+    }
+
+    @Test
+    public void testNoColumns() throws IOException {
+        final FsImageData fsImageData = load(new FsImageLoader.Builder());
+        assertThat(fsImageData.hasColumns()).isFalse();
+        assertThatExceptionOfType(IllegalStateException.class).isThrownBy(fsImageData::getColumns);
+    }
+}
@@ -0,0 +1,71 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class INodeIdIndexTest {
+
+    @Test
+    public void testEmpty() {
+        final INodeIdIndex index = new INodeIdIndex(new long[0]);
+        assertThat(index.getPosition(INodeId.ROOT_INODE_ID)).isNegative();
+        assertThat(index.getPosition(0)).isNegative();
+    }
+
+    @Test
+    public void testDense() {
+        final long[] ids = new long[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = INodeId.ROOT_INODE_ID + i;
+        }
+        final INodeIdIndex index = new INodeIdIndex(ids);
+        assertThat(index.isDense()).isTrue();
+        assertLookups(ids, index);
+    }
+
+    @Test
+    public void testGaps() {
+        // Nearly dense, with a few deleted inodes
+        final Random random = new Random(42);
+        final long[] ids = new long[100_000];
+        long id = INodeId.ROOT_INODE_ID;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = id;
+            id += random.nextInt(100) == 0 ? 2 + random.nextInt(50) : 1;
+        }
+        final INodeIdIndex index = new INodeIdIndex(ids);
+        assertThat(index.isDense()).isFalse();
+        assertLookups(ids, index);
+    }
+
+    @Test
+    public void testSparse() {
+        final long[] ids = {1, 2, 3, 1000, 1001, 1L << 40, (1L << 40) + 7, Long.MAX_VALUE / 2};
+        final INodeIdIndex index = new INodeIdIndex(ids.length, position -> ids[position]);
+        assertThat(index.isDense()).isFalse();
+        assertLookups(ids, index);
+    }
+
+    private static void assertLookups(long[] ids, INodeIdIndex index) {
+        for (int i = 0; i < ids.length; i++) {
+            assertThat(index.getPosition(ids[i])).isEqualTo(i);
+        }
+        // Misses in gaps and outside of range
+        final long[] candidates = new long[ids.length * 2 + 2];
+        for (int i = 0; i < ids.length; i++) {
+            candidates[i * 2] = ids[i] - 1;
+            candidates[i * 2 + 1] = ids[i] + 1;
+        }
+        candidates[candidates.length - 2] = Long.MIN_VALUE;
+        candidates[candidates.length - 1] = Long.MAX_VALUE;
+        for (long candidate : candidates) {
+            final int expected = Arrays.binarySearch(ids, candidate);
+            assertThat(index.getPosition(candidate)).isEqualTo(expected < 0 ? -1 : expected);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
+import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile;
+import org.junit.Test;
+
+import static de.m3y.hadoop.hdfs.hfsa.core.ArenaINodesRepositoryTest.buildRepository;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class INodeViewTest {
+    private static final String FS_IMAGE = "src/test/resources/fsi_small_h3_2.img";
+
+    @Test
+    public void testReadInodeAt() throws IOException {
+        final FsImageLoader.INodesRepository expected =
+                buildRepository(FS_IMAGE, new FsImageLoader.PrimitiveArrayINodesRepository.Builder());
+        // Tiny slabs, so that some inodes exceed the slab size
+        assertViews(expected, expected);
+        assertViews(expected, buildRepository(FS_IMAGE, new ArenaINodesRepository.Builder(false, 64)));
+        assertViews(expected, buildRepository(FS_IMAGE, new OffHeapINodesRepository.Builder(false, 64)));
+        assertViews(expected, buildRepository(FS_IMAGE, new LazyMappedINodesRepository.Builder(false)));
+    }
+
+    private static void assertViews(FsImageLoader.INodesRepository expected, FsImageLoader.INodesRepository inodes)
+            throws IOException {
+        final INodeView view = new INodeView();
+        for (int position = 0; position < inodes.getSize(); position++) {
+            inodes.readInodeAt(position, view);
+            final INode inode = expected.getInode(inodes.getInodeId(position));
+            assertThat(view.toINode()).isEqualTo(inode);
+            assertThat(view.getId()).isEqualTo(inode.getId());
+            assertThat(view.getType()).isEqualTo(inode.getType());
+            assertThat(view.getName()).isEqualTo(inode.getName().toStringUtf8());
+            assertThat(view.hasName(inode.getName().toByteArray())).isTrue();
+            assertThat(view.hasName("no_such_name".getBytes(StandardCharsets.UTF_8))).isFalse();
+            switch (inode.getType()) {
+                case FILE:
+                    assertThat(view.isFile()).isTrue();
+                    assertThat(view.getPermission()).isEqualTo(inode.getFile().getPermission());
+                    assertThat(view.getModificationTime()).isEqualTo(inode.getFile().getModificationTime());
+                    assertThat(view.getAccessTime()).isEqualTo(inode.getFile().getAccessTime());
+                    assertThat(view.getReplication()).isEqualTo(FsUtil.getFileReplication(inode.getFile()));
+                    assertThat(view.getBlockCount()).isEqualTo(inode.getFile().getBlocksCount());
+                    assertThat(view.getFileSize()).isEqualTo(FsUtil.getFileSize(inode.getFile()));
+                    break;
+                case DIRECTORY:
+                    assertThat(view.isDirectory()).isTrue();
+                    assertThat(view.getPermission()).isEqualTo(inode.getDirectory().getPermission());
+                    assertThat(view.getModificationTime()).isEqualTo(inode.getDirectory().getModificationTime());
+                    assertThat(view.getFileSize()).isZero();
+                    break;
+                default:
+                    assertThat(view.isSymlink()).isTrue();
+                    assertThat(view.getPermission()).isEqualTo(inode.getSymlink().getPermission());
+            }
+        }
+    }
+
+    @Test
+    public void testErasureCodedReplication() {
+        final INode inode = INode.newBuilder().setType(INode.Type.FILE).setId(1)
+                .setFile(INodeFile.newBuilder()
+                        .addBlocks(HdfsProtos.BlockProto.newBuilder().setBlockId(1).setGenStamp(1000).setNumBytes(100))
+                        .setBlockType(HdfsProtos.BlockTypeProto.STRIPED)
+                        .setErasureCodingPolicyID(SystemErasureCodingPolicies.RS_6_3_POLICY_ID))
+                .build();
+        final INodeView view = new INodeView();
+        view.reset(ByteBuffer.wrap(inode.toByteArray()));
+        assertThat(view.getReplication())
+                .isEqualTo(FsUtil.getFileReplication(inode.getFile()))
+                .isEqualTo(org.apache.hadoop.hdfs.server.namenode.INodeFile.DEFAULT_REPL_FOR_STRIPED_BLOCKS);
+    }
+
+    @Test
+    public void testGrow() throws IOException {
+        final FsImageLoader.INodesRepository inodes =
+                buildRepository(FS_IMAGE, new FsImageLoader.PrimitiveArrayINodesRepository.Builder());
+        final INode inode = inodes.getInodeAt(0);
+        final byte[] padded = new byte[1024];
+        final byte[] bytes = inode.toByteArray();
+        System.arraycopy(bytes, 0, padded, padded.length - bytes.length, bytes.length);
+
+        final INodeView view = new INodeView();
+        view.prepare(600);
+        view.reset(padded, padded.length - bytes.length, bytes.length);
+        assertThat(view.toINode()).isEqualTo(inode);
+        assertThat(view.getBytes().remaining()).isEqualTo(bytes.length);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        view.reset(direct);
+        assertThat(view.toINode()).isEqualTo(inode);
+        assertThat(direct.position()).isZero();
+    }
+}
@@ -0,0 +1,37 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FSImageUtil;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.junit.Test;
+
+import static de.m3y.hadoop.hdfs.hfsa.core.ArenaINodesRepositoryTest.assertSameInodes;
+import static de.m3y.hadoop.hdfs.hfsa.core.ArenaINodesRepositoryTest.buildRepository;
+
+public class LazyMappedINodesRepositoryTest {
+
+    @Test
+    public void testSmallChunks() throws IOException {
+        final String fsImage = "src/test/resources/fsi_small_h3_2.img";
+        final FsImageLoader.INodesRepository expected =
+                buildRepository(fsImage, new FsImageLoader.PrimitiveArrayINodesRepository.Builder());
+
+        try (RandomAccessFile file = new RandomAccessFile(fsImage, "r")) {
+            FsImageProto.FileSummary.Section section = FSImageUtil.loadSummary(file).getSectionsList().stream()
+                    .filter(s -> SectionName.INODE.name().equals(s.getName()))
+                    .findFirst().orElseThrow(IllegalStateException::new);
+            // Tiny chunks, so that inodes span chunk borders
+            InputStream in = new MappedSection(file.getChannel(), section.getOffset(), section.getLength(), 64)
+                    .newInputStream();
+            FsImageProto.INodeSection s = FsImageProto.INodeSection.parseDelimitedFrom(in);
+            final FsImageLoader.INodesRepository lazy =
+                    new LazyMappedINodesRepository.Builder(false).build(s, in, section.getLength());
+
+            assertSameInodes(expected, lazy);
+        }
+    }
+}
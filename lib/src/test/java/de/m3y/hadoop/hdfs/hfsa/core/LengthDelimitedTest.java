@@ -0,0 +1,30 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LengthDelimitedTest {
+
+    @Test
+    public void testReadLength() throws IOException {
+        for (int length : new int[]{0, 1, 127, 128, 16383, 16384, 1 << 21, Integer.MAX_VALUE}) {
+            final byte[] buf = new byte[8];
+            final int offset = 3;
+            final CodedOutputStream out = CodedOutputStream.newInstance(buf, offset, buf.length - offset);
+            out.writeUInt32NoTag(length);
+            out.flush();
+            final int prefixSize = buf.length - offset - out.spaceLeft();
+
+            assertThat(LengthDelimited.readLength(buf, offset)).isEqualTo(length);
+            final ByteBuffer buffer = ByteBuffer.wrap(buf);
+            assertThat(LengthDelimited.readLength(buffer, offset)).isEqualTo(length);
+            assertThat(buffer.position()).isZero();
+            assertThat(LengthDelimited.prefixSize(length)).isEqualTo(prefixSize);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class MappedSectionTest {
+
+    @Test
+    public void testReadAcrossChunks() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            final long offset = 7;
+            final int length = (int) file.length() - 11;
+            byte[] expected = new byte[length];
+            file.seek(offset);
+            file.readFully(expected);
+
+            // Tiny chunks, so that reads cross chunk borders
+            final MappedSection mappedSection = new MappedSection(file.getChannel(), offset, length, 64);
+            assertThat(mappedSection.length()).isEqualTo(length);
+            assertThat(mappedSection.get(0)).isEqualTo(expected[0]);
+            assertThat(mappedSection.get(length - 1L)).isEqualTo(expected[length - 1]);
+
+            byte[] bulk = new byte[length];
+            mappedSection.get(0, bulk, 0, length);
+            assertThat(bulk).isEqualTo(expected);
+
+            // Stream with mixed single byte and bulk reads
+            byte[] streamed = new byte[length];
+            try (InputStream in = mappedSection.newInputStream()) {
+                int pos = 0;
+                while (pos < length) {
+                    streamed[pos++] = (byte) in.read();
+                    final int n = in.read(streamed, pos, Math.min(100, length - pos));
+                    if (n > 0) {
+                        pos += n;
+                    }
+                }
+                assertThat(in.read()).isEqualTo(-1);
+                assertThat(in.read(streamed, 0, 1)).isEqualTo(-1);
+            }
+            assertThat(streamed).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testInvalidChunkSize() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            assertThatExceptionOfType(IllegalArgumentException.class)
+                    .isThrownBy(() -> new MappedSection(file.getChannel(), 0, file.length(), 100));
+        }
+    }
+
+    @Test
+    public void testOutOfBounds() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            final MappedSection mappedSection = new MappedSection(file.getChannel(), 0, 100, 64);
+            assertThat(mappedSection.view(96, 4).remaining()).isEqualTo(4);
+            assertThatExceptionOfType(IndexOutOfBoundsException.class)
+                    .isThrownBy(() -> mappedSection.view(97, 4));
+            assertThatExceptionOfType(IndexOutOfBoundsException.class)
+                    .isThrownBy(() -> mappedSection.get(97, new byte[4], 0, 4));
+        }
+    }
+}
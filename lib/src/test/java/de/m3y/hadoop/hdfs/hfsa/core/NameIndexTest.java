@@ -0,0 +1,75 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class NameIndexTest {
+
+    @Test
+    public void testFind() throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+        final FsImageLoader.INodesRepository inodes = fsImageData.getInodes();
+        final DirectoryIndex directoryIndex = fsImageData.getDirectoryIndex();
+        final NameIndex nameIndex = NameIndex.build(inodes, directoryIndex, true);
+
+        // Every linked inode can be found by parent and name
+        for (int position = 0; position < inodes.getSize(); position++) {
+            final int parentPosition = directoryIndex.getParentPosition(position);
+            if (DirectoryIndex.NO_PARENT != parentPosition) {
+                assertThat(nameIndex.find(parentPosition, toBytes(inodes, position))).isEqualTo(position);
+            }
+        }
+
+        final int rootPosition = inodes.getPosition(INodeId.ROOT_INODE_ID);
+        assertThat(nameIndex.find(rootPosition, "no_such_name".getBytes(StandardCharsets.UTF_8))).isNegative();
+        assertThat(nameIndex.find(rootPosition, new byte[0])).isNegative();
+    }
+
+    @Test
+    public void testPathLookups() throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().nameIndex().build().load(file);
+        }
+        assertThat(fsImageData.getINodeFromPath("/").getId()).isEqualTo(INodeId.ROOT_INODE_ID);
+        assertThat(fsImageData.getINodeFromPath("/test3/foo/bar/test_20MiB.img").getName().toStringUtf8())
+                .isEqualTo("test_20MiB.img");
+        assertThat(fsImageData.hasINode("/test3/foo/bar/test_20MiB.img")).isTrue();
+        assertThat(fsImageData.hasINode("/test3/foo/no_such_file")).isFalse();
+        assertThat(fsImageData.hasINode("/test3/foo/bar/test_20MiB.img/below_file")).isFalse();
+        assertThat(fsImageData.getChildDirectories("/")).contains("/test1", "/test2", "/test3");
+    }
+
+    @Test
+    public void testCapacity() {
+        assertThat(NameIndex.capacity(0)).isEqualTo(4);
+        assertThat(NameIndex.capacity(2)).isEqualTo(4);
+        assertThat(NameIndex.capacity(3)).isEqualTo(8);
+        assertThat(NameIndex.capacity((1 << 28) + 1)).isEqualTo(1 << 30);
+        // Capped instead of overflowing
+        assertThat(NameIndex.capacity((1 << 29) + 1)).isEqualTo(NameIndex.MAX_CAPACITY);
+        assertThat(NameIndex.capacity(NameIndex.MAX_SIZE)).isEqualTo(NameIndex.MAX_CAPACITY);
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> NameIndex.capacity(NameIndex.MAX_SIZE + 1))
+                .withMessageContaining("exceeding max");
+    }
+
+    private static byte[] toBytes(FsImageLoader.INodesRepository inodes, int position) {
+        final ByteBuffer name = INodeWireFormat.getName(inodes.getInodeBytesAt(position));
+        final byte[] bytes = new byte[name.remaining()];
+        name.get(bytes);
+        return bytes;
+    }
+}
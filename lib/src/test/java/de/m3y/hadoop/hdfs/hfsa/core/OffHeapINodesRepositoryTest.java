@@ -0,0 +1,41 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static de.m3y.hadoop.hdfs.hfsa.core.ArenaINodesRepositoryTest.assertSameInodes;
+import static de.m3y.hadoop.hdfs.hfsa.core.ArenaINodesRepositoryTest.buildRepository;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapINodesRepositoryTest {
+
+    @Test
+    public void testSmallSlabs() throws IOException {
+        final String fsImage = "src/test/resources/fsi_small_h3_2.img";
+        final FsImageLoader.INodesRepository expected =
+                buildRepository(fsImage, new FsImageLoader.PrimitiveArrayINodesRepository.Builder());
+        // Tiny slabs, so that inodes are spread over many slabs and some inodes exceed the slab size
+        final FsImageLoader.INodesRepository offHeap =
+                buildRepository(fsImage, new OffHeapINodesRepository.Builder(false, 64));
+
+        assertSameInodes(expected, offHeap);
+    }
+
+    @Test
+    public void testLongPages() {
+        // Spans multiple pages
+        final int size = (1 << 20) + 10;
+        OffHeapINodesRepository.LongPages pages = new OffHeapINodesRepository.LongPages(0);
+        for (int i = 0; i < size; i++) {
+            pages.add(size - i);
+        }
+        assertThat(pages.size()).isEqualTo(size);
+        assertThat(pages.get(0)).isEqualTo(size);
+        assertThat(pages.get(size - 1)).isEqualTo(1L);
+
+        pages.swap(0, size - 1);
+        assertThat(pages.get(0)).isEqualTo(1L);
+        assertThat(pages.get(size - 1)).isEqualTo(size);
+    }
+}
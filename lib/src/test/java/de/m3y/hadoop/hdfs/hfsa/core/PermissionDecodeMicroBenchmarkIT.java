@@ -0,0 +1,96 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares decoding user, group and mode of all inode permissions via PermissionStatus
+ * versus the allocation free primitive accessors.
+ */
+public class PermissionDecodeMicroBenchmarkIT {
+
+    @State(Scope.Benchmark)
+    public static class DecodeState {
+        FsImageData fsImageData;
+        long[] permissions;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            try (RandomAccessFile file = FSImageLoaderMicroBenchmarkIT.openFile()) {
+                fsImageData = new FsImageLoader.Builder().columns().build().load(file);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            final INodeColumns columns = fsImageData.getColumns();
+            permissions = new long[columns.getSize()];
+            for (int position = 0; position < permissions.length; position++) {
+                permissions[position] = columns.getPermission(position);
+            }
+        }
+    }
+
+    @Benchmark
+    public void decodePermissionStatus(DecodeState state, Blackhole blackhole) {
+        for (long permission : state.permissions) {
+            final PermissionStatus p = state.fsImageData.getPermissionStatus(permission);
+            blackhole.consume(p.getUserName());
+            blackhole.consume(p.getGroupName());
+            blackhole.consume(p.getPermission().toShort());
+        }
+    }
+
+    @Benchmark
+    public void decodePrimitive(DecodeState state, Blackhole blackhole) {
+        for (long permission : state.permissions) {
+            blackhole.consume(state.fsImageData.getUserNameOfPermission(permission));
+            blackhole.consume(state.fsImageData.getGroupNameOfPermission(permission));
+            blackhole.consume(FsUtil.getMode(permission));
+        }
+    }
+
+    @Benchmark
+    public void decodeSerialNumbers(DecodeState state, Blackhole blackhole) {
+        for (long permission : state.permissions) {
+            blackhole.consume(FsUtil.getUserId(permission));
+            blackhole.consume(FsUtil.getGroupId(permission));
+            blackhole.consume(FsUtil.getMode(permission));
+        }
+    }
+
+    @Test
+    public void runMicroBenchMark() throws RunnerException {
+        String reportPath = "target/jmh-reports/";
+        new File(reportPath).mkdirs();
+        Options opt = new OptionsBuilder()
+                .include(getClass().getName())
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .addProfiler(GCProfiler.class)
+                .jvmArgs("-server", "-XX:+UseG1GC", "-Xmx2048m", "-Dlog4j.configuration=log4j-it.xml")
+                .shouldDoGC(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(reportPath + getClass().getSimpleName() + ".json")
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new PermissionDecodeMicroBenchmarkIT().runMicroBenchMark();
+    }
+}
@@ -0,0 +1,119 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hdfs.server.namenode.SerialNumberManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class SidecarIndexTest {
+    private static final FileTime OLD_TIME = FileTime.fromMillis(0);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static FsImageData load(String fsImage, File sidecar) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fsImage, "r")) {
+            return new FsImageLoader.Builder().sidecarIndex(sidecar).build().load(file);
+        }
+    }
+
+    private static void assertSameVisit(FsImageData expected, FsImageData actual) throws IOException {
+        FsImageLoaderTest.CountingVisitor expectedVisitor = new FsImageLoaderTest.CountingVisitor(expected);
+        new FsVisitor.Builder().visit(expected, expectedVisitor);
+        FsImageLoaderTest.CountingVisitor actualVisitor = new FsImageLoaderTest.CountingVisitor(actual);
+        new FsVisitor.Builder().visit(actual, actualVisitor);
+        assertThat(actualVisitor.numFiles.get()).isEqualTo(expectedVisitor.numFiles.get());
+        assertThat(actualVisitor.numDirs.get()).isEqualTo(expectedVisitor.numDirs.get());
+        assertThat(actualVisitor.numSymLinks.get()).isEqualTo(expectedVisitor.numSymLinks.get());
+        assertThat(actualVisitor.sumFileSize.get()).isEqualTo(expectedVisitor.sumFileSize.get());
+        assertThat(actualVisitor.users).isEqualTo(expectedVisitor.users);
+        assertThat(actualVisitor.groups).isEqualTo(expectedVisitor.groups);
+    }
+
+    private static Map<Integer, String> toMap(SerialNumberManager.StringTable stringTable) {
+        Map<Integer, String> map = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : stringTable) {
+            map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        final String fsImage = "src/test/resources/fsimage_d800_f210k.img";
+        final File sidecar = new File(temporaryFolder.getRoot(), "fsimage.hfsa-index");
+
+        final FsImageData created = load(fsImage, sidecar);
+        assertThat(sidecar).exists();
+        Files.setLastModifiedTime(sidecar.toPath(), OLD_TIME);
+
+        final FsImageData reloaded = load(fsImage, sidecar);
+        // Not rewritten
+        assertThat(Files.getLastModifiedTime(sidecar.toPath())).isEqualTo(OLD_TIME);
+
+        assertThat(reloaded.getInodes().getSize()).isEqualTo(created.getInodes().getSize());
+        assertThat(reloaded.getDirectoryIndex().getOffsets()).isEqualTo(created.getDirectoryIndex().getOffsets());
+        assertThat(reloaded.getDirectoryIndex().getChildPositions())
+                .isEqualTo(created.getDirectoryIndex().getChildPositions());
+        assertThat(toMap(reloaded.getStringTable())).isEqualTo(toMap(created.getStringTable()));
+        assertThat(reloaded.getStringTable().getMaskBits()).isEqualTo(created.getStringTable().getMaskBits());
+        assertSameVisit(created, reloaded);
+    }
+
+    @Test
+    public void testConflictingLoadingStrategy() {
+        final File sidecar = new File(temporaryFolder.getRoot(), "fsimage.hfsa-index");
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> new FsImageLoader.Builder().offHeap().sidecarIndex(sidecar).build())
+                .withMessageContaining("offHeap()");
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> new FsImageLoader.Builder().sidecarIndex(sidecar).arena().build())
+                .withMessageContaining("arena()");
+        // Explicit lazy loading is fine
+        new FsImageLoader.Builder().lazy().sidecarIndex(sidecar).build();
+    }
+
+    @Test
+    public void testStaleSidecar() throws IOException {
+        final File sidecar = new File(temporaryFolder.getRoot(), "fsimage.hfsa-index");
+        load("src/test/resources/fsimage_d800_f210k.img", sidecar);
+        Files.setLastModifiedTime(sidecar.toPath(), OLD_TIME);
+
+        // Other fsimage replaces sidecar
+        final FsImageData fsImageData = load("src/test/resources/fsi_small_h3_2.img", sidecar);
+        assertThat(Files.getLastModifiedTime(sidecar.toPath())).isNotEqualTo(OLD_TIME);
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            assertSameVisit(new FsImageLoader.Builder().build().load(file), fsImageData);
+        }
+        assertSameVisit(fsImageData, load("src/test/resources/fsi_small_h3_2.img", sidecar));
+    }
+
+    @Test
+    public void testCorruptSidecar() throws IOException {
+        final File sidecar = temporaryFolder.newFile();
+        Files.write(sidecar.toPath(), new byte[]{1, 2, 3});
+
+        final FsImageData fsImageData = load("src/test/resources/fsi_small_h3_2.img", sidecar);
+        assertThat(sidecar.length()).isGreaterThan(3L);
+        assertSameVisit(fsImageData, load("src/test/resources/fsi_small_h3_2.img", sidecar));
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        final File sidecar = new File(temporaryFolder.getRoot(), "fsimage.hfsa-index");
+        final FsImageData fsImageData = load("src/test/resources/fsimage_d800_f210k_compressed.img", sidecar);
+        assertThat(sidecar).doesNotExist();
+        assertThat(fsImageData.getInodes().getSize()).isEqualTo(210367);
+    }
+}
@@ -0,0 +1,74 @@
+package de.m3y.hadoop.hdfs.hfsa.core;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import de.m3y.hadoop.hdfs.hfsa.util.INodeWireFormat;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SubtreeIndexTest {
+
+    @Test
+    public void testAggregates() throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsimage_d800_f210k.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().columns().subtreeIndex().build().load(file);
+        }
+        final INodeColumns columns = fsImageData.getColumns();
+        final SubtreeIndex subtreeIndex = fsImageData.getSubtreeIndex();
+        final int size = columns.getSize();
+        assertThat(subtreeIndex.getSize()).isEqualTo(size);
+
+        // Expected aggregates, by adding each inode to all its ancestors
+        final int[] fileCounts = new int[size];
+        final int[] directoryCounts = new int[size];
+        final long[] fileSizes = new long[size];
+        final long[] blockCounts = new long[size];
+        final long[] spaceConsumed = new long[size];
+        for (int position = 0; position < size; position++) {
+            for (int p = position; p != INodeColumns.NO_PARENT; p = columns.getParent(p)) {
+                if (columns.isFile(position)) {
+                    fileCounts[p]++;
+                    fileSizes[p] += columns.getFileSize(position);
+                    blockCounts[p] += columns.getBlockCount(position);
+                    spaceConsumed[p] += INodeWireFormat.getSpaceConsumed(
+                            fsImageData.getInodeBytes(columns.getInodeId(position)));
+                } else if (columns.isDirectory(position)) {
+                    directoryCounts[p]++;
+                }
+            }
+        }
+
+        for (int position = 0; position < size; position++) {
+            assertThat(subtreeIndex.getPositionAtRank(subtreeIndex.getRank(position))).isEqualTo(position);
+            assertThat(subtreeIndex.getSubtreeStart(position)).isLessThan(subtreeIndex.getSubtreeEnd(position));
+            assertThat(subtreeIndex.getSubtreeFileCount(position)).isEqualTo(fileCounts[position]);
+            assertThat(subtreeIndex.getSubtreeDirectoryCount(position)).isEqualTo(directoryCounts[position]);
+            assertThat(subtreeIndex.getSubtreeFileSize(position)).isEqualTo(fileSizes[position]);
+            assertThat(subtreeIndex.getSubtreeBlockCount(position)).isEqualTo(blockCounts[position]);
+            assertThat(subtreeIndex.getSubtreeSpaceConsumed(position)).isEqualTo(spaceConsumed[position]);
+            final int parent = columns.getParent(position);
+            if (INodeColumns.NO_PARENT != parent) {
+                // Subtree range nested in parent range
+                assertThat(subtreeIndex.getSubtreeStart(position)).isGreaterThan(subtreeIndex.getSubtreeStart(parent));
+                assertThat(subtreeIndex.getSubtreeEnd(position)).isLessThanOrEqualTo(subtreeIndex.getSubtreeEnd(parent));
+            }
+        }
+
+        final int rootPosition = subtreeIndex.getPosition(INodeId.ROOT_INODE_ID);
+        assertThat(subtreeIndex.getRank(rootPosition)).isZero();
+        assertThat(subtreeIndex.getSubtreeEnd(rootPosition)).isEqualTo(size);
+        assertThat(subtreeIndex.getSubtreeFileCount(rootPosition)).isEqualTo(209_560);
+    }
+
+    @Test
+    public void testNotLoaded() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small_h3_2.img", "r")) {
+            final FsImageData fsImageData = new FsImageLoader.Builder().build().load(file);
+            assertThat(fsImageData.hasSubtreeIndex()).isFalse();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package de.m3y.hadoop.hdfs.hfsa.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
+import de.m3y.hadoop.hdfs.hfsa.core.FsVisitor;
+import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
+import org.apache.hadoop.hdfs.protocol.SystemErasureCodingPolicies;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile;
+import org.apache.hadoop.hdfs.util.StripedBlockUtil;
+import org.apache.hadoop.thirdparty.protobuf.ByteString;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class INodeWireFormatTest {
+
+    @Test
+    public void testSmallImage() throws IOException {
+        assertSameAsParsed("src/test/resources/fsi_small_h3_2.img");
+    }
+
+    @Test
+    public void testLargeImage() throws IOException {
+        assertSameAsParsed("src/test/resources/fsimage_d800_f210k.img");
+    }
+
+    private static void assertSameAsParsed(String fsImage) throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile(fsImage, "r")) {
+            fsImageData = new FsImageLoader.Builder().parallel().build().load(file);
+        }
+        new FsVisitor.Builder().visit(fsImageData, new FsVisitor() {
+            @Override
+            public void onFile(INode inode, String path) {
+                final ByteBuffer bytes = assertSameInode(fsImageData, inode);
+                final INodeFile file = inode.getFile();
+                assertThat(INodeWireFormat.getFileSize(bytes)).isEqualTo(FsUtil.getFileSize(file));
+                assertThat(FsUtil.getFileSize(bytes)).isEqualTo(FsUtil.getFileSize(file));
+                assertThat(INodeWireFormat.getBlockCount(bytes)).isEqualTo(file.getBlocksCount());
+                assertThat(INodeWireFormat.getReplication(bytes)).isEqualTo(file.getReplication());
+                assertThat(INodeWireFormat.getFileReplication(bytes)).isEqualTo(FsUtil.getFileReplication(file));
+                assertThat(INodeWireFormat.getSpaceConsumed(bytes)).isEqualTo(FsUtil.getSpaceConsumed(file));
+                assertThat(INodeWireFormat.getModificationTime(bytes)).isEqualTo(file.getModificationTime());
+                assertThat(INodeWireFormat.getAccessTime(bytes)).isEqualTo(file.getAccessTime());
+            }
+
+            @Override
+            public void onDirectory(INode inode, String path) {
+                final ByteBuffer bytes = assertSameInode(fsImageData, inode);
+                assertThat(INodeWireFormat.getModificationTime(bytes))
+                        .isEqualTo(inode.getDirectory().getModificationTime());
+                assertThat(INodeWireFormat.getFileSize(bytes)).isZero();
+                assertThat(INodeWireFormat.getBlockCount(bytes)).isZero();
+            }
+
+            @Override
+            public void onSymLink(INode inode, String path) {
+                final ByteBuffer bytes = assertSameInode(fsImageData, inode);
+                assertThat(INodeWireFormat.getModificationTime(bytes))
+                        .isEqualTo(inode.getSymlink().getModificationTime());
+                assertThat(INodeWireFormat.getAccessTime(bytes)).isEqualTo(inode.getSymlink().getAccessTime());
+            }
+        }, FsImageData.ROOT_PATH);
+    }
+
+    private static ByteBuffer assertSameInode(FsImageData fsImageData, INode inode) {
+        final ByteBuffer bytes = fsImageData.getInodeBytes(inode.getId());
+        final int position = bytes.position();
+        assertThat(INodeWireFormat.getType(bytes)).isEqualTo(inode.getType());
+        assertThat(INodeWireFormat.getId(bytes)).isEqualTo(inode.getId());
+        assertThat(StandardCharsets.UTF_8.decode(INodeWireFormat.getName(bytes)).toString())
+                .isEqualTo(inode.getName().toStringUtf8());
+        assertThat(INodeWireFormat.hasName(bytes, inode.getName().toByteArray())).isTrue();
+        assertThat(INodeWireFormat.getPermission(bytes)).isEqualTo(fsImageData.getPermission(inode));
+        // Unmodified
+        assertThat(bytes.position()).isEqualTo(position);
+        return bytes;
+    }
+
+    @Test
+    public void testDefaults() {
+        final INode inode = INode.newBuilder()
+                .setType(INode.Type.FILE)
+                .setId(1234567890123L)
+                .setFile(INodeFile.newBuilder()
+                        .addBlocks(HdfsProtos.BlockProto.newBuilder().setBlockId(1).setGenStamp(1000).setNumBytes(100))
+                        .addBlocks(HdfsProtos.BlockProto.newBuilder().setBlockId(2).setGenStamp(1000)) // No size
+                        .addBlocks(HdfsProtos.BlockProto.newBuilder().setBlockId(3).setGenStamp(1000)
+                                .setNumBytes(1L << 40))
+                        .setStoragePolicyID(7))
+                .build();
+        final ByteBuffer bytes = ByteBuffer.wrap(inode.toByteArray());
+        assertThat(INodeWireFormat.getId(bytes)).isEqualTo(1234567890123L);
+        assertThat(INodeWireFormat.getName(bytes).remaining()).isZero();
+        assertThat(INodeWireFormat.hasName(bytes, new byte[0])).isTrue();
+        assertThat(INodeWireFormat.hasName(bytes, "foo".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(INodeWireFormat.getPermission(bytes)).isZero();
+        assertThat(INodeWireFormat.getReplication(bytes)).isZero();
+        assertThat(INodeWireFormat.getBlockCount(bytes)).isEqualTo(3);
+        assertThat(INodeWireFormat.getFileSize(bytes)).isEqualTo(100L + (1L << 40));
+
+        // Absent file message
+        final ByteBuffer noFile = ByteBuffer.wrap(INode.newBuilder()
+                .setType(INode.Type.FILE).setId(2).setName(ByteString.copyFromUtf8("foo")).build().toByteArray());
+        assertThat(INodeWireFormat.getFileSize(noFile)).isZero();
+        assertThat(INodeWireFormat.getBlockCount(noFile)).isZero();
+        assertThat(INodeWireFormat.hasName(noFile, "foo".getBytes(StandardCharsets.UTF_8))).isTrue();
+    }
+
+    @Test
+    public void testErasureCoded() {
+        final ErasureCodingPolicy policy = SystemErasureCodingPolicies.getByID(SystemErasureCodingPolicies.RS_6_3_POLICY_ID);
+        final INodeFile file = INodeFile.newBuilder()
+                .setModificationTime(1000)
+                .addBlocks(HdfsProtos.BlockProto.newBuilder().setBlockId(1).setGenStamp(1000)
+                        .setNumBytes(6L * policy.getCellSize()))
+                .addBlocks(HdfsProtos.BlockProto.newBuilder().setBlockId(2).setGenStamp(1000).setNumBytes(100))
+                .setBlockType(HdfsProtos.BlockTypeProto.STRIPED)
+                .setErasureCodingPolicyID(policy.getId())
+                .build();
+        final ByteBuffer bytes = ByteBuffer.wrap(
+                INode.newBuilder().setType(INode.Type.FILE).setId(1).setFile(file).build().toByteArray());
+        assertThat(INodeWireFormat.getErasureCodingPolicyId(bytes)).isEqualTo(policy.getId());
+        assertThat(INodeWireFormat.getReplication(bytes)).isZero();
+        assertThat(INodeWireFormat.getFileReplication(bytes)).isEqualTo(FsUtil.getFileReplication(file)).isEqualTo(1);
+        // 6 data cells + 3 parity cells, and 100 bytes data + 3 parity cells of 100 bytes
+        final long expected = 9L * policy.getCellSize() + 4 * 100;
+        assertThat(StripedBlockUtil.spaceConsumedByStripedBlock(100, 6, 3, policy.getCellSize())).isEqualTo(400);
+        assertThat(INodeWireFormat.getSpaceConsumed(bytes)).isEqualTo(expected);
+        assertThat(FsUtil.getSpaceConsumed(file)).isEqualTo(expected);
+
+        // Unknown, user defined policy
+        final INodeFile unknown = file.toBuilder().setErasureCodingPolicyID(99).build();
+        final ByteBuffer unknownBytes = ByteBuffer.wrap(
+                INode.newBuilder().setType(INode.Type.FILE).setId(2).setFile(unknown).build().toByteArray());
+        assertThat(INodeWireFormat.getSpaceConsumed(unknownBytes)).isEqualTo(6L * policy.getCellSize() + 100);
+        assertThat(FsUtil.getSpaceConsumed(unknown)).isEqualTo(6L * policy.getCellSize() + 100);
+
+        // Replicated
+        final ByteBuffer replicated = ByteBuffer.wrap(INode.newBuilder().setType(INode.Type.FILE).setId(3)
+                .setFile(file.toBuilder().clearErasureCodingPolicyID().clearBlockType().setReplication(3))
+                .build().toByteArray());
+        assertThat(INodeWireFormat.getErasureCodingPolicyId(replicated))
+                .isEqualTo(INodeWireFormat.NO_ERASURE_CODING_POLICY);
+        assertThat(INodeWireFormat.getFileReplication(replicated)).isEqualTo(3);
+        assertThat(INodeWireFormat.getSpaceConsumed(replicated)).isEqualTo(3 * (6L * policy.getCellSize() + 100));
+    }
+
+    @Test
+    public void testOffsetView() {
+        final byte[] inode = INode.newBuilder()
+                .setType(INode.Type.DIRECTORY).setId(42).setName(ByteString.copyFromUtf8("bar")).build().toByteArray();
+        final byte[] buf = new byte[inode.length + 10];
+        System.arraycopy(inode, 0, buf, 5, inode.length);
+        final ByteBuffer bytes = ByteBuffer.wrap(buf, 5, inode.length);
+        assertThat(INodeWireFormat.getType(bytes)).isEqualTo(INode.Type.DIRECTORY);
+        assertThat(INodeWireFormat.getId(bytes)).isEqualTo(42);
+        assertThat(StandardCharsets.UTF_8.decode(INodeWireFormat.getName(bytes)).toString()).isEqualTo("bar");
+    }
+}
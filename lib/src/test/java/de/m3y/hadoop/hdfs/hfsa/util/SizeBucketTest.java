@@ -80,4 +80,19 @@ public class SizeBucketTest {
         sizeBucket.add(1024L);
         assertThat(sizeBucket.computeBucketUpperBorders()).isEqualTo(new long[]{0, 1024L * 1024L /* 1 MiB */});
     }
+
+    @Test
+    public void testAddSizeBucket() {
+        SizeBucket sizeBucket = new SizeBucket();
+        sizeBucket.add(1L);
+        SizeBucket other = new SizeBucket();
+        other.add(1L);
+        other.add(300L * 1024L * 1024L * 1024L); // Larger than initial buckets
+
+        sizeBucket.add(other);
+        assertThat(sizeBucket.size()).isEqualTo(other.size());
+        assertThat(sizeBucket.getBucketCounter(1)).isEqualTo(2);
+        assertThat(sizeBucket.getBucketCounter(other.findMaxNumBucket())).isEqualTo(1);
+        assertThat(other.getBucketCounter(1)).isEqualTo(1);
+    }
 }
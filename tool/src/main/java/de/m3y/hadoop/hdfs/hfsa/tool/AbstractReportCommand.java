@@ -1,11 +1,15 @@
 package de.m3y.hadoop.hdfs.hfsa.tool;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
 import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsVisitor;
 import de.m3y.hadoop.hdfs.hfsa.util.IECBinary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,11 +19,107 @@ import picocli.CommandLine;
  * Abstract base class for report commands.
  */
 abstract class AbstractReportCommand implements Runnable {
+    static final String SIDECAR_INDEX_SUFFIX = ".hfsa-index";
     protected final Logger log = LoggerFactory.getLogger(getClass());
 
     @CommandLine.ParentCommand
     protected HdfsFSImageTool.MainCommand mainCommand;
 
+    private ForkJoinPool forkJoinPool;
+
+    /**
+     * Runs the report, and shuts down the pool of option --threads afterwards.
+     */
+    @Override
+    public final void run() {
+        try {
+            runReport();
+        } finally {
+            shutdownForkJoinPool();
+        }
+    }
+
+    /**
+     * Runs the report, eg loading the fsimage and printing the results.
+     */
+    protected abstract void runReport();
+
+    /**
+     * Gets the pool for parallel loading and analyzing.
+     *
+     * @return a pool sized by option --threads, or the common pool by default.
+     * @throws IllegalArgumentException if option --threads is less than one.
+     */
+    protected synchronized ForkJoinPool getForkJoinPool() {
+        if (null == forkJoinPool) {
+            if (null == mainCommand.threads) {
+                forkJoinPool = ForkJoinPool.commonPool();
+            } else if (mainCommand.threads < 1) {
+                throw new IllegalArgumentException("Option --threads requires at least one thread, but got "
+                        + mainCommand.threads);
+            } else {
+                forkJoinPool = new ForkJoinPool(mainCommand.threads);
+            }
+        }
+        return forkJoinPool;
+    }
+
+    private synchronized void shutdownForkJoinPool() {
+        if (null != forkJoinPool && ForkJoinPool.commonPool() != forkJoinPool) {
+            forkJoinPool.shutdown();
+        }
+        forkJoinPool = null;
+    }
+
+    /**
+     * Creates a parallel visitor builder, using the pool of {@link #getForkJoinPool()}.
+     *
+     * @return the builder.
+     */
+    protected FsVisitor.Builder createVisitorBuilder() {
+        return new FsVisitor.Builder().parallel(getForkJoinPool());
+    }
+
+    /**
+     * Runs a parallel stream computation in the pool of {@link #getForkJoinPool()}.
+     *
+     * @param task the task, eg processing a parallel stream.
+     */
+    protected void runInPool(Runnable task) {
+        getForkJoinPool().submit(task).join();
+    }
+
+    /**
+     * Computes a parallel stream result in the pool of {@link #getForkJoinPool()}.
+     *
+     * @param task the task, eg collecting a parallel stream.
+     * @param <T>  the result type.
+     * @return the result.
+     */
+    protected <T> T computeInPool(Supplier<T> task) {
+        return getForkJoinPool().submit(task::get).join();
+    }
+
+    /**
+     * Creates the fsimage loader builder, allowing commands to tune loading for their access pattern.
+     *
+     * @return the builder.
+     */
+    protected FsImageLoader.Builder createLoaderBuilder() {
+        final FsImageLoader.Builder builder = new FsImageLoader.Builder().parallel(getForkJoinPool()).pipelined();
+        if (mainCommand.offHeap) {
+            builder.offHeap();
+        }
+        if (mainCommand.sidecarIndex) {
+            if (mainCommand.offHeap) {
+                throw new IllegalArgumentException("Option --sidecar-index requires lazy loading and " +
+                        "can not be combined with option --off-heap");
+            }
+            builder.sidecarIndex(new File(mainCommand.fsImageFile.getPath() + SIDECAR_INDEX_SUFFIX));
+        }
+        return builder;
+    }
+
     protected FsImageData loadFsImage() {
         try (RandomAccessFile file = new RandomAccessFile(mainCommand.fsImageFile, "r")) {
             if(log.isInfoEnabled()) {
@@ -28,16 +128,17 @@ abstract class AbstractReportCommand implements Runnable {
 
             // Warn about insufficient memory
             final long maxJvmMemory = Runtime.getRuntime().maxMemory();
-            if (file.length() > maxJvmMemory) {
+            if (!mainCommand.offHeap && file.length() > maxJvmMemory) {
                 mainCommand.out.println();
                 mainCommand.out.println("Warning - Probably insufficient JVM max memory of " + IECBinary.format(maxJvmMemory));
                 mainCommand.out.println("          Recommended heap for FSImage size of " + IECBinary.format(file.length()) +
                         " is " + IECBinary.format(file.length() * 2L));
                 mainCommand.out.println("          Set JAVA_OPTS=\"-Xmx=...\"");
+                mainCommand.out.println("          or use option --off-heap with JAVA_OPTS=\"-XX:MaxDirectMemorySize=...\"");
                 mainCommand.out.println();
             }
 
-            return new FsImageLoader.Builder().parallel().build().load(file);
+            return createLoaderBuilder().build().load(file);
         } catch (FileNotFoundException e) {
             mainCommand.err.println("No such fsimage file " + mainCommand.fsImageFile);
             throw new IllegalStateException("No such fsimage file " + mainCommand.fsImageFile, e);
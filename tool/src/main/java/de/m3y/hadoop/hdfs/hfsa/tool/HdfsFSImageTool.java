@@ -52,6 +52,23 @@ public class HdfsFSImageTool {
         @Option(names = {"-fun", "--filter-by-user"},
                 description = "Filter user name by <regexp>.")
         String userNameFilter;
+
+        @Option(names = "--off-heap",
+                description = "Keeps inodes outside the Java heap. Requires sufficient -XX:MaxDirectMemorySize.")
+        boolean offHeap;
+
+        @Option(names = "--threads", paramLabel = "<n>",
+                description = "Number of threads for loading and analyzing, instead of the common fork/join pool.")
+        Integer threads;
+
+        @Option(names = "--columns",
+                description = "Builds inode columns for faster summary and small files reports, " +
+                        "using about 40 bytes of heap per inode.")
+        boolean columns;
+
+        @Option(names = "--sidecar-index",
+                description = "Persists an index next to the FILE, for fast loading of the same uncompressed fsimage.")
+        boolean sidecarIndex;
     }
 
     @Command(name = "hfsa-tool",
@@ -1,9 +1,11 @@
 package de.m3y.hadoop.hdfs.hfsa.tool;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 
 import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
 import picocli.CommandLine;
@@ -23,7 +25,14 @@ public class InodeInfoCommand extends AbstractReportCommand {
     String[] inodeIds = new String[0];
 
     @Override
-    public void run() {
+    protected FsImageLoader.Builder createLoaderBuilder() {
+        // Point lookups only, so parse inodes on demand instead of loading all inodes into memory
+        return mainCommand.offHeap || mainCommand.sidecarIndex ?
+                super.createLoaderBuilder() : super.createLoaderBuilder().lazy();
+    }
+
+    @Override
+    protected void runReport() {
         final FsImageData fsImageData = loadFsImage();
         if (null != fsImageData) {
             for (String inodeId : inodeIds) {
@@ -37,12 +46,21 @@ public class InodeInfoCommand extends AbstractReportCommand {
         PrintStream out = mainCommand.out;
         try {
             final FsImageProto.INodeSection.INode inode = loadInode(fsImageData, inodeId);
+            out.println("path: " + getPath(fsImageData, inode));
             out.println(inode.toString());
         } catch (IOException e) {
             out.println("Can not find INode by id/path " + inodeId);
         }
     }
 
+    private String getPath(FsImageData fsImageData, FsImageProto.INodeSection.INode inode) {
+        try {
+            return fsImageData.getPath(inode.getId());
+        } catch (FileNotFoundException e) {
+            return "<not linked into directory tree>";
+        }
+    }
+
     private FsImageProto.INodeSection.INode loadInode(FsImageData fsImageData, String inodeId) throws IOException {
         try {
             long inodeIdAsLong = Long.parseLong(inodeId);
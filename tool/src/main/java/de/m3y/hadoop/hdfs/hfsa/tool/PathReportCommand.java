@@ -38,6 +38,10 @@ public class PathReportCommand extends AbstractReportCommand {
         }
     }
 
+    /**
+     * Collects matching inodes sorted by path, counting each path once even if visited repeatedly
+     * for overlapping directories.
+     */
     static class PathVisitor implements FsVisitor {
         final INodePredicate predicate;
 
@@ -74,22 +78,26 @@ public class PathReportCommand extends AbstractReportCommand {
                 final String iNodeName = iNode.getName().toStringUtf8();
                 final String absolutPath = path.length() > 1 ? path + '/' + iNodeName : path + iNodeName;
                 char iNodeType = '-';
-                if (iNode.hasFile()) {
-                    fileCount.increment();
-                } else if (iNode.hasDirectory()) {
+                if (iNode.hasDirectory()) {
                     iNodeType = 'd';
-                    dirCount.increment();
                 } else if (iNode.hasSymlink()) {
                     iNodeType = 'l';
-                    symLinkCount.increment();
                 }
-                results.add(new Result(fsImageData.getPermission(iNode), absolutPath, iNodeType));
+                if (results.add(new Result(fsImageData.getPermission(iNode), absolutPath, iNodeType))) {
+                    if (iNode.hasFile()) {
+                        fileCount.increment();
+                    } else if (iNode.hasDirectory()) {
+                        dirCount.increment();
+                    } else if (iNode.hasSymlink()) {
+                        symLinkCount.increment();
+                    }
+                }
             }
         }
     }
 
     @Override
-    public void run() {
+    protected void runReport() {
         final FsImageData fsImageData = loadFsImage();
         if (null != fsImageData) {
             createReport(fsImageData);
@@ -114,8 +122,8 @@ public class PathReportCommand extends AbstractReportCommand {
 
                     @Override
                     public boolean test(INode iNode, String path) {
-                        final PermissionStatus permissionStatus = fsImageData.getPermissionStatus(iNode);
-                        return userPattern.matcher(permissionStatus.getUserName()).matches();
+                        final String userName = fsImageData.getUserNameOfPermission(fsImageData.getPermission(iNode));
+                        return userPattern.matcher(userName).matches();
                     }
                 };
             } else {
@@ -132,7 +140,7 @@ public class PathReportCommand extends AbstractReportCommand {
                 };
             }
             final PathVisitor visitor = new PathVisitor(fsImageData, mainCommand.out, predicate);
-            final FsVisitor.Builder builder = new FsVisitor.Builder().parallel();
+            final FsVisitor.Builder builder = createVisitorBuilder();
             for (String dir : mainCommand.dirs) {
                 builder.visit(fsImageData,
                         visitor,
@@ -158,9 +166,10 @@ public class PathReportCommand extends AbstractReportCommand {
             int maxUserNameLength = 0;
             int maxGroupNameLength = 0;
             for (Result result : visitor.results) {
-                final PermissionStatus permissionStatus = fsImageData.getPermissionStatus(result.permission);
-                maxUserNameLength = Math.max(maxUserNameLength, permissionStatus.getUserName().length());
-                maxGroupNameLength = Math.max(maxGroupNameLength, permissionStatus.getGroupName().length());
+                maxUserNameLength = Math.max(maxUserNameLength,
+                        fsImageData.getUserNameOfPermission(result.permission).length());
+                maxGroupNameLength = Math.max(maxGroupNameLength,
+                        fsImageData.getGroupNameOfPermission(result.permission).length());
             }
 
             for (Result result : visitor.results) {
@@ -10,12 +10,14 @@ import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
 import de.m3y.hadoop.hdfs.hfsa.core.FsVisitor;
+import de.m3y.hadoop.hdfs.hfsa.core.INodeColumns;
 import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
 import de.m3y.hadoop.hdfs.hfsa.util.IECBinary;
-import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import picocli.CommandLine;
 
@@ -107,7 +109,7 @@ public class SmallFilesReportCommand extends AbstractReportCommand {
     int hotspotsLimit = 10;
 
     @Override
-    public void run() {
+    protected void runReport() {
         final FsImageData fsImageData = loadFsImage();
         if (null != fsImageData) {
             for (String dir : mainCommand.dirs) {
@@ -238,20 +240,33 @@ public class SmallFilesReportCommand extends AbstractReportCommand {
     }
 
 
+    @Override
+    protected FsImageLoader.Builder createLoaderBuilder() {
+        final FsImageLoader.Builder builder = super.createLoaderBuilder();
+        // Columns cost heap per inode, even when keeping inodes off heap
+        return mainCommand.columns ? builder.columns() : builder;
+    }
+
     private Report computeReport(FsImageData fsImageData, String dir) {
         Report report = new Report();
         Predicate<String> userNameFilter = createUserNameFilter(mainCommand.userNameFilter);
 
         try {
+            if (fsImageData.hasColumns()) {
+                computeReport(fsImageData, fsImageData.getColumns(), dir, userNameFilter, report);
+                report.computeStats();
+                return report;
+            }
+
             FsVisitor visitor = new FsVisitor() {
                 @Override
                 public void onFile(FsImageProto.INodeSection.INode inode, String path) {
                     FsImageProto.INodeSection.INodeFile f = inode.getFile();
                     final long fileSizeBytes = FsUtil.getFileSize(f);
                     if (fileSizeBytes < fileSizeLimitBytes) {
-                        PermissionStatus p = fsImageData.getPermissionStatus(f.getPermission());
-                        if (userNameFilter.test(p.getUserName())) {
-                            report.getOrCreateUserReport(p.getUserName()).increment(path);
+                        final String userName = fsImageData.getUserNameOfPermission(f.getPermission());
+                        if (userNameFilter.test(userName)) {
+                            report.getOrCreateUserReport(userName).increment(path);
                         }
                         report.increment(path);
                     }
@@ -267,7 +282,7 @@ public class SmallFilesReportCommand extends AbstractReportCommand {
                     // Not needed
                 }
             };
-            new FsVisitor.Builder().parallel().visit(fsImageData, visitor, dir);
+            createVisitorBuilder().visit(fsImageData, visitor, dir);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
@@ -277,6 +292,50 @@ public class SmallFilesReportCommand extends AbstractReportCommand {
         return report;
     }
 
+    /**
+     * Computes the report by scanning the inode columns, resolving paths only for directories containing small files.
+     */
+    private void computeReport(FsImageData fsImageData, INodeColumns columns, String dir,
+                               Predicate<String> userNameFilter, Report report) throws IOException {
+        final int start = columns.getPosition(fsImageData.getINodeFromPath(dir).getId());
+        final Map<Integer, String> directoryPaths = new ConcurrentHashMap<>();
+        directoryPaths.put(start, dir);
+
+        runInPool(() -> IntStream.range(0, columns.getSize()).parallel()
+                .filter(position -> columns.isFile(position) && columns.getFileSize(position) < fileSizeLimitBytes)
+                .filter(columns.subtreeFilter(start))
+                .forEach(position -> {
+                    final String path = getDirectoryPath(fsImageData, columns, columns.getParent(position),
+                            directoryPaths);
+                    final String userName = fsImageData.getUserNameOfPermission(columns.getPermission(position));
+                    if (userNameFilter.test(userName)) {
+                        report.getOrCreateUserReport(userName).increment(path);
+                    }
+                    report.increment(path);
+                }));
+    }
+
+    /**
+     * Resolves the directory path like the visitor does, remembering resolved paths.
+     */
+    private static String getDirectoryPath(FsImageData fsImageData, INodeColumns columns, int position,
+                                           Map<Integer, String> directoryPaths) {
+        String path = directoryPaths.get(position);
+        if (null == path) {
+            final String parentPath = getDirectoryPath(fsImageData, columns, columns.getParent(position),
+                    directoryPaths);
+            final String name;
+            try {
+                name = fsImageData.getInode(columns.getInodeId(position)).getName().toStringUtf8();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            path = FsImageData.ROOT_PATH.equals(parentPath) ? parentPath + name : parentPath + '/' + name;
+            directoryPaths.put(position, path);
+        }
+        return path;
+    }
+
     private void aggregatePaths(Map<String, LongAdder> pathToCounter) {
         final ArrayList<Map.Entry<String, LongAdder>> entries = new ArrayList<>(pathToCounter.entrySet());
         final Map<String, LongAdder> aggregates = new HashMap<>();
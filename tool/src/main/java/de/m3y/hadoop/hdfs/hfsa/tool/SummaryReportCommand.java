@@ -3,15 +3,16 @@ package de.m3y.hadoop.hdfs.hfsa.tool;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
+import de.m3y.hadoop.hdfs.hfsa.core.FsPath;
 import de.m3y.hadoop.hdfs.hfsa.core.FsVisitor;
+import de.m3y.hadoop.hdfs.hfsa.core.INodeColumns;
 import de.m3y.hadoop.hdfs.hfsa.util.FsUtil;
 import de.m3y.hadoop.hdfs.hfsa.util.SizeBucket;
-import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
 import picocli.CommandLine;
 
@@ -28,15 +29,15 @@ class SummaryReportCommand extends AbstractReportCommand {
 
     abstract static class AbstractStats {
         long sumFiles;
-        final LongAdder sumDirectories = new LongAdder();
-        final LongAdder sumSymLinks = new LongAdder();
+        long sumDirectories;
+        long sumSymLinks;
         long sumBlocks;
         long sumFileSize;
         final SizeBucket fileSizeBuckets;
 
         static final Comparator<AbstractStats> COMPARATOR_BLOCKS = Comparator.comparingLong(o -> o.sumBlocks);
         static final Comparator<AbstractStats> COMPARATOR_SUM_FILES = Comparator.comparingLong(o -> o.sumFiles);
-        static final Comparator<AbstractStats> COMPARATOR_SUM_DIRECTORIES = Comparator.comparingLong(o -> o.sumDirectories.longValue());
+        static final Comparator<AbstractStats> COMPARATOR_SUM_DIRECTORIES = Comparator.comparingLong(o -> o.sumDirectories);
         static final Comparator<AbstractStats> COMPARATOR_SUM_FILE_SIZE = Comparator.comparingLong(o -> o.sumFileSize);
 
         AbstractStats() {
@@ -63,6 +64,9 @@ class SummaryReportCommand extends AbstractReportCommand {
     static class OverallStats extends AbstractStats {
     }
 
+    /**
+     * Report with stats by user and group name, see {@link ReportAccumulator} for computing.
+     */
     static class Report {
         final Map<String, GroupStats> groupStats;
         final Map<String, UserStats> userStats;
@@ -71,8 +75,8 @@ class SummaryReportCommand extends AbstractReportCommand {
 
         Report(String dirPath) {
             this.dirPath = dirPath;
-            groupStats = new ConcurrentHashMap<>();
-            userStats = new ConcurrentHashMap<>();
+            groupStats = new HashMap<>();
+            userStats = new HashMap<>();
             overallStats = new OverallStats();
         }
 
@@ -85,6 +89,148 @@ class SummaryReportCommand extends AbstractReportCommand {
         }
     }
 
+    /**
+     * Stats indexed by user or group serial number, in primitive arrays growing on demand.
+     */
+    static class SerialStats {
+        long[] sumFiles = new long[0];
+        long[] sumDirectories = new long[0];
+        long[] sumSymLinks = new long[0];
+        long[] sumBlocks = new long[0];
+        long[] sumFileSize = new long[0];
+        SizeBucket[] fileSizeBuckets = new SizeBucket[0];
+
+        private void ensureCapacity(int serial) {
+            if (serial >= sumFiles.length) {
+                final int length = Math.max(serial + 1, 2 * sumFiles.length);
+                sumFiles = Arrays.copyOf(sumFiles, length);
+                sumDirectories = Arrays.copyOf(sumDirectories, length);
+                sumSymLinks = Arrays.copyOf(sumSymLinks, length);
+                sumBlocks = Arrays.copyOf(sumBlocks, length);
+                sumFileSize = Arrays.copyOf(sumFileSize, length);
+                fileSizeBuckets = Arrays.copyOf(fileSizeBuckets, length);
+            }
+        }
+
+        private SizeBucket getOrCreateFileSizeBucket(int serial) {
+            SizeBucket sizeBucket = fileSizeBuckets[serial];
+            if (null == sizeBucket) {
+                sizeBucket = new SizeBucket();
+                fileSizeBuckets[serial] = sizeBucket;
+            }
+            return sizeBucket;
+        }
+
+        void addFile(int serial, long fileSize, long fileBlocks) {
+            ensureCapacity(serial);
+            sumFiles[serial]++;
+            sumFileSize[serial] += fileSize;
+            sumBlocks[serial] += fileBlocks;
+            getOrCreateFileSizeBucket(serial).add(fileSize);
+        }
+
+        void addDirectory(int serial) {
+            ensureCapacity(serial);
+            sumDirectories[serial]++;
+        }
+
+        void addSymLink(int serial) {
+            ensureCapacity(serial);
+            sumSymLinks[serial]++;
+        }
+
+        void add(SerialStats other) {
+            final int size = other.size();
+            if (size > 0) {
+                ensureCapacity(size - 1);
+            }
+            for (int serial = 0; serial < size; serial++) {
+                sumFiles[serial] += other.sumFiles[serial];
+                sumDirectories[serial] += other.sumDirectories[serial];
+                sumSymLinks[serial] += other.sumSymLinks[serial];
+                sumBlocks[serial] += other.sumBlocks[serial];
+                sumFileSize[serial] += other.sumFileSize[serial];
+                if (null != other.fileSizeBuckets[serial]) {
+                    getOrCreateFileSizeBucket(serial).add(other.fileSizeBuckets[serial]);
+                }
+            }
+        }
+
+        int size() {
+            return sumFiles.length;
+        }
+
+        boolean contains(int serial) {
+            return sumFiles[serial] > 0 || sumDirectories[serial] > 0 || sumSymLinks[serial] > 0;
+        }
+
+        void addTo(int serial, AbstractStats stats) {
+            stats.sumFiles += sumFiles[serial];
+            stats.sumDirectories += sumDirectories[serial];
+            stats.sumSymLinks += sumSymLinks[serial];
+            stats.sumBlocks += sumBlocks[serial];
+            stats.sumFileSize += sumFileSize[serial];
+            if (null != fileSizeBuckets[serial]) {
+                stats.fileSizeBuckets.add(fileSizeBuckets[serial]);
+            }
+        }
+    }
+
+    /**
+     * Accumulates stats by the user and group serial numbers packed into the inode permission.
+     * <p>
+     * Not thread safe: Each thread accumulates into its own instance, merged afterwards via
+     * {@link #merge(ReportAccumulator)}. Names are only resolved when creating the report.
+     */
+    static class ReportAccumulator {
+        final SerialStats overallStats = new SerialStats();
+        final SerialStats userStats = new SerialStats();
+        final SerialStats groupStats = new SerialStats();
+
+        void addFile(long permission, long fileSize, long fileBlocks) {
+            overallStats.addFile(0, fileSize, fileBlocks);
+            userStats.addFile(FsUtil.getUserId(permission), fileSize, fileBlocks);
+            groupStats.addFile(FsUtil.getGroupId(permission), fileSize, fileBlocks);
+        }
+
+        void addDirectory(long permission) {
+            overallStats.addDirectory(0);
+            userStats.addDirectory(FsUtil.getUserId(permission));
+            groupStats.addDirectory(FsUtil.getGroupId(permission));
+        }
+
+        void addSymLink(long permission) {
+            overallStats.addSymLink(0);
+            userStats.addSymLink(FsUtil.getUserId(permission));
+            groupStats.addSymLink(FsUtil.getGroupId(permission));
+        }
+
+        ReportAccumulator merge(ReportAccumulator other) {
+            overallStats.add(other.overallStats);
+            userStats.add(other.userStats);
+            groupStats.add(other.groupStats);
+            return this;
+        }
+
+        Report toReport(FsImageData fsImageData, String dirPath) {
+            final Report report = new Report(dirPath);
+            if (overallStats.size() > 0) {
+                overallStats.addTo(0, report.overallStats);
+            }
+            for (int serial = 0; serial < userStats.size(); serial++) {
+                if (userStats.contains(serial)) {
+                    userStats.addTo(serial, report.getOrCreateUserStats(fsImageData.getUserName(serial)));
+                }
+            }
+            for (int serial = 0; serial < groupStats.size(); serial++) {
+                if (groupStats.contains(serial)) {
+                    groupStats.addTo(serial, report.getOrCreateGroupStats(fsImageData.getGroupName(serial)));
+                }
+            }
+            return report;
+        }
+    }
+
 
     private static <T extends AbstractStats> List<T> sortStats(Collection<T> values, Comparator<? super AbstractStats> comparator) {
         final List<T> list = new ArrayList<>(values);
@@ -130,7 +276,7 @@ class SummaryReportCommand extends AbstractReportCommand {
     SortOption sort = SortOption.fs;
 
     @Override
-    public void run() {
+    protected void runReport() {
         final FsImageData fsImageData = loadFsImage();
         if (null != fsImageData) {
             for (String dir : mainCommand.dirs) {
@@ -175,7 +321,7 @@ class SummaryReportCommand extends AbstractReportCommand {
 
         out.printf("%8d | %11d | %12d | %9d | %10d | %9d | %9d | %s%n",
                 report.groupStats.size(), report.userStats.size(),
-                overallStats.sumDirectories.longValue(), overallStats.sumSymLinks.longValue(),
+                overallStats.sumDirectories, overallStats.sumSymLinks,
                 overallStats.sumFiles, overallStats.sumFileSize / 1024L / 1024L,
                 overallStats.sumBlocks,
                 String.format(bucketFormatValue,
@@ -193,7 +339,7 @@ class SummaryReportCommand extends AbstractReportCommand {
         out.println(FormatUtil.padRight('-', header2ndLine.length()));
         for (GroupStats stat : sortStats(report.groupStats.values(), sort.getComparator())) {
             out.printf("%22s |   %10d | %9d | %10d | %9d | %9d | %s%n",
-                    stat.groupName, stat.sumDirectories.longValue(), stat.sumSymLinks.longValue(),
+                    stat.groupName, stat.sumDirectories, stat.sumSymLinks,
                     stat.sumFiles, stat.sumFileSize / 1024L / 1024L,
                     stat.sumBlocks,
                     String.format(bucketFormatValue,
@@ -213,7 +359,7 @@ class SummaryReportCommand extends AbstractReportCommand {
         out.println(FormatUtil.padRight('-', header2ndLine.length()));
         for (UserStats stat : sortStats(userStats, sort.getComparator())) {
             out.printf("%22s |   %10d | %9d | %10d | %9d | %9d | %s%n",
-                    stat.userName, stat.sumDirectories.longValue(), stat.sumSymLinks.longValue(),
+                    stat.userName, stat.sumDirectories, stat.sumSymLinks,
                     stat.sumFiles, stat.sumFileSize / 1024L / 1024L,
                     stat.sumBlocks,
                     String.format(bucketFormatValue,
@@ -232,90 +378,64 @@ class SummaryReportCommand extends AbstractReportCommand {
         return filtered;
     }
 
-    Report computeReport(FsImageData fsImageData, String dirPath) {
-        final Report report = new Report(dirPath);
-        final OverallStats overallStats = report.overallStats;
-
-        final FsVisitor visitor = new FsVisitor() {
-            @Override
-            public void onFile(FsImageProto.INodeSection.INode inode, String path) {
-                FsImageProto.INodeSection.INodeFile f = inode.getFile();
+    @Override
+    protected FsImageLoader.Builder createLoaderBuilder() {
+        final FsImageLoader.Builder builder = super.createLoaderBuilder();
+        // Columns cost heap per inode, even when keeping inodes off heap
+        return mainCommand.columns ? builder.columns() : builder;
+    }
 
-                PermissionStatus p = fsImageData.getPermissionStatus(f.getPermission());
+    Report computeReport(FsImageData fsImageData, String dirPath) {
+        try {
+            if (fsImageData.hasColumns()) {
+                return computeReport(fsImageData, fsImageData.getColumns(), dirPath);
+            }
 
-                final long fileSize = FsUtil.getFileSize(f);
-                final long fileBlocks = f.getBlocksCount();
-                synchronized (overallStats) {
-                    overallStats.fileSizeBuckets.add(fileSize);
-                    overallStats.sumBlocks += fileBlocks;
-                    overallStats.sumFileSize += fileSize;
-                    overallStats.sumFiles++;
+            final FsVisitor.Accumulator<ReportAccumulator> accumulator = new FsVisitor.Accumulator<ReportAccumulator>() {
+                @Override
+                public void onFile(ReportAccumulator report, FsImageProto.INodeSection.INode inode, FsPath path) {
+                    FsImageProto.INodeSection.INodeFile f = inode.getFile();
+                    report.addFile(f.getPermission(), FsUtil.getFileSize(f), f.getBlocksCount());
                 }
 
-                // Group stats
-                final String groupName = p.getGroupName();
-                final GroupStats groupStat = report.getOrCreateGroupStats(groupName);
-                synchronized (groupStat) {
-                    groupStat.sumFiles++;
-                    groupStat.sumFileSize += fileSize;
-                    groupStat.fileSizeBuckets.add(fileSize);
-                    groupStat.sumBlocks += fileBlocks;
+                @Override
+                public void onDirectory(ReportAccumulator report, FsImageProto.INodeSection.INode inode, FsPath path) {
+                    report.addDirectory(inode.getDirectory().getPermission());
                 }
 
-                // User stats
-                final String userName = p.getUserName();
-                final UserStats userStat = report.getOrCreateUserStats(userName);
-                synchronized (userStat) {
-                    userStat.sumFiles++;
-                    userStat.sumFileSize += fileSize;
-                    userStat.fileSizeBuckets.add(fileSize);
-                    userStat.sumBlocks += fileBlocks;
+                @Override
+                public void onSymLink(ReportAccumulator report, FsImageProto.INodeSection.INode inode, FsPath path) {
+                    report.addSymLink(inode.getSymlink().getPermission());
                 }
-            }
-
-            @Override
-            public void onDirectory(FsImageProto.INodeSection.INode inode, String path) {
-                FsImageProto.INodeSection.INodeDirectory d = inode.getDirectory();
-                PermissionStatus p = fsImageData.getPermissionStatus(d.getPermission());
-
-                // Group stats
-                final String groupName = p.getGroupName();
-                final GroupStats groupStat = report.getOrCreateGroupStats(groupName);
-                groupStat.sumDirectories.increment();
-
-                // User stats
-                final String userName = p.getUserName();
-                final UserStats userStat = report.getOrCreateUserStats(userName);
-                userStat.sumDirectories.increment();
-
-                overallStats.sumDirectories.increment();
-            }
-
-            @Override
-            public void onSymLink(FsImageProto.INodeSection.INode inode, String path) {
-                final FsImageProto.INodeSection.INodeSymlink symlink = inode.getSymlink();
-                PermissionStatus p = fsImageData.getPermissionStatus(symlink.getPermission());
-
-                // Group stats
-                final String groupName = p.getGroupName();
-                final GroupStats groupStat = report.getOrCreateGroupStats(groupName);
-                groupStat.sumSymLinks.increment();
-
-                // User stats
-                final String userName = p.getUserName();
-                final UserStats userStat = report.getOrCreateUserStats(userName);
-                userStat.sumSymLinks.increment();
-
-                overallStats.sumSymLinks.increment();
-            }
-        };
-
-        try {
-            new FsVisitor.Builder().parallel().visit(fsImageData, visitor, dirPath);
+            };
+            return createVisitorBuilder()
+                    .collect(fsImageData, ReportAccumulator::new, accumulator, ReportAccumulator::merge, dirPath)
+                    .toReport(fsImageData, dirPath);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
+    }
 
-        return report;
+    /**
+     * Computes the report by scanning the inode columns instead of traversing the tree.
+     */
+    private Report computeReport(FsImageData fsImageData, INodeColumns columns, String dirPath)
+            throws IOException {
+        final int start = columns.getPosition(fsImageData.getINodeFromPath(dirPath).getId());
+        final ReportAccumulator report = computeInPool(() -> IntStream.range(0, columns.getSize()).parallel()
+                .filter(columns.subtreeFilter(start))
+                .collect(ReportAccumulator::new, (r, position) -> {
+                    final long permission = columns.getPermission(position);
+                    if (columns.isFile(position)) {
+                        r.addFile(permission, columns.getFileSize(position), columns.getBlockCount(position));
+                    } else if (columns.isDirectory(position)) {
+                        r.addDirectory(permission);
+                    } else if (columns.isSymlink(position)) {
+                        r.addSymLink(permission);
+                    }
+                }, ReportAccumulator::merge));
+        // Like visitor, report start directory as directory
+        report.addDirectory(columns.getPermission(start));
+        return report.toReport(fsImageData, dirPath);
     }
 }
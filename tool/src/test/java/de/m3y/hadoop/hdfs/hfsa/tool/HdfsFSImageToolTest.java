@@ -35,17 +35,26 @@ public class HdfsFSImageToolTest {
 
         assertThat(byteArrayOutputStream.toString())
                 .isEqualTo("Analyze Hadoop FSImage file for user/group reports\n" +
-                        "Usage: hfsa-tool [-hVv] [-fun=<userNameFilter>] [-p=<dirs>[,<dirs>...]]... FILE\n" +
-                        "                 [COMMAND]\n" +
-                        "      FILE        FSImage file to process.\n" +
+                        "Usage: hfsa-tool [-hVv] [--columns] [--off-heap] [--sidecar-index]\n" +
+                        "                 [-fun=<userNameFilter>] [--threads=<n>] [-p=<dirs>[,\n" +
+                        "                 <dirs>...]]... FILE [COMMAND]\n" +
+                        "      FILE              FSImage file to process.\n" +
+                        "      --columns         Builds inode columns for faster summary and small files\n" +
+                        "                          reports, using about 40 bytes of heap per inode.\n" +
                         "      -fun, --filter-by-user=<userNameFilter>\n" +
-                        "                  Filter user name by <regexp>.\n" +
-                        "  -h, --help      Show this help message and exit.\n" +
+                        "                        Filter user name by <regexp>.\n" +
+                        "  -h, --help            Show this help message and exit.\n" +
+                        "      --off-heap        Keeps inodes outside the Java heap. Requires sufficient\n" +
+                        "                          -XX:MaxDirectMemorySize.\n" +
                         "  -p, --path=<dirs>[,<dirs>...]\n" +
-                        "                  Directory path(s) to start traversing (default: [/]).\n" +
-                        "                    Default: [/]\n" +
-                        "  -v              Turns on verbose output. Use `-vv` for debug output.\n" +
-                        "  -V, --version   Print version information and exit.\n" +
+                        "                        Directory path(s) to start traversing (default: [/]).\n" +
+                        "                          Default: [/]\n" +
+                        "      --sidecar-index   Persists an index next to the FILE, for fast loading of\n" +
+                        "                          the same uncompressed fsimage.\n" +
+                        "      --threads=<n>     Number of threads for loading and analyzing, instead of\n" +
+                        "                          the common fork/join pool.\n" +
+                        "  -v                    Turns on verbose output. Use `-vv` for debug output.\n" +
+                        "  -V, --version         Print version information and exit.\n" +
                         "Commands:\n" +
                         "  summary         Generates an HDFS usage summary (default command if no other\n" +
                         "                    command specified)\n" +
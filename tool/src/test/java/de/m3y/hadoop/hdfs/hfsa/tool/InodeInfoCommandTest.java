@@ -24,7 +24,8 @@ public class InodeInfoCommandTest {
 
             assertThat(byteArrayOutputStream.toString())
                     .isEqualTo(
-                            "type: DIRECTORY\n" +
+                            "path: /\n" +
+                                    "type: DIRECTORY\n" +
                                     "id: 16385\n" +
                                     "name: \"\"\n" +
                                     "directory {\n" +
@@ -34,6 +35,7 @@ public class InodeInfoCommandTest {
                                     "  permission: 1099511759341\n" +
                                     "}\n" +
                                     "\n" +
+                                    "path: /test3\n" +
                                     "type: DIRECTORY\n" +
                                     "id: 16388\n" +
                                     "name: \"test3\"\n" +
@@ -44,6 +46,7 @@ public class InodeInfoCommandTest {
                                     "  permission: 1099511759341\n" +
                                     "}\n" +
                                     "\n" +
+                                    "path: /test3/test_160MiB.img\n" +
                                     "type: FILE\n" +
                                     "id: 16402\n" +
                                     "name: \"test_160MiB.img\"\n" +
@@ -66,6 +69,7 @@ public class InodeInfoCommandTest {
                                     "  storagePolicyID: 0\n" +
                                     "}\n" +
                                     "\n" +
+                                    "path: /test2\n" +
                                     "type: DIRECTORY\n" +
                                     "id: 16387\n" +
                                     "name: \"test2\"\n" +
@@ -2,8 +2,17 @@ package de.m3y.hadoop.hdfs.hfsa.tool;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.stream.Collectors;
 
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INodeFile;
+import org.apache.hadoop.thirdparty.protobuf.ByteString;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -79,4 +88,76 @@ public class PathReportCommandTest {
         }
     }
 
+    @Test
+    public void testRunWithOverlappingPaths() {
+        PathReportCommand pathReportCommand = new PathReportCommand();
+        pathReportCommand.mainCommand = new HdfsFSImageTool.MainCommand();
+
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (PrintStream printStream = new PrintStream(byteArrayOutputStream)) {
+            pathReportCommand.mainCommand.out = printStream;
+            pathReportCommand.mainCommand.err = printStream;
+
+            pathReportCommand.mainCommand.fsImageFile = new File("src/test/resources/fsi_small.img");
+            pathReportCommand.mainCommand.dirs = new String[]{"/test3/foo", "/test3"};
+
+            pathReportCommand.run();
+
+            assertThat(byteArrayOutputStream.toString())
+                    .isEqualTo("\n" +
+                            "Path report (paths=[/test3/foo, /test3], no filter) :\n" +
+                            "-----------------------------------------------------\n" +
+                            "\n" +
+                            "10 files, 3 directories and 0 symlinks\n" +
+                            "\n" +
+                            "drwxr-xr-x mm   supergroup /test3\n" +
+                            "drwxr-xr-x mm   supergroup /test3/foo\n" +
+                            "drwxr-xr-x mm   supergroup /test3/foo/bar\n" +
+                            "-rw-r--r-- mm   nobody     /test3/foo/bar/test_20MiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/foo/bar/test_2MiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/foo/bar/test_40MiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/foo/bar/test_4MiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/foo/bar/test_5MiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/foo/bar/test_80MiB.img\n" +
+                            "-rw-r--r-- root root       /test3/foo/test_1KiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/foo/test_20MiB.img\n" +
+                            "-rw-r--r-- mm   supergroup /test3/test.img\n" +
+                            "-rw-r--r-- foo  nobody     /test3/test_160MiB.img\n"
+                    );
+        }
+    }
+
+    @Test
+    public void testPathVisitorSortsByPath() throws IOException {
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().build().load(file);
+        }
+        final PathReportCommand.PathVisitor visitor = new PathReportCommand.PathVisitor(fsImageData, System.out,
+                (inode, path) -> true);
+        // Depth-first visiting order, with names containing characters sorting before '/'
+        visitor.onDirectory(directory("a"), "/");
+        visitor.onFile(file("x"), "/a");
+        visitor.onDirectory(directory("a-b"), "/");
+        visitor.onDirectory(directory("data"), "/");
+        visitor.onFile(file("y"), "/data");
+        visitor.onFile(file("data.bak"), "/");
+        // Visited again, eg for overlapping report paths
+        visitor.onFile(file("x"), "/a");
+
+        assertThat(visitor.results.stream().map(r -> r.path).collect(Collectors.toList()))
+                .containsExactly("/a", "/a-b", "/a/x", "/data", "/data.bak", "/data/y");
+        assertThat(visitor.fileCount.intValue()).isEqualTo(3);
+        assertThat(visitor.dirCount.intValue()).isEqualTo(3);
+    }
+
+    private static INode directory(String name) {
+        return INode.newBuilder().setType(INode.Type.DIRECTORY).setId(1).setName(ByteString.copyFromUtf8(name))
+                .setDirectory(INodeDirectory.newBuilder().setPermission(0)).build();
+    }
+
+    private static INode file(String name) {
+        return INode.newBuilder().setType(INode.Type.FILE).setId(2).setName(ByteString.copyFromUtf8(name))
+                .setFile(INodeFile.newBuilder().setPermission(0)).build();
+    }
 }
@@ -88,4 +88,23 @@ public class SmallFilesReportCommandTest {
                     );
         }
     }
+
+    @Test
+    public void testRunWithColumns() {
+        assertThat(runSmallFiles(true)).isEqualTo(runSmallFiles(false));
+    }
+
+    private static String runSmallFiles(boolean columns) {
+        SmallFilesReportCommand command = new SmallFilesReportCommand();
+        command.mainCommand = new HdfsFSImageTool.MainCommand();
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (PrintStream printStream = new PrintStream(byteArrayOutputStream)) {
+            command.mainCommand.out = printStream;
+            command.mainCommand.err = command.mainCommand.out;
+            command.mainCommand.fsImageFile = new File("src/test/resources/fsi_small.img");
+            command.mainCommand.columns = columns;
+            command.run();
+        }
+        return byteArrayOutputStream.toString();
+    }
 }
@@ -2,15 +2,21 @@ package de.m3y.hadoop.hdfs.hfsa.tool;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageData;
+import de.m3y.hadoop.hdfs.hfsa.core.FsImageLoader;
 import org.junit.Test;
 
 import static de.m3y.hadoop.hdfs.hfsa.tool.SummaryReportCommand.UserStats;
 import static de.m3y.hadoop.hdfs.hfsa.tool.SummaryReportCommand.filterByUserName;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 public class SummaryReportCommandTest {
     @Test
@@ -92,6 +98,73 @@ public class SummaryReportCommandTest {
         }
     }
 
+    @Test
+    public void testRunWithThreads() {
+        assertThat(runSummary(2, false)).isEqualTo(runSummary(null, false));
+    }
+
+    @Test
+    public void testRunShutsDownThreadPool() {
+        SummaryReportCommand summaryReportCommand = new SummaryReportCommand();
+        summaryReportCommand.mainCommand = new HdfsFSImageTool.MainCommand();
+        try (PrintStream printStream = new PrintStream(new ByteArrayOutputStream())) {
+            summaryReportCommand.mainCommand.out = printStream;
+            summaryReportCommand.mainCommand.err = printStream;
+            summaryReportCommand.mainCommand.fsImageFile = new File("src/test/resources/fsi_small.img");
+            summaryReportCommand.mainCommand.threads = 2;
+
+            final ForkJoinPool pool = summaryReportCommand.getForkJoinPool();
+            summaryReportCommand.run();
+            assertThat(pool.isShutdown()).isTrue();
+        }
+    }
+
+    @Test
+    public void testRunWithInvalidThreads() {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> runSummary(0, false))
+                .withMessage("Option --threads requires at least one thread, but got 0");
+    }
+
+    @Test
+    public void testRunWithColumns() {
+        assertThat(runSummary(null, true)).isEqualTo(runSummary(null, false));
+    }
+
+    private static String runSummary(Integer threads, boolean columns) {
+        SummaryReportCommand summaryReportCommand = new SummaryReportCommand();
+        summaryReportCommand.mainCommand = new HdfsFSImageTool.MainCommand();
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (PrintStream printStream = new PrintStream(byteArrayOutputStream)) {
+            summaryReportCommand.mainCommand.out = printStream;
+            summaryReportCommand.mainCommand.err = printStream;
+            summaryReportCommand.mainCommand.fsImageFile = new File("src/test/resources/fsi_small.img");
+            summaryReportCommand.mainCommand.threads = threads;
+            summaryReportCommand.mainCommand.columns = columns;
+
+            summaryReportCommand.run();
+        }
+        return byteArrayOutputStream.toString();
+    }
+
+    @Test
+    public void testComputeReportByVisitor() throws IOException {
+        SummaryReportCommand summaryReportCommand = new SummaryReportCommand();
+        summaryReportCommand.mainCommand = new HdfsFSImageTool.MainCommand();
+        final FsImageData fsImageData;
+        try (RandomAccessFile file = new RandomAccessFile("src/test/resources/fsi_small.img", "r")) {
+            fsImageData = new FsImageLoader.Builder().build().load(file);
+        }
+        assertThat(fsImageData.hasColumns()).isFalse();
+
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (PrintStream printStream = new PrintStream(byteArrayOutputStream)) {
+            summaryReportCommand.mainCommand.out = printStream;
+            summaryReportCommand.doSummary(summaryReportCommand.computeReport(fsImageData, "/"));
+        }
+        assertThat(byteArrayOutputStream.toString()).isEqualTo(runSummary(null, true));
+    }
+
     @Test
     public void testFilter() {
         final List<UserStats> list = Arrays.asList(new UserStats("foobar"),